@@ -0,0 +1,27 @@
+package com.example.bookservice.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author Shivam
+ * Entry point of benchmarks.jar: runs JMH with the GC profiler always on, so every result
+ * reports allocation rate (gc.alloc.rate.norm, bytes per operation) next to the score.
+ * Accepts the usual JMH command line options.
+ */
+public class BenchmarkRunner
+{
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException
+	{
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder()
+						.parent(commandLine)
+						.addProfiler(GCProfiler.class)
+						.build())
+			.run();
+	}
+}
@@ -0,0 +1,40 @@
+package com.example.bookservice.benchmark;
+
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+
+/**
+ * @author Shivam
+ * Sample books shared by the benchmarks.
+ * @Structure
+ * 	@Methods:
+ * 		1. public static BookDto validBookDto(): book passing validation.
+ * 		2. public static BookDto invalidBookDto(): book with three constraint violations.
+ * 		3. public static Book book(): stored book as read from the database.
+ */
+public final class BookFixtures
+{
+	private BookFixtures()
+	{
+	}
+	
+	public static BookDto validBookDto()
+	{
+		return new BookDto("The C Programming Language", 45.5, "9780131103627", 12,
+							new Author("Brian Kernighan", "US"));
+	}
+	
+	public static BookDto invalidBookDto()
+	{
+		return new BookDto("The C Programming Language", -1, "9780131103620", -5,
+							new Author("Brian Kernighan", "US"));
+	}
+	
+	public static Book book()
+	{
+		Book book = new Book(validBookDto());
+		book.setId("61d5a8f1c2b3a4e5f6a7b8c9");
+		return book;
+	}
+}
@@ -0,0 +1,129 @@
+package com.example.bookservice.handler;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.Validation;
+import javax.validation.ValidatorFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.bookservice.benchmark.BookFixtures;
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.exception.BadRequestException;
+import com.example.bookservice.model.Constants;
+import com.example.bookservice.model.ErrorMessage;
+import com.example.bookservice.model.ExceptionResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * @author Shivam
+ * Per request work of the handlers outside of I/O: body validation, JSON writing of books and
+ * writing of error responses.
+ * @Structure
+ * 	@Methods:
+ * 		1. public void validateValid(): BookHandler.validate of a valid book.
+ * 		2. public void validateInvalid(Blackhole blackhole): BookHandler.validate of a book with three
+ * 			violations, collected by parallelStream and thrown as BadRequestException.
+ * 		3. public byte[] writeBookDto(): Jackson serialization of BookDto.
+ * 		4. public void writeErrorResponse(): ErrorRenderer.render of a not-found error into a pooled buffer.
+ * 		5. public byte[] writeErrorResponseJackson(): Jackson serialization of the same error body, as
+ * 			ExceptionHandler wrote it before ErrorRenderer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerBenchmark
+{
+	private ValidatorFactory validatorFactory;
+	private BookHandler bookHandler;
+	private DataBufferFactory bufferFactory;
+	private ObjectMapper objectMapper;
+	private BookDto validBookDto;
+	private BookDto invalidBookDto;
+	private ExceptionResponse errorResponse;
+	private List<String> isbns;
+	
+	@Setup
+	public void setup()
+	{
+		validatorFactory = Validation.buildDefaultValidatorFactory();
+		bookHandler = new BookHandler(null, validatorFactory.getValidator(), null, null, null, 1000, "", "");
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+		validBookDto = BookFixtures.validBookDto();
+		invalidBookDto = BookFixtures.invalidBookDto();
+		List<ErrorMessage> messages = Collections.singletonList(ErrorMessage.builder()
+																	.message("Unprocessable Entity Passed")
+																	.moreInfo(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+"9780131103627")
+																	.status(422)
+																	.build());
+		errorResponse = new ExceptionResponse(messages);
+		isbns = Collections.singletonList("9780131103627");
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		validatorFactory.close();
+	}
+	
+	@Benchmark
+	public void validateValid()
+	{
+		bookHandler.validate(validBookDto);
+	}
+	
+	@Benchmark
+	public void validateInvalid(Blackhole blackhole)
+	{
+		try
+		{
+			bookHandler.validate(invalidBookDto);
+		}
+		catch(BadRequestException e)
+		{
+			blackhole.consume(e);
+		}
+	}
+	
+	@Benchmark
+	public byte[] writeBookDto() throws JsonProcessingException
+	{
+		return objectMapper.writeValueAsBytes(validBookDto);
+	}
+	
+	@Benchmark
+	public void writeErrorResponse()
+	{
+		DataBufferUtils.release(ErrorRenderer.render(bufferFactory, ErrorRenderer.NOT_FOUND, isbns, null));
+	}
+	
+	@Benchmark
+	public byte[] writeErrorResponseJackson() throws JsonProcessingException
+	{
+		return objectMapper.writeValueAsBytes(errorResponse);
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.bookservice.mapper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.bookservice.benchmark.BookFixtures;
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.model.Book;
+
+/**
+ * @author Shivam
+ * Mapping between stored books and book DTOs, done once per book on every read and write.
+ * @Structure
+ * 	@Methods:
+ * 		1. public BookDto bookDtoFromBook(): MapStruct generated Book to BookDto mapping.
+ * 		2. public Book bookFromBookDto(): Book(BookDto) constructor used by addBook.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark
+{
+	private CustomObjectMapper mapper;
+	private Book book;
+	private BookDto bookDto;
+	
+	@Setup
+	public void setup()
+	{
+		mapper = new CustomObjectMapperImpl();
+		book = BookFixtures.book();
+		bookDto = BookFixtures.validBookDto();
+	}
+	
+	@Benchmark
+	public BookDto bookDtoFromBook()
+	{
+		return mapper.bookDtoFromBook(book);
+	}
+	
+	@Benchmark
+	public Book bookFromBookDto()
+	{
+		return new Book(bookDto);
+	}
+}
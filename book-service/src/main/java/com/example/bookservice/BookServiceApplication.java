@@ -2,13 +2,17 @@ package com.example.bookservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 public class BookServiceApplication {
 
 	public static void main(String[] args)
 	{
-		SpringApplication.run(BookServiceApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(BookServiceApplication.class, args);
+		// Training run of the cds build profile: exit once started, the loaded classes are archived.
+		if(context.getEnvironment().getProperty("cds.training", Boolean.class, false))
+			System.exit(SpringApplication.exit(context));
 	}
 
 }
@@ -0,0 +1,178 @@
+package com.example.bookservice.cache;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.bookservice.event.BookChangeStream;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+
+/**
+ * @author Shivam
+ * Bounded in-process cache of mapped books, looked up by ISBN or by book name.
+ * Entries expire after book.cache.ttl, which is the upper bound for serving a book changed by
+ * another service. Changes seen on the book change stream invalidate entries right away. Every entry
+ * is dropped when the stream is interrupted and when it reopens without resuming, as changes may have
+ * been missed; a stream that resumes replays them.
+ * @Structure
+ * 	@Methods:
+ * 		1. public BookEntry getByIsbn(String isbn): cached book for ISBN or null.
+ * 		2. public BookEntry getByBookName(String bookName): cached book for book name or null.
+ * 		3. public long generation(): to read invalidation generation before loading a book.
+ * 		4. public void put(Book book, BookEntry entry, long generation): to cache a loaded book.
+ * 		5. public void invalidate(String id): to drop every entry of a book.
+ * 		6. public void invalidateAll(): to drop every entry.
+ * 	@Fields:
+ * 		1. Cache<String, BookEntry> books: mapped books and their entity tags by "isbn:" and "name:" keys.
+ * 		2. Map<String, Set<String>> keysById: keys cached for each book id. It is not a cache of its own:
+ * 			a key leaves it only when its entry leaves books, so a book is never cached under a key
+ * 			invalidate(id) does not know.
+ * 		3. AtomicLong generation: incremented on every invalidation.
+ */
+@Slf4j
+@Component
+public class BookCache
+{
+	private static final String ISBN_KEY = "isbn:";
+	private static final String NAME_KEY = "name:";
+	
+	private Cache<String, BookEntry> books;
+	private Map<String, Set<String>> keysById = new ConcurrentHashMap<>();
+	private AtomicLong generation = new AtomicLong();
+	private BookChangeStream changeStream;
+	private Disposable subscription;
+	
+	@Autowired
+	public BookCache(BookChangeStream changeStream, MeterRegistry meterRegistry,
+					@Value("${book.cache.maximum-size:10000}") long maximumSize,
+					@Value("${book.cache.ttl:30s}") Duration ttl)
+	{
+		this.changeStream = changeStream;
+		this.books = Caffeine.newBuilder()
+							.maximumSize(maximumSize)
+							.expireAfterWrite(ttl)
+							.executor(Runnable::run)
+							.removalListener(this::onRemoval)
+							.recordStats()
+							.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, books, "book");
+	}
+	
+	@PostConstruct
+	public void subscribe()
+	{
+		subscription = changeStream.changes().subscribe(this::onChange);
+	}
+	
+	@PreDestroy
+	public void unsubscribe()
+	{
+		subscription.dispose();
+	}
+	
+	public BookEntry getByIsbn(String isbn)
+	{
+		return books.getIfPresent(ISBN_KEY+isbn);
+	}
+	
+	public BookEntry getByBookName(String bookName)
+	{
+		return books.getIfPresent(NAME_KEY+bookName);
+	}
+	
+	public long generation()
+	{
+		return generation.get();
+	}
+	
+	/**
+	 * To cache a book loaded from the database.
+	 * @param book
+	 * @param entry: mapped book.
+	 * @param generation: generation() read before the book was loaded.
+	 * @Structure:
+	 * 	1. Cache entry under ISBN and book name keys, then remember keys of the book id: a key is added
+	 * 		after its entry, so onRemoval of an entry it replaced or that expired meanwhile keeps it.
+	 * 	2. If any invalidation happened since generation, drop the entries again as the loaded
+	 * 		book may already be stale.
+	 */
+	public void put(Book book, BookEntry entry, long generation)
+	{
+		String isbnKey = ISBN_KEY+book.getIsbn();
+		String nameKey = NAME_KEY+book.getBookName();
+		books.put(isbnKey, entry);
+		books.put(nameKey, entry);
+		keysById.compute(book.getId(), (id, keys) -> {
+			Set<String> added = keys == null ? new HashSet<>() : keys;
+			added.add(isbnKey);
+			added.add(nameKey);
+			return added;
+		});
+		if(this.generation.get() != generation)
+			this.remove(book.getId());
+	}
+	
+	public void invalidate(String id)
+	{
+		generation.incrementAndGet();
+		this.remove(id);
+	}
+	
+	public void invalidateAll()
+	{
+		generation.incrementAndGet();
+		books.invalidateAll();
+		keysById.clear();
+	}
+	
+	private void remove(String id)
+	{
+		Set<String> keys = keysById.remove(id);
+		if(keys != null)
+			books.invalidateAll(keys);
+	}
+	
+	/**
+	 * To forget the key of an entry that left books, evicted, expired, replaced or invalidated, unless
+	 * the key was cached again for the same book meanwhile.
+	 */
+	private void onRemoval(String key, BookEntry entry, RemovalCause cause)
+	{
+		if(key == null || entry == null)
+			return;
+		keysById.computeIfPresent(entry.getId(), (id, keys) -> {
+			if(!books.asMap().containsKey(key))
+				keys.remove(key);
+			return keys.isEmpty() ? null : keys;
+		});
+	}
+	
+	private void onChange(BookChangeEvent event)
+	{
+		if(event.getType() == ChangeType.INTERRUPTED
+				|| event.getType() == ChangeType.RESYNC && event.getResumeToken() == null)
+			this.invalidateAll();
+		else if(event.getId() != null)
+			this.invalidate(event.getId());
+	}
+}
@@ -0,0 +1,57 @@
+package com.example.bookservice.cache;
+
+import java.nio.ByteBuffer;
+
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.model.Book;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @author Shivam
+ * A mapped book with its entity tag and JSON body, as cached by BookCache.
+ * The tag is built from the book id and version, which every update-service write increments, so
+ * it changes whenever the book does without hashing its content. Books never updated since the
+ * version field was introduced have version 0.
+ * The JSON is encoded once into a read-only direct buffer, so responses wrap it without copying or
+ * serializing again. It is not a pooled buffer as entries outlive requests and eviction can not know
+ * when the last response using it has been written; the garbage collector frees it with the entry.
+ * @Fields:
+ * 	1. String id: id of the book, for BookCache to find the keys of a book it drops.
+ * 	2. BookDto book: mapped book.
+ * 	3. String etag: quoted strong entity tag.
+ * 	4. ByteBuffer json: encoded book, null if encoding failed.
+ */
+@Getter
+@ToString(exclude = "json")
+@AllArgsConstructor
+public class BookEntry
+{
+	private String id;
+	private BookDto book;
+	private String etag;
+	private ByteBuffer json;
+	
+	public static BookEntry of(Book book, BookDto bookDto, byte[] json)
+	{
+		ByteBuffer buffer = null;
+		if(json != null)
+		{
+			buffer = ByteBuffer.allocateDirect(json.length);
+			buffer.put(json).flip();
+			buffer = buffer.asReadOnlyBuffer();
+		}
+		return new BookEntry(book.getId(), bookDto, "\""+book.getId()+"-"+(book.getVersion() == null ? 0 : book.getVersion())+"\"", buffer);
+	}
+	
+	/**
+	 * To read the encoded book with a position of its own, as one buffer is shared by concurrent responses.
+	 * @return ByteBuffer or null.
+	 */
+	public ByteBuffer json()
+	{
+		return json == null ? null : json.duplicate();
+	}
+}
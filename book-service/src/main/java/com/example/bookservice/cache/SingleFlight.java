@@ -0,0 +1,60 @@
+package com.example.bookservice.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Coalesces concurrent calls for the same key into one in-flight call.
+ * Every subscriber that arrives while a call for its key is running shares that call's
+ * result or error instead of starting a new one.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Mono<V> execute(String key, Supplier<Mono<V>> call): to run or join a call.
+ * 	@Fields:
+ * 		1. Map<String, Mono<V>> inFlight: running calls by key.
+ * 		2. Counter duplicates: number of calls that joined a running call.
+ */
+public class SingleFlight<V>
+{
+	private Map<String, Mono<V>> inFlight = new ConcurrentHashMap<>();
+	private Counter duplicates;
+	
+	public SingleFlight(Counter duplicates)
+	{
+		this.duplicates = duplicates;
+	}
+	
+	/**
+	 * To run call for key, or join the call already running for key.
+	 * @param key
+	 * @param call: supplier of the call, only invoked when no call for key is running.
+	 * @Structure:
+	 * 	1. On subscription, look up the running call for key.
+	 * 	2. If none, share a new call that removes itself from inFlight when it terminates
+	 * 		or when every subscriber cancelled.
+	 * 	3. Else count a duplicate.
+	 * @return Mono<V>
+	 */
+	public Mono<V> execute(String key, Supplier<Mono<V>> call)
+	{
+		return Mono.defer(() -> {
+			AtomicReference<Mono<V>> created = new AtomicReference<>();
+			Mono<V> shared = inFlight.computeIfAbsent(key, k -> {
+				Mono<V> mono = Mono.defer(call)
+								.doFinally(signal -> inFlight.remove(k, created.get()))
+								.share();
+				created.set(mono);
+				return mono;
+			});
+			if(shared != created.get())
+				duplicates.increment();
+			return shared;
+		});
+	}
+}
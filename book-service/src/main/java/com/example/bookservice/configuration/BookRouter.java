@@ -1,10 +1,15 @@
 package com.example.bookservice.configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.server.RequestPredicates;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
 import com.example.bookservice.handler.BookHandler;
@@ -17,6 +22,8 @@ import com.example.bookservice.model.Constants;
 @Configuration
 public class BookRouter 
 {
+	private static final MediaType APPLICATION_NDJSON_UNPREFIXED = new MediaType("application", "ndjson");
+	
 	@Bean
 	public RouterFunction<ServerResponse> bookRoutes(BookHandler bookHandler)
 	{
@@ -25,12 +32,43 @@ public class BookRouter
 					builder ->
 						builder
 						.POST(Constants.BOOK_ENDPOINT,bookHandler::addBook)
+						.POST(Constants.BOOK_ENDPOINT+"/import",bookHandler::importBooks)
+						.GET(Constants.BOOK_ENDPOINT+"/export",bookHandler::exportBooks)
+						.GET(Constants.BOOK_ENDPOINT+"/changes",bookHandler::changes)
 						.GET(Constants.BOOK_ENDPOINT+"/book/{bookName}",request -> bookHandler.findByBookName(request))
+						.GET(Constants.BOOK_ENDPOINT+"/author/{authorName}/page",bookHandler::findByAuthorNamePage)
+						.GET(Constants.BOOK_ENDPOINT+"/author/{authorName}",
+								BookRouter::prefersNdjson,
+								bookHandler::streamByAuthorName)
 						.GET(Constants.BOOK_ENDPOINT+"/author/{authorName}",bookHandler::findByAuthorName)
 						.GET(Constants.BOOK_ENDPOINT+"/isbn/{isbn}",bookHandler::findByIsbn)
+						.POST(Constants.BOOK_ENDPOINT+"/isbn:batch",bookHandler::findByIsbns)
+						.POST(Constants.BOOK_ENDPOINT+"/delete:batch",bookHandler::deleteBooks)
+						.GET(Constants.BOOK_ENDPOINT+"/search",bookHandler::search)
+						.GET(Constants.BOOK_ENDPOINT+"/suggest",bookHandler::suggest)
 						.DELETE(Constants.BOOK_ENDPOINT+"/{isbn}",bookHandler::deleteBook)
 						.build()
 					)
 				.build();
 	}
+	
+	/**
+	 * Whether the most preferred Accept type that fits a JSON array or NDJSON fits NDJSON only, so
+	 * parameters and quality values count and wildcards, which fit both, keep the JSON array.
+	 */
+	private static boolean prefersNdjson(ServerRequest request)
+	{
+		List<MediaType> accepted = new ArrayList<>(request.headers().accept());
+		MediaType.sortBySpecificityAndQuality(accepted);
+		for(MediaType type : accepted)
+		{
+			if(type.getQualityValue() == 0)
+				continue;
+			boolean json = type.isCompatibleWith(MediaType.APPLICATION_JSON);
+			boolean ndjson = type.isCompatibleWith(MediaType.APPLICATION_NDJSON) || type.isCompatibleWith(APPLICATION_NDJSON_UNPREFIXED);
+			if(json || ndjson)
+				return !json;
+		}
+		return false;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.example.bookservice.dto;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Data of a change feed event: the changed book and its new field values, or for a lagged event
+ * the number of changes the subscriber missed.
+ */
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BookChangeDto
+{
+	private String id;
+	private String isbn;
+	private Map<String, Object> fields;
+	private List<String> removed;
+	private Long dropped;
+}
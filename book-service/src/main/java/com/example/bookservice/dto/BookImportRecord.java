@@ -0,0 +1,27 @@
+package com.example.bookservice.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One parsed line of an import body: the book, or why it can not be imported.
+ */
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+public class BookImportRecord
+{
+	private long line;
+	private BookDto book;
+	private List<String> errors;
+	
+	public boolean isValid()
+	{
+		return errors.isEmpty();
+	}
+}
@@ -0,0 +1,41 @@
+package com.example.bookservice.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One line of the import report: a line that was not imported (line, isbn, errors), or the
+ * summary sent last (read, inserted, failed).
+ */
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BookImportResultDto
+{
+	private Long line;
+	private String isbn;
+	private List<String> errors;
+	private Long read;
+	private Long inserted;
+	private Long failed;
+	
+	public static BookImportResultDto failure(long line, String isbn, List<String> errors)
+	{
+		return new BookImportResultDto(line, isbn, errors, null, null, null);
+	}
+	
+	public static BookImportResultDto summary(long read, long failed)
+	{
+		return new BookImportResultDto(null, null, null, read, read - failed, failed);
+	}
+}
@@ -0,0 +1,23 @@
+package com.example.bookservice.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookPageDto
+{
+	private List<BookDto> books;
+	@JsonProperty("next_cursor")
+	private String nextCursor;
+}
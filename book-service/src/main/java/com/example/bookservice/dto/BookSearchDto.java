@@ -0,0 +1,22 @@
+package com.example.bookservice.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class BookSearchDto
+{
+	private List<BookDto> books;
+	private int offset;
+	private int limit;
+	private boolean truncated;
+}
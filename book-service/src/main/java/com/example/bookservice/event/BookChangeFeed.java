@@ -0,0 +1,314 @@
+package com.example.bookservice.event;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+
+import com.example.bookservice.dto.BookChangeDto;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * @author Shivam
+ * Fans the shared book change stream out to server-sent event subscribers.
+ * Every published change gets a sequence number and is kept in a replay window of the last
+ * book.feed.replay-size changes. Event ids are change stream resume tokens: a subscriber reconnecting
+ * with Last-Event-ID continues from the replay window, or from a change stream cursor of its own
+ * when the id is older than the window, without reading the collection again.
+ * Each subscriber has a buffer of book.feed.buffer-size events. When it is full the subscriber is
+ * either sent a lagged event with the number of changes it missed (DROP_OLDEST) or disconnected
+ * to resume with Last-Event-ID (DISCONNECT).
+ * @Structure
+ * 	@Methods:
+ * 		1. public Flux<ServerSentEvent<BookChangeDto>> events(String lastEventId): events of one subscriber.
+ * 	@Fields:
+ * 		1. BookChangeStream changeStream: changes to publish.
+ * 		2. Sinks.Many<Change> changes: replay window of published changes.
+ * 		3. Map<String, Long> sequenceByToken: sequence number of the changes in the replay window.
+ * 		4. long sequence: sequence number of the last published change.
+ * 		5. String lastToken: resume token of the last published change, null once a reset was sent.
+ */
+@Slf4j
+@Component
+public class BookChangeFeed
+{
+	private static final Set<String> VISIBLE_FIELDS = Set.of("book_name", "price", "isbn", "quantity", "author", "rating");
+	
+	/**
+	 * What to do when a subscriber's buffer is full.
+	 */
+	public enum Overflow
+	{
+		DROP_OLDEST,
+		DISCONNECT
+	}
+	
+	private BookChangeStream changeStream;
+	private Sinks.Many<Change> changes;
+	private Map<String, Long> sequenceByToken;
+	private volatile long sequence;
+	private String lastToken;
+	private int bufferSize;
+	private Overflow overflow;
+	private Duration heartbeat;
+	private AtomicInteger subscribers = new AtomicInteger();
+	private Counter dropped;
+	private Disposable subscription;
+	
+	@Autowired
+	public BookChangeFeed(BookChangeStream changeStream, MeterRegistry meterRegistry,
+						@Value("${book.feed.replay-size:10000}") int replaySize,
+						@Value("${book.feed.buffer-size:1000}") int bufferSize,
+						@Value("${book.feed.overflow:drop-oldest}") Overflow overflow,
+						@Value("${book.feed.heartbeat:15s}") Duration heartbeat)
+	{
+		this.changeStream = changeStream;
+		this.changes = Sinks.many().replay().limit(replaySize);
+		this.sequenceByToken = new LinkedHashMap<String, Long>()
+								{
+									private static final long serialVersionUID = 1L;
+									
+									@Override
+									protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+									{
+										return size() > replaySize;
+									}
+								};
+		this.bufferSize = bufferSize;
+		this.overflow = overflow;
+		this.heartbeat = heartbeat;
+		meterRegistry.gauge("book.feed.subscribers", subscribers);
+		this.dropped = meterRegistry.counter("book.feed.dropped");
+	}
+	
+	@PostConstruct
+	public void subscribe()
+	{
+		subscription = changeStream.changes().subscribe(this::publish);
+	}
+	
+	@PreDestroy
+	public void unsubscribe()
+	{
+		subscription.dispose();
+		changes.tryEmitComplete();
+	}
+	
+	/**
+	 * Events of one subscriber, with a comment every book.feed.heartbeat to keep idle connections open.
+	 * @param lastEventId: id of the last event the subscriber got, null for changes from now on.
+	 * @Structure:
+	 * 	1. If lastEventId is in the replay window, or null, follow the shared changes after it.
+	 * 	2. Else follow a change stream cursor resumed after it, or send reset and complete if the
+	 * 		oplog no longer has it.
+	 * 	3. Buffer at most book.feed.buffer-size events, per the overflow policy. Later operators
+	 * 		prefetch one event so the buffer is the only place events wait.
+	 * @return Flux<ServerSentEvent<BookChangeDto>>
+	 */
+	public Flux<ServerSentEvent<BookChangeDto>> events(String lastEventId)
+	{
+		return Flux.defer(() -> {
+						Long after = lastEventId == null ? Long.valueOf(sequence) : this.sequenceOf(lastEventId);
+						return after != null ? this.shared(after) : this.resumed(lastEventId);
+					})
+					.publish(events -> Flux.merge(1, events,
+												Flux.interval(heartbeat)
+													.onBackpressureDrop()
+													.<ServerSentEvent<BookChangeDto>>map(tick ->
+															ServerSentEvent.<BookChangeDto>builder().comment("keep-alive").build())
+													.takeUntilOther(events.ignoreElements())), 1)
+					.doOnSubscribe(s -> subscribers.incrementAndGet())
+					.doFinally(signal -> subscribers.decrementAndGet());
+	}
+	
+	/**
+	 * Shared changes after sequence number after. A gap in sequence numbers, from a full buffer or
+	 * a replay window that moved on, is reported as a lagged event.
+	 */
+	private Flux<ServerSentEvent<BookChangeDto>> shared(long after)
+	{
+		AtomicLong expected = new AtomicLong(after + 1);
+		return this.bounded(changes.asFlux().filter(change -> change.sequence > after))
+					.concatMapIterable(change -> {
+						long missed = change.sequence - expected.getAndSet(change.sequence + 1);
+						if(missed <= 0)
+							return List.of(change.event);
+						dropped.increment(missed);
+						return List.of(lagged(missed), change.event);
+					}, 1);
+	}
+	
+	/**
+	 * Changes after a resume token older than the replay window, on a cursor of its own.
+	 */
+	private Flux<ServerSentEvent<BookChangeDto>> resumed(String resumeToken)
+	{
+		return this.bounded(changeStream.changesAfter(resumeToken)
+										.<Change>handle((event, sink) -> {
+											ServerSentEvent<BookChangeDto> sse = this.toEvent(event);
+											if(sse != null)
+												sink.next(new Change(0, sse));
+										}))
+					.map(change -> change.event)
+					.onErrorResume(BookChangeStream::isResumeFailure, ex -> {
+						log.debug("@Book-Service:: Can not resume change feed: {}",ex.getLocalizedMessage());
+						return Mono.just(reset());
+					});
+	}
+	
+	private Flux<Change> bounded(Flux<Change> source)
+	{
+		if(overflow == Overflow.DISCONNECT)
+			return source.onBackpressureBuffer(bufferSize, BufferOverflowStrategy.ERROR)
+						.onErrorResume(Exceptions::isOverflow, ex -> {
+							dropped.increment();
+							return Mono.empty();
+						});
+		return source.onBackpressureBuffer(bufferSize, change -> {}, BufferOverflowStrategy.DROP_OLDEST);
+	}
+	
+	private Long sequenceOf(String resumeToken)
+	{
+		synchronized(sequenceByToken)
+		{
+			return sequenceByToken.get(resumeToken);
+		}
+	}
+	
+	/**
+	 * To publish one change, called from the shared change stream only.
+	 */
+	private void publish(BookChangeEvent event)
+	{
+		ServerSentEvent<BookChangeDto> sse = this.toEvent(event);
+		if(sse == null)
+			return;
+		long next = sequence + 1;
+		if(event.getResumeToken() != null && event.getType() != ChangeType.RESYNC)
+		{
+			lastToken = event.getResumeToken();
+			synchronized(sequenceByToken)
+			{
+				sequenceByToken.put(event.getResumeToken(), next);
+			}
+		}
+		sequence = next;
+		changes.tryEmitNext(new Change(next, sse));
+	}
+	
+	/**
+	 * To map a change to an event.
+	 * @return null for changes subscribers do not see: internal fields only, INTERRUPTED, and RESYNC
+	 * 		unless the shared stream could not resume after a published change, so changes may have been missed.
+	 */
+	private ServerSentEvent<BookChangeDto> toEvent(BookChangeEvent event)
+	{
+		Document document = event.getDocument();
+		String isbn = document == null ? null : document.getString("isbn");
+		switch(event.getType())
+		{
+			case INSERT:
+			case REPLACE:
+				return change(event, new BookChangeDto(event.getId(), isbn, visible(document), null, null));
+			case UPDATE:
+				Map<String, Object> fields = visible(event.getUpdatedFields());
+				List<String> removed = event.getRemovedFields() == null ? List.of()
+											: event.getRemovedFields().stream()
+																	.filter(BookChangeFeed::isVisible)
+																	.collect(Collectors.toList());
+				if(fields.isEmpty() && removed.isEmpty())
+					return null;
+				return change(event, new BookChangeDto(event.getId(), isbn, fields, removed.isEmpty() ? null : removed, null));
+			case DELETE:
+				return change(event, new BookChangeDto(event.getId(), null, null, null, null));
+			case RESYNC:
+				if(lastToken == null || event.getResumeToken() != null)
+					return null;
+				lastToken = null;
+				return reset();
+			default:
+				return null;
+		}
+	}
+	
+	private static ServerSentEvent<BookChangeDto> change(BookChangeEvent event, BookChangeDto data)
+	{
+		return ServerSentEvent.builder(data)
+							.id(event.getResumeToken())
+							.event(event.getType().name().toLowerCase(Locale.ROOT))
+							.build();
+	}
+	
+	private static ServerSentEvent<BookChangeDto> lagged(long missed)
+	{
+		return ServerSentEvent.builder(new BookChangeDto(null, null, null, null, missed))
+							.event("lagged")
+							.build();
+	}
+	
+	/**
+	 * Changes were missed and can not be replayed: the subscriber has to read the books again.
+	 */
+	private static ServerSentEvent<BookChangeDto> reset()
+	{
+		return ServerSentEvent.builder(new BookChangeDto())
+							.event("reset")
+							.build();
+	}
+	
+	private static Map<String, Object> visible(Document fields)
+	{
+		if(fields == null)
+			return Map.of();
+		return fields.entrySet().stream()
+					.filter(field -> isVisible(field.getKey()) && field.getValue() != null)
+					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (first, second) -> second,
+											LinkedHashMap::new));
+	}
+	
+	private static boolean isVisible(String field)
+	{
+		int dot = field.indexOf('.');
+		return VISIBLE_FIELDS.contains(dot < 0 ? field : field.substring(0, dot));
+	}
+	
+	/**
+	 * A published change and its sequence number.
+	 */
+	private static class Change
+	{
+		private final long sequence;
+		private final ServerSentEvent<BookChangeDto> event;
+		
+		private Change(long sequence, ServerSentEvent<BookChangeDto> event)
+		{
+			this.sequence = sequence;
+			this.event = event;
+		}
+	}
+}
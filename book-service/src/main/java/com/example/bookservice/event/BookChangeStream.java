@@ -0,0 +1,205 @@
+package com.example.bookservice.event;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.BookChangeEvent;
+import com.mongodb.MongoException;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * @author Shivam
+ * This class tails the book collection change stream once and shares it with every consumer
+ * in book-service, so writes done by other services (update-service) become visible here.
+ * A reconnecting stream resumes after the last change it emitted, so no change is missed unless
+ * the oplog no longer has it. The stream is opened once the application is ready, so every consumer
+ * subscribed at startup sees the first RESYNC. RESYNC is only emitted once a cursor is known to be open,
+ * so a server refusing change streams does not make consumers rebuild on every attempt. After book.change-stream.max-retries failed attempts in a
+ * row (a standalone server has no change streams) it gives up: the last event consumers see is
+ * INTERRUPTED and cached books are only refreshed by their ttl.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Flux<BookChangeEvent> changes(): shared stream of changes.
+ * 		2. public void connect(): to open the shared stream, once.
+ * 		3. public Flux<BookChangeEvent> changesAfter(String resumeToken): changes after a resume token,
+ * 			on a cursor of its own.
+ * 		4. private Flux<BookChangeEvent> openChangeStream(): to open one change stream cursor.
+ * 	@Fields:
+ * 		1. ReactiveMongoTemplate mongoTemplate: to open change streams.
+ * 		2. ConnectableFlux<BookChangeEvent> changes: shared, self reconnecting change stream.
+ * 		3. String resumeToken: token of the last change emitted by the shared stream.
+ * 		4. AtomicLong failures: failed attempts since the last change or the last cursor open for max-backoff.
+ */
+@Slf4j
+@Component
+public class BookChangeStream
+{
+	private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+	private static final Duration OPEN_GRACE = Duration.ofSeconds(1);
+	private static final BookChangeEvent OPENED = BookChangeEvent.resync();
+	
+	private ReactiveMongoTemplate mongoTemplate;
+	private ConnectableFlux<BookChangeEvent> changes;
+	private volatile String resumeToken;
+	private Duration maxBackoff;
+	private long maxRetries;
+	private AtomicLong failures = new AtomicLong();
+	private Disposable connection;
+	
+	@Autowired
+	public BookChangeStream(ReactiveMongoTemplate mongoTemplate,
+							@Value("${book.change-stream.max-backoff:30s}") Duration maxBackoff,
+							@Value("${book.change-stream.max-retries:10}") long maxRetries)
+	{
+		this.mongoTemplate = mongoTemplate;
+		this.maxBackoff = maxBackoff;
+		this.maxRetries = maxRetries;
+		this.changes = Flux.defer(this::openChangeStream)
+						.retryWhen(Retry.from(signals -> signals.concatMap(signal -> this.backoff(signal.failure()))))
+						.onErrorResume(e -> Flux.empty())
+						.publish();
+	}
+	
+	/**
+	 * Shared stream of changes on the book collection, from the time connect() is called.
+	 * The stream reconnects with backoff, emitting INTERRUPTED when the cursor fails and RESYNC once it
+	 * is open again, and completes after INTERRUPTED once it gives up.
+	 * @return Flux<BookChangeEvent>
+	 */
+	public Flux<BookChangeEvent> changes()
+	{
+		return changes;
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void connect()
+	{
+		if(connection == null)
+			connection = changes.connect();
+	}
+	
+	@PreDestroy
+	public synchronized void disconnect()
+	{
+		if(connection != null)
+			connection.dispose();
+	}
+	
+	/**
+	 * Changes after resumeToken, read by a cursor of its own, for a consumer that fell behind the
+	 * shared stream. Fails if the token is invalid or no longer in the oplog.
+	 * @param resumeToken: _data of a resume token, see BookChangeEvent.getResumeToken().
+	 * @return Flux<BookChangeEvent>
+	 */
+	public Flux<BookChangeEvent> changesAfter(String resumeToken)
+	{
+		return mongoTemplate.changeStream(mongoTemplate.getCollectionName(Book.class), this.options(resumeToken),
+										Document.class)
+							.map(BookChangeEvent::from);
+	}
+	
+	/**
+	 * To open one change stream cursor. The driver does not tell when the cursor is open, so it is taken
+	 * as open at its first event, or once it did not fail for OPEN_GRACE: a server without change streams
+	 * fails the cursor at once.
+	 * @Structure:
+	 * 	1. Emit RESYNC, with the token the stream resumes after if any, before the first event of the
+	 * 		cursor or after OPEN_GRACE, whichever comes first.
+	 * 	2. Emit change stream events with the full document looked up on update.
+	 * 	3. If the cursor fails or closes, emit INTERRUPTED and fail. If it failed because it could not
+	 * 		resume, the next cursor starts from the current time.
+	 * @return Flux<BookChangeEvent>
+	 */
+	private Flux<BookChangeEvent> openChangeStream()
+	{
+		String resumeAfter = resumeToken;
+		long opened = System.nanoTime();
+		AtomicBoolean resynced = new AtomicBoolean();
+		return Flux.concat(
+					Flux.merge(Mono.delay(OPEN_GRACE).thenReturn(OPENED),
+								mongoTemplate.changeStream(mongoTemplate.getCollectionName(Book.class),
+															this.options(resumeAfter), Document.class)
+											.map(BookChangeEvent::from)),
+					Mono.error(new IllegalStateException("Change stream closed")))
+				.concatMap(event -> {
+					Flux<BookChangeEvent> resync = resynced.getAndSet(true) ? Flux.empty()
+																			: Flux.just(BookChangeEvent.resync(resumeAfter));
+					if(event == OPENED)
+						return resync;
+					failures.set(0);
+					if(event.getResumeToken() != null)
+						resumeToken = event.getResumeToken();
+					return resync.concatWith(Mono.just(event));
+				})
+				.onErrorResume(ex -> {
+					log.warn("@Book-Service:: Book change stream interrupted: {}",ex.getLocalizedMessage());
+					if(resumeAfter != null && isResumeFailure(ex))
+						resumeToken = null;
+					if(System.nanoTime() - opened >= maxBackoff.toNanos())
+						failures.set(0);
+					return Flux.concat(Mono.just(BookChangeEvent.interrupted()), Mono.error(ex));
+				});
+	}
+	
+	/**
+	 * To wait before the next attempt, 1s doubled on every failure in a row up to book.change-stream.max-backoff,
+	 * or to give up after book.change-stream.max-retries failures in a row.
+	 */
+	private Mono<Long> backoff(Throwable failure)
+	{
+		long failed = failures.incrementAndGet();
+		if(failed > maxRetries)
+		{
+			log.warn("@Book-Service:: Book change stream given up after "+maxRetries+" retries, cached books are"
+						+" refreshed by ttl only");
+			return Mono.error(failure);
+		}
+		long delay = MIN_BACKOFF.toMillis() << Math.min(failed - 1, 20);
+		return Mono.delay(Duration.ofMillis(Math.min(delay, maxBackoff.toMillis())));
+	}
+	
+	private ChangeStreamOptions options(String resumeAfter)
+	{
+		ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+																			.returnFullDocumentOnUpdate();
+		if(resumeAfter != null)
+			options.resumeAfter(new BsonDocument("_data", new BsonString(resumeAfter)));
+		return options.build();
+	}
+	
+	/**
+	 * Whether the server refused to resume: ChangeStreamHistoryLost (286), ChangeStreamFatalError (280)
+	 * or a malformed token (BadValue, 2).
+	 */
+	public static boolean isResumeFailure(Throwable ex)
+	{
+		for(Throwable cause = ex; cause != null; cause = cause.getCause())
+			if(cause instanceof MongoException)
+			{
+				int code = ((MongoException) cause).getCode();
+				return code == 286 || code == 280 || code == 2;
+			}
+		return false;
+	}
+}
@@ -1,16 +1,44 @@
 package com.example.bookservice.exception;
 
-import lombok.AllArgsConstructor;
+import com.example.bookservice.model.Constants;
+
 import lombok.Getter;
 import lombok.Setter;
 
+/**
+ * Thrown when no book exists for a key. It is control flow answered with 422, so it is created
+ * without stack trace, and lookups keep the key for the error body instead of building the message.
+ */
 @Getter
 @Setter
-@AllArgsConstructor
 public class UnprocessableEntityException extends RuntimeException
 {
 	private static final long serialVersionUID = 1L;
 	
 	private String message;
+	private String key;
+	
+	public UnprocessableEntityException(String message)
+	{
+		this(message, null);
+	}
+	
+	private UnprocessableEntityException(String message, String key)
+	{
+		super(null, null, false, false);
+		this.message = message;
+		this.key = key;
+	}
+	
+	public static UnprocessableEntityException notFound(String key)
+	{
+		return new UnprocessableEntityException(null, key);
+	}
+	
+	@Override
+	public String getMessage()
+	{
+		return message != null ? message : Constants.UNPROCESSALE_EXCEPTION_MESSAGE+key;
+	}
 	
 }
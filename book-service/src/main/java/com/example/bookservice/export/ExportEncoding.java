@@ -0,0 +1,74 @@
+package com.example.bookservice.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * @author Shivam
+ * Content codings of an export, negotiated from Accept-Encoding: zstd is preferred to gzip as it
+ * compresses NDJSON about as well for a fraction of the CPU time.
+ */
+public enum ExportEncoding
+{
+	IDENTITY(null),
+	GZIP("gzip"),
+	ZSTD("zstd");
+	
+	private final String contentEncoding;
+	
+	ExportEncoding(String contentEncoding)
+	{
+		this.contentEncoding = contentEncoding;
+	}
+	
+	/**
+	 * Content-Encoding header value, null for IDENTITY.
+	 */
+	public String getContentEncoding()
+	{
+		return contentEncoding;
+	}
+	
+	/**
+	 * To compress what is written to out, closing the returned stream finishes the encoding.
+	 */
+	public OutputStream wrap(OutputStream out) throws IOException
+	{
+		switch(this)
+		{
+			case GZIP:
+				return new GZIPOutputStream(out, 8192);
+			case ZSTD:
+				return new ZstdOutputStream(out);
+			default:
+				return out;
+		}
+	}
+	
+	/**
+	 * To pick the encoding from Accept-Encoding header values, ignoring codings with q=0.
+	 */
+	public static ExportEncoding negotiate(List<String> acceptEncoding)
+	{
+		ExportEncoding encoding = IDENTITY;
+		for(String header : acceptEncoding)
+		{
+			for(String coding : header.split(","))
+			{
+				String[] parts = coding.trim().toLowerCase(Locale.ROOT).split(";");
+				if(parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?"))
+					continue;
+				if(parts[0].equals(ZSTD.contentEncoding))
+					return ZSTD;
+				if(parts[0].equals(GZIP.contentEncoding))
+					encoding = GZIP;
+			}
+		}
+		return encoding;
+	}
+}
@@ -0,0 +1,153 @@
+package com.example.bookservice.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Encodes a stream of objects as NDJSON, compressed on the fly, into DataBuffers of about
+ * book.export.chunk-size bytes. JSON is written through the compressor straight into the buffer
+ * being filled, and a buffer is only emitted when full, so memory per export is one chunk plus
+ * the compressor window, whatever the number of objects.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Flux<DataBuffer> encode(Flux<?> values, ExportEncoding encoding, DataBufferFactory
+ * 			bufferFactory): to encode values as (compressed) NDJSON chunks.
+ * 	@Fields:
+ * 		1. ObjectMapper objectMapper: to write values.
+ * 		2. int chunkSize: bytes of an emitted DataBuffer.
+ */
+@Component
+public class NdjsonExporter
+{
+	private ObjectMapper objectMapper;
+	private int chunkSize;
+	
+	@Autowired
+	public NdjsonExporter(ObjectMapper objectMapper,
+						@Value("${book.export.chunk-size:64KB}") DataSize chunkSize)
+	{
+		this.objectMapper = objectMapper;
+		this.chunkSize = (int) chunkSize.toBytes();
+	}
+	
+	/**
+	 * To encode values as NDJSON chunks, requesting values only as chunks are consumed.
+	 * @param values
+	 * @param encoding
+	 * @param bufferFactory: of the response the chunks are written to.
+	 * @return Flux<DataBuffer>, chunks not consumed are released on cancel or error.
+	 */
+	public Flux<DataBuffer> encode(Flux<?> values, ExportEncoding encoding, DataBufferFactory bufferFactory)
+	{
+		return Flux.using(() -> new ChunkWriter(bufferFactory, encoding),
+						writer -> values.<DataBuffer>handle((value, sink) -> {
+											DataBuffer chunk = writer.write(value);
+											if(chunk != null)
+												sink.next(chunk);
+										})
+										.concatWith(Mono.fromCallable(writer::finish)),
+						ChunkWriter::release);
+	}
+	
+	/**
+	 * Writes values of one export through the compressor into the current chunk.
+	 */
+	private class ChunkWriter extends OutputStream
+	{
+		private final DataBufferFactory bufferFactory;
+		private final OutputStream compressor;
+		private final JsonGenerator generator;
+		private DataBuffer chunk;
+		
+		private ChunkWriter(DataBufferFactory bufferFactory, ExportEncoding encoding) throws IOException
+		{
+			this.bufferFactory = bufferFactory;
+			this.chunk = bufferFactory.allocateBuffer(chunkSize);
+			this.compressor = encoding.wrap(this);
+			this.generator = objectMapper.getFactory().createGenerator(compressor)
+										.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+										.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+										.setRootValueSeparator(null);
+		}
+		
+		/**
+		 * @return the full chunk to emit, null while it has room.
+		 */
+		private DataBuffer write(Object value)
+		{
+			try
+			{
+				objectMapper.writeValue(generator, value);
+				generator.writeRaw('\n');
+				generator.flush();
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			if(chunk.readableByteCount() < chunkSize)
+				return null;
+			DataBuffer full = chunk;
+			chunk = bufferFactory.allocateBuffer(chunkSize);
+			return full;
+		}
+		
+		/**
+		 * To finish the encoding.
+		 * @return the last chunk.
+		 */
+		private DataBuffer finish() throws IOException
+		{
+			generator.close();
+			compressor.close();
+			DataBuffer last = chunk;
+			chunk = null;
+			return last;
+		}
+		
+		private void release()
+		{
+			if(chunk != null)
+			{
+				try
+				{
+					compressor.close();
+				}
+				catch(IOException e)
+				{
+					// only frees the compressor, the output is discarded
+				}
+				DataBufferUtils.release(chunk);
+				chunk = null;
+			}
+		}
+		
+		@Override
+		public void write(int b)
+		{
+			chunk.write((byte) b);
+		}
+		
+		@Override
+		public void write(byte[] bytes, int offset, int length)
+		{
+			chunk.write(bytes, offset, length);
+		}
+	}
+}
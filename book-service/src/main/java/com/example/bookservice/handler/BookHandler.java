@@ -1,20 +1,44 @@
 package com.example.bookservice.handler;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 
+import com.example.bookservice.cache.BookEntry;
+import com.example.bookservice.dto.BookDeleteDto;
 import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.dto.BookImportResultDto;
+import com.example.bookservice.event.BookChangeFeed;
 import com.example.bookservice.exception.BadRequestException;
+import com.example.bookservice.export.ExportEncoding;
+import com.example.bookservice.export.NdjsonExporter;
+import com.example.bookservice.model.Constants;
 import com.example.bookservice.service.BookService;
 
 import reactor.core.publisher.Mono;
@@ -29,22 +53,64 @@ import reactor.core.publisher.Mono;
  * 		3. public Mono<ServerResponse> findByAuthorName(ServerRequest request): to find book by author name.
  * 		4. public Mono<ServerResponse> findByIsbn(ServerRequest request): find book by ISBN.
  * 		5. public Mono<ServerResponse> deleteBook(ServerRequest request): to delete book by ISBN.
- * 		6. private void validate(BookDto bookDto): to validate book object.
+ * 		6. void validate(BookDto bookDto): to validate book object.
+ * 		7. public Mono<ServerResponse> findByAuthorNamePage(ServerRequest request): to find one page of books
+ * 			by author name.
+ * 		8. public Mono<ServerResponse> streamByAuthorName(ServerRequest request): to stream books by author
+ * 			name as NDJSON.
+ * 		9. public Mono<ServerResponse> findByIsbns(ServerRequest request): to find many books by ISBN.
+ * 		10. public Mono<ServerResponse> search(ServerRequest request): to search books by name prefix.
+ * 		11. public Mono<ServerResponse> suggest(ServerRequest request): type-ahead book suggestions.
+ * 		12. public Mono<ServerResponse> importBooks(ServerRequest request): to insert books streamed as
+ * 			NDJSON or CSV.
+ * 		13. public Mono<ServerResponse> exportBooks(ServerRequest request): to stream the catalog as
+ * 			compressed NDJSON.
+ * 		14. public Mono<ServerResponse> changes(ServerRequest request): to stream book changes as
+ * 			server-sent events.
+ * 		15. public Mono<ServerResponse> deleteBooks(ServerRequest request): to delete many books by ISBN.
  * 	@Fields:
  * 		1. BookService bookService: BookService object to call service layer methods.
  * 		2. Validator validator: Javax validator object to validate book object.
+ * 		3. int maxBatchIsbns: Largest number of ISBNs accepted by findByIsbns and deleteBooks.
+ * 		4. BookImportReader importReader: to parse import bodies.
+ * 		5. NdjsonExporter exporter: to encode exports.
+ * 		6. BookChangeFeed changeFeed: to follow book changes.
+ * 		7. String isbnCacheControl, bookNameCacheControl: Cache-Control of book reads by ISBN and by
+ * 			book name, none if empty.
  */
 @Component
 public class BookHandler
 {
+	private static final ParameterizedTypeReference<List<String>> ISBN_LIST =
+															new ParameterizedTypeReference<List<String>>() {};
+	private static final ParameterizedTypeReference<Map<String, Object>> BOOK_FIELDS =
+															new ParameterizedTypeReference<Map<String, Object>>() {};
+	private static final String LAST_EVENT_ID = "Last-Event-ID";
+	
 	private BookService bookService;
 	private Validator validator;
+	private int maxBatchIsbns;
+	private BookImportReader importReader;
+	private NdjsonExporter exporter;
+	private BookChangeFeed changeFeed;
+	private String isbnCacheControl;
+	private String bookNameCacheControl;
 	
 	@Autowired
-	public BookHandler(BookService bookService,Validator validator)
+	public BookHandler(BookService bookService,Validator validator,BookImportReader importReader,
+						NdjsonExporter exporter,BookChangeFeed changeFeed,
+						@Value("${book.batch.max-isbns:1000}") int maxBatchIsbns,
+						@Value("${book.http.cache-control.isbn:no-cache}") String isbnCacheControl,
+						@Value("${book.http.cache-control.book-name:no-cache}") String bookNameCacheControl)
 	{
+		this.isbnCacheControl = isbnCacheControl;
+		this.bookNameCacheControl = bookNameCacheControl;
 		this.bookService = bookService;
 		this.validator = validator;
+		this.importReader = importReader;
+		this.exporter = exporter;
+		this.changeFeed = changeFeed;
+		this.maxBatchIsbns = maxBatchIsbns;
 	}
 	
 	/**
@@ -68,59 +134,243 @@ public class BookHandler
 	/**
 	 * @param request
 	 * @Structure:
-	 * 	1. Get path variable.
-	 * 	2. Call service layer method.
-	 * 	@return server response with bookDto object.
+	 * 	1. Check the body is NDJSON or CSV.
+	 * 	2. Parse and validate the body line by line as it arrives.
+	 * 	3. Call service layer method.
+	 * 	4. @return server response streaming the failed lines and a summary as NDJSON.
+	 */
+	public Mono<ServerResponse> importBooks(ServerRequest request)
+	{
+		MediaType contentType = request.headers().contentType().orElse(MediaType.APPLICATION_OCTET_STREAM);
+		if(!BookImportReader.supports(contentType))
+			return Mono.error(new BadRequestException(Collections.singletonList(Constants.UNSUPPORTED_IMPORT_MESSAGE)));
+		return ServerResponse.ok()
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.body(bookService.importBooks(importReader.read(request.body(BodyExtractors.toDataBuffers()),
+																	contentType)),
+								BookImportResultDto.class);
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get optional since query param.
+	 * 	2. Pick zstd, gzip or no compression from Accept-Encoding.
+	 * 	3. @return server response streaming the books as NDJSON chunks, encoded as they are written.
+	 */
+	public Mono<ServerResponse> exportBooks(ServerRequest request)
+	{
+		Instant since = this.since(request);
+		ExportEncoding encoding = ExportEncoding.negotiate(request.headers().header(HttpHeaders.ACCEPT_ENCODING));
+		return ServerResponse.ok()
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.headers(headers -> {
+							headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+							if(encoding.getContentEncoding() != null)
+								headers.set(HttpHeaders.CONTENT_ENCODING, encoding.getContentEncoding());
+						})
+						.body((response, context) -> response.writeWith(
+								exporter.encode(bookService.export(since), encoding, response.bufferFactory())));
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get the id of the last event received from the Last-Event-ID header, sent by reconnecting
+	 * 		EventSource clients, or the lastEventId query param.
+	 * 	2. @return server response streaming changes after it as server-sent events.
+	 */
+	public Mono<ServerResponse> changes(ServerRequest request)
+	{
+		String lastEventId = request.headers().header(LAST_EVENT_ID).stream()
+							.findFirst()
+							.orElseGet(() -> request.queryParam("lastEventId").orElse(null));
+		return ServerResponse.ok()
+						.contentType(MediaType.TEXT_EVENT_STREAM)
+						.body(BodyInserters.fromServerSentEvents(changeFeed.events(lastEventId)));
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get path variable and optional fields query param.
+	 * 	2. Call service layer method, the projection method if fields are given.
+	 * 	@return server response with bookDto object, or 304 if If-None-Match has its entity tag.
 	 */
 	public Mono<ServerResponse> findByBookName(ServerRequest request)
 	{
 		String bookName = request.pathVariable("bookName");
-		return bookService.findByBookName(bookName)
-					.flatMap(book -> ServerResponse.ok().bodyValue(book));
+		Optional<Set<String>> fields = this.fields(request);
+		if(fields.isPresent())
+			return bookService.findByBookName(bookName, fields.get())
+						.flatMap(book -> ServerResponse.ok().bodyValue(book));
+		return bookService.findEntryByBookName(bookName)
+					.flatMap(entry -> this.conditional(request, entry, bookNameCacheControl));
 	}
 	
 	/**
 	 * @param request
 	 * @Structure:
-	 * 	1. Get path variable.
-	 * 	2. Call service layer method
+	 * 	1. Get path variable and optional fields query param.
+	 * 	2. Call service layer method, the projection method if fields are given.
 	 * 	3. @return return server response with bookDto object.
 	 */
 	public Mono<ServerResponse> findByAuthorName(ServerRequest request)
 	{
 		String authorName = request.pathVariable("authorName");
+		Optional<Set<String>> fields = this.fields(request);
+		if(fields.isPresent())
+			return ServerResponse.ok().body(bookService.findByAuthorName(authorName, fields.get()), BOOK_FIELDS);
 		return ServerResponse.ok().body(bookService.findByAuthorName(authorName), BookDto.class);
 	}
 	
 	/**
 	 * @param request
 	 * @Structure:
-	 * 	1. Get path variable.
+	 * 	1. Get path variable and cursor, limit query params.
 	 * 	2. Call service layer method.
-	 * 	@return server response with bookDto object.
+	 * 	3. @return server response with one page of bookDto objects and the next cursor.
+	 */
+	public Mono<ServerResponse> findByAuthorNamePage(ServerRequest request)
+	{
+		String authorName = request.pathVariable("authorName");
+		String cursor = request.queryParam("cursor").orElse(null);
+		return Mono.defer(() -> bookService.findByAuthorName(authorName, cursor, this.intParam(request, "limit")))
+					.flatMap(page -> ServerResponse.ok().bodyValue(page));
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get path variable and optional fields query param.
+	 * 	2. Call service layer method, the projection method if fields are given.
+	 * 	3. @return server response streaming each bookDto object as a NDJSON line as it arrives.
+	 */
+	public Mono<ServerResponse> streamByAuthorName(ServerRequest request)
+	{
+		String authorName = request.pathVariable("authorName");
+		Optional<Set<String>> fields = this.fields(request);
+		if(fields.isPresent())
+			return ServerResponse.ok()
+							.contentType(MediaType.APPLICATION_NDJSON)
+							.body(bookService.findByAuthorName(authorName, fields.get()), BOOK_FIELDS);
+		return ServerResponse.ok()
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.body(bookService.findByAuthorName(authorName), BookDto.class);
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get path variable and optional fields query param.
+	 * 	2. Call service layer method, the projection method if fields are given.
+	 * 	@return server response with bookDto object, or 304 if If-None-Match has its entity tag.
 	 */
 	public Mono<ServerResponse> findByIsbn(ServerRequest request)
 	{
 		String isbn = request.pathVariable("isbn");
-		return bookService.findByIsbn(isbn)
+		Optional<Set<String>> fields = this.fields(request);
+		if(fields.isPresent())
+			return bookService.findByIsbn(isbn, fields.get())
 						.flatMap(book -> ServerResponse.ok().bodyValue(book));
+		return bookService.findEntryByIsbn(isbn)
+						.flatMap(entry -> this.conditional(request, entry, isbnCacheControl));
 	}
 	
 	/**
 	 * @param request
 	 * @Structure:
-	 * 	1. Get path variable.
+	 * 	1. Get ISBN list from request.
+	 * 	2. If more than book.batch.max-isbns ISBNs or a null ISBN:
+	 * 		throw BadRequestException
+	 * 	3. Call service layer method.
+	 * 	4. @return server response with lookup result keyed by ISBN.
+	 */
+	public Mono<ServerResponse> findByIsbns(ServerRequest request)
+	{
+		return request.bodyToMono(ISBN_LIST)
+					.defaultIfEmpty(Collections.emptyList())
+					.doOnNext(this::checkIsbns)
+					.flatMap(isbns -> bookService.findByIsbns(isbns))
+					.flatMap(books -> ServerResponse.ok().bodyValue(books));
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get q, limit and offset query params.
+	 * 	2. Call service layer method.
+	 * 	3. @return server response with ranked page of bookDto objects.
+	 */
+	public Mono<ServerResponse> search(ServerRequest request)
+	{
+		String query = request.queryParam("q").orElse(null);
+		return Mono.defer(() -> bookService.search(query, this.intParam(request, "limit"), this.intParam(request, "offset")))
+					.flatMap(result -> ServerResponse.ok().bodyValue(result));
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get q and limit query params.
 	 * 	2. Call service layer method.
-	 * 	@return server response with bookDto object.
+	 * 	3. @return server response with suggested bookDto objects.
+	 */
+	public Mono<ServerResponse> suggest(ServerRequest request)
+	{
+		String prefix = request.queryParam("q").orElse(null);
+		return Mono.defer(() -> ServerResponse.ok()
+								.body(bookService.suggest(prefix, this.intParam(request, "limit")), BookDto.class));
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get path variable.
+	 * 	2. Call service layer method, 422 if no book was deleted.
+	 * 	@return server response with deleted = true.
 	 */
 	public Mono<ServerResponse> deleteBook(ServerRequest request)
 	{
 		String isbn = request.pathVariable("isbn");
-		return ServerResponse.ok().bodyValue(bookService.deleteBook(isbn));
+		return bookService.deleteBook(isbn)
+						.then(ServerResponse.ok().bodyValue(new BookDeleteDto(true)));
+	}
+	
+	/**
+	 * @param request
+	 * @Structure:
+	 * 	1. Get ISBN list from request.
+	 * 	2. If more than book.batch.max-isbns ISBNs or a null ISBN:
+	 * 		throw BadRequestException
+	 * 	3. Call service layer method.
+	 * 	4. @return server response with delete outcome keyed by ISBN.
+	 */
+	public Mono<ServerResponse> deleteBooks(ServerRequest request)
+	{
+		return request.bodyToMono(ISBN_LIST)
+					.defaultIfEmpty(Collections.emptyList())
+					.doOnNext(this::checkIsbns)
+					.flatMap(isbns -> bookService.deleteBooks(isbns))
+					.flatMap(outcomes -> ServerResponse.ok().bodyValue(outcomes));
+	}
+	
+	/**
+	 * To check the ISBN list of a batch request.
+	 * @param isbns
+	 * @throws BadRequestException if there are more than book.batch.max-isbns ISBNs or one is null.
+	 */
+	private void checkIsbns(List<String> isbns)
+	{
+		if(isbns.size() > maxBatchIsbns)
+			throw new BadRequestException(Collections.singletonList(Constants.TOO_MANY_ISBNS_MESSAGE+maxBatchIsbns));
+		if(isbns.contains(null))
+			throw new BadRequestException(Collections.singletonList(Constants.NULL_ISBN_MESSAGE));
 	}
 	
 	/**
 	 * Validate BookDto
+	 * Package-private for book-service-benchmarks.
 	 * @param bookDto
 	 * @Structure:
 	 * 	1. Validate bookDto.
@@ -128,7 +378,7 @@ public class BookHandler
 	 * 		2.1 Extract violation messages.
 	 * 		2.2 throw BadRequestException(violation messages)
 	 */
-	private void validate(BookDto bookDto) 
+	void validate(BookDto bookDto) 
 	{
 		Set<ConstraintViolation<BookDto>> violation = validator.validate(bookDto);
 		if(!violation.isEmpty())
@@ -138,5 +388,95 @@ public class BookHandler
 											.collect(Collectors.toList());
 			throw new BadRequestException(errorMessages);
 		}
-	}	
+	}
+	
+	/**
+	 * To answer a book read with its entity tag: 304 without body when If-None-Match has the tag,
+	 * the book otherwise. The check itself puts the tag on the exchange response headers. Projections
+	 * (fields param) are different representations and are sent without tag.
+	 * @param request
+	 * @param entry: book, its tag and its encoded body.
+	 * @param cacheControl: Cache-Control header value, none if empty.
+	 * @Structure:
+	 * 	1. Answer 304 if If-None-Match has the tag.
+	 * 	2. Else wrap the encoded body in a response buffer, no copy and no serialization.
+	 * 	3. Else, if the book could not be encoded, serialize it.
+	 * @return Mono<ServerResponse>
+	 */
+	private Mono<ServerResponse> conditional(ServerRequest request, BookEntry entry, String cacheControl)
+	{
+		Consumer<HttpHeaders> headers = header -> {
+			if(!cacheControl.isEmpty())
+				header.setCacheControl(cacheControl);
+		};
+		return request.checkNotModified(entry.getEtag())
+					.flatMap(notModified -> ServerResponse.status(notModified.statusCode()).headers(headers).build())
+					.switchIfEmpty(Mono.defer(() -> {
+						ByteBuffer json = entry.json();
+						if(json == null)
+							return ServerResponse.ok().headers(headers).bodyValue(entry.getBook());
+						return ServerResponse.ok()
+										.headers(headers)
+										.contentType(MediaType.APPLICATION_JSON)
+										.contentLength(json.remaining())
+										.body((BodyInserter<ByteBuffer, ReactiveHttpOutputMessage>) (message, context) ->
+											message.writeWith(Mono.fromSupplier(() -> message.bufferFactory().wrap(json))));
+					}));
+	}
+	
+	/**
+	 * To read an optional numeric query param.
+	 * @param request
+	 * @param name: query param name.
+	 * @return value, null if absent.
+	 * @throws BadRequestException if value is not a number.
+	 */
+	private Integer intParam(ServerRequest request, String name)
+	{
+		try
+		{
+			return request.queryParam(name).map(Integer::valueOf).orElse(null);
+		}
+		catch(NumberFormatException e)
+		{
+			throw new BadRequestException(Collections.singletonList(name+Constants.NOT_A_NUMBER_MESSAGE));
+		}
+	}
+	
+	/**
+	 * To read the optional since query param.
+	 * @param request
+	 * @return value, null if absent.
+	 * @throws BadRequestException if value is not an ISO-8601 instant.
+	 */
+	private Instant since(ServerRequest request)
+	{
+		try
+		{
+			return request.queryParam("since").map(Instant::parse).orElse(null);
+		}
+		catch(DateTimeParseException e)
+		{
+			throw new BadRequestException(Collections.singletonList(Constants.INVALID_SINCE_MESSAGE));
+		}
+	}
+	
+	/**
+	 * To read the optional fields query param, a comma separated list of book fields.
+	 * @param request
+	 * @return requested fields, empty if all fields are requested.
+	 * @throws BadRequestException if the param names no field, as in fields= or fields=, since an empty
+	 * 	projection would return the whole stored document.
+	 */
+	private Optional<Set<String>> fields(ServerRequest request)
+	{
+		Optional<Set<String>> fields = request.queryParam("fields")
+												.map(names -> Arrays.stream(names.split(","))
+																.map(String::trim)
+																.filter(field -> !field.isEmpty())
+																.collect(Collectors.toCollection(LinkedHashSet::new)));
+		if(fields.isPresent() && fields.get().isEmpty())
+			throw new BadRequestException(Collections.singletonList(Constants.EMPTY_FIELDS_MESSAGE));
+		return fields;
+	}
 }
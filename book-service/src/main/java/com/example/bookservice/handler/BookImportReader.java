@@ -0,0 +1,201 @@
+package com.example.bookservice.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.dto.BookImportRecord;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Constants;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Shivam
+ * Reads an import body line by line, as NDJSON (one BookDto per line) or CSV (a header line naming
+ * the columns book_name, price, isbn, quantity, author_name and country, then one book per line,
+ * fields may be quoted with "). Only one line at a time is held in memory, and a line longer than
+ * book.import.max-line-size fails the import.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Flux<BookImportRecord> read(Flux<DataBuffer> body, MediaType contentType): to parse and
+ * 			validate every non blank line.
+ * 	@Fields:
+ * 		1. ObjectMapper objectMapper: to parse NDJSON lines.
+ * 		2. Validator validator: to check BookDto constraints.
+ * 		3. StringDecoder lineDecoder: to split the body into lines.
+ */
+@Component
+public class BookImportReader
+{
+	private static final ResolvableType STRING = ResolvableType.forClass(String.class);
+	
+	private ObjectMapper objectMapper;
+	private Validator validator;
+	private StringDecoder lineDecoder;
+	
+	@Autowired
+	public BookImportReader(ObjectMapper objectMapper, Validator validator,
+							@Value("${book.import.max-line-size:64KB}") DataSize maxLineSize)
+	{
+		this.objectMapper = objectMapper;
+		this.validator = validator;
+		this.lineDecoder = StringDecoder.textPlainOnly(Collections.singletonList("\n"), true);
+		this.lineDecoder.setMaxInMemorySize((int) maxLineSize.toBytes());
+	}
+	
+	public static boolean supports(MediaType contentType)
+	{
+		return MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)
+				|| MediaType.parseMediaType("text/csv").isCompatibleWith(contentType);
+	}
+	
+	/**
+	 * To parse and validate every non blank line of body.
+	 * @param body
+	 * @param contentType: application/x-ndjson or text/csv.
+	 * @return Flux<BookImportRecord> in body order, numbered from 1 including blank lines and the CSV header.
+	 */
+	public Flux<BookImportRecord> read(Flux<DataBuffer> body, MediaType contentType)
+	{
+		Flux<String> lines = lineDecoder.decode(body, STRING, null, null);
+		boolean csv = !MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType);
+		Map<String, Integer> columns = new HashMap<>();
+		return lines.index()
+					.filter(line -> !line.getT2().isBlank())
+					.filter(line -> !csv || !columns.isEmpty() || this.readHeader(line.getT2(), columns))
+					.map(line -> {
+						long number = line.getT1() + 1;
+						try
+						{
+							BookDto book = csv ? this.fromCsv(line.getT2(), columns) : this.fromJson(line.getT2());
+							return new BookImportRecord(number, book, this.violations(book));
+						}
+						catch(IllegalArgumentException e)
+						{
+							return new BookImportRecord(number, null, Collections.singletonList(e.getMessage()));
+						}
+					});
+	}
+	
+	/**
+	 * To read the CSV header into columns.
+	 * @return false, the header is not a record.
+	 */
+	private boolean readHeader(String line, Map<String, Integer> columns)
+	{
+		List<String> names = splitCsv(line);
+		for(int i = 0; i < names.size(); i++)
+			columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+		return false;
+	}
+	
+	private BookDto fromJson(String line)
+	{
+		try
+		{
+			return objectMapper.readValue(line, BookDto.class);
+		}
+		catch(JsonProcessingException e)
+		{
+			throw new IllegalArgumentException(Constants.INVALID_JSON_MESSAGE+e.getOriginalMessage());
+		}
+	}
+	
+	private BookDto fromCsv(String line, Map<String, Integer> columns)
+	{
+		List<String> fields = splitCsv(line);
+		BookDto book = new BookDto();
+		book.setBookName(field(fields, columns, "book_name"));
+		book.setIsbn(field(fields, columns, "isbn"));
+		book.setPrice(number(field(fields, columns, "price"), "price", Double::parseDouble));
+		book.setQuantity(number(field(fields, columns, "quantity"), "quantity", Integer::parseInt));
+		String authorName = field(fields, columns, "author_name");
+		if(authorName != null)
+			book.setAuthor(new Author(authorName, field(fields, columns, "country")));
+		return book;
+	}
+	
+	private List<String> violations(BookDto book)
+	{
+		return validator.validate(book).stream()
+						.map(ConstraintViolation::getMessage)
+						.collect(Collectors.toList());
+	}
+	
+	private static String field(List<String> fields, Map<String, Integer> columns, String name)
+	{
+		Integer column = columns.get(name);
+		if(column == null || column >= fields.size() || fields.get(column).isEmpty())
+			return null;
+		return fields.get(column);
+	}
+	
+	private static <T extends Number> T number(String value, String name, Function<String, T> parser)
+	{
+		if(value == null)
+			return parser.apply("0");
+		try
+		{
+			return parser.apply(value.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException(name+Constants.NOT_A_NUMBER_MESSAGE);
+		}
+	}
+	
+	/**
+	 * To split one CSV line, fields may be quoted with " and a quote inside them doubled.
+	 */
+	static List<String> splitCsv(String line)
+	{
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			if(quoted)
+			{
+				if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+					field.append(line.charAt(++i));
+				else if(c == '"')
+					quoted = false;
+				else
+					field.append(c);
+			}
+			else if(c == '"')
+				quoted = true;
+			else if(c == ',')
+			{
+				fields.add(field.toString());
+				field.setLength(0);
+			}
+			else if(c != '\r')
+				field.append(c);
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
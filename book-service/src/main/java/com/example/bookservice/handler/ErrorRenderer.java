@@ -0,0 +1,150 @@
+package com.example.bookservice.handler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpStatus;
+
+import com.example.bookservice.model.Constants;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import lombok.Getter;
+
+/**
+ * @author Shivam
+ * To write error bodies without building and serializing an ExceptionResponse. The body has the
+ * shape ExceptionResponse is serialized to, plus a correlationId field when the request has one.
+ * The static parts of each kind of error are encoded once
+ * and only the dynamic ones (moreInfo, correlation id) are escaped into the buffer of the response,
+ * which is allocated from the server's pooled allocator and released once written.
+ * @Structure
+ * 	@Methods:
+ * 		1. public static DataBuffer render(DataBufferFactory bufferFactory, Template template, List<String>
+ * 			moreInfos, String correlationId): to write one message per moreInfo.
+ * 	@Fields:
+ * 		1. Template NOT_FOUND, UNPROCESSABLE, INVALID_PARAMETER, INTERNAL_SERVER_ERROR: encoded kinds of error.
+ */
+public class ErrorRenderer
+{
+	public static final Template NOT_FOUND = new Template(Constants.UNPROCESSABLE_ENTITY_MESSAGE,
+													HttpStatus.UNPROCESSABLE_ENTITY, Constants.UNPROCESSALE_EXCEPTION_MESSAGE);
+	public static final Template UNPROCESSABLE = new Template(Constants.UNPROCESSABLE_ENTITY_MESSAGE,
+													HttpStatus.UNPROCESSABLE_ENTITY, "");
+	public static final Template INVALID_PARAMETER = new Template(Constants.INVALID_PARAMETER_MESSAGE,
+													HttpStatus.BAD_REQUEST, "");
+	public static final Template INTERNAL_SERVER_ERROR = new Template(Constants.INTERNAL_SERVER_ERROR_MESSAGE,
+													HttpStatus.INTERNAL_SERVER_ERROR, "");
+	
+	private static final byte[] START = ascii("{\"messages\":[");
+	private static final byte[] CORRELATION_ID = ascii("],\"correlationId\":\"");
+	private static final byte[] END = ascii("]}");
+	private static final byte[] QUOTE_END = ascii("\"}");
+	private static final byte[] NULL = ascii("null");
+	
+	private ErrorRenderer() {}
+	
+	/**
+	 * To write an error body.
+	 * @param bufferFactory: factory of the response.
+	 * @param template: kind of error.
+	 * @param moreInfos: moreInfo of each message, after the moreInfo prefix of the template.
+	 * @param correlationId: echoed if not null.
+	 * @return DataBuffer
+	 */
+	public static DataBuffer render(DataBufferFactory bufferFactory, Template template, List<String> moreInfos,
+									String correlationId)
+	{
+		int capacity = START.length + END.length;
+		for(String moreInfo : moreInfos)
+			capacity += template.nullItem.length + template.prefix.length + (moreInfo == null ? 0 : moreInfo.length()) + 1;
+		if(correlationId != null)
+			capacity += CORRELATION_ID.length + correlationId.length();
+		DataBuffer buffer = bufferFactory.allocateBuffer(capacity);
+		buffer.write(START);
+		for(int i = 0; i < moreInfos.size(); i++)
+		{
+			if(i > 0)
+				buffer.write((byte) ',');
+			String moreInfo = moreInfos.get(i);
+			if(moreInfo == null && template.prefix.length == 0)
+				buffer.write(template.nullItem);
+			else
+			{
+				buffer.write(template.itemStart);
+				buffer.write(template.prefix);
+				writeEscaped(buffer, moreInfo);
+				buffer.write(template.itemEnd);
+			}
+		}
+		if(correlationId == null)
+			return buffer.write(END);
+		buffer.write(CORRELATION_ID);
+		writeEscaped(buffer, correlationId);
+		return buffer.write(QUOTE_END);
+	}
+	
+	/**
+	 * To write a string as JSON string content. Printable ASCII, which keys and correlation ids are,
+	 * is written byte by byte, anything else through Jackson's encoder.
+	 * @param buffer
+	 * @param value: null is written as "null".
+	 */
+	private static void writeEscaped(DataBuffer buffer, String value)
+	{
+		if(value == null)
+		{
+			buffer.write(NULL);
+			return;
+		}
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if(c < 0x20 || c > 0x7e || c == '"' || c == '\\')
+			{
+				buffer.write(JsonStringEncoder.getInstance().quoteAsUTF8(value.substring(i)));
+				return;
+			}
+			buffer.write((byte) c);
+		}
+	}
+	
+	private static byte[] ascii(String value)
+	{
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	private static byte[] json(String value)
+	{
+		return JsonStringEncoder.getInstance().quoteAsUTF8(value);
+	}
+	
+	/**
+	 * Encoded parts of one kind of error message.
+	 * @Fields:
+	 * 	1. HttpStatus status: status of the response.
+	 * 	2. byte[] itemStart, prefix, itemEnd: message up to moreInfo, moreInfo prefix, message after moreInfo.
+	 * 	3. byte[] nullItem: message with null moreInfo.
+	 */
+	public static class Template
+	{
+		@Getter
+		private final HttpStatus status;
+		private final byte[] itemStart;
+		private final byte[] prefix;
+		private final byte[] itemEnd;
+		private final byte[] nullItem;
+		
+		private Template(String message, HttpStatus status, String prefix)
+		{
+			String start = "{\"message\":\""+new String(json(message), StandardCharsets.UTF_8)+"\",\"moreInfo\":";
+			String end = ",\"status\":"+status.value()+"}";
+			this.status = status;
+			this.itemStart = (start+"\"").getBytes(StandardCharsets.UTF_8);
+			this.prefix = json(prefix);
+			this.itemEnd = ("\""+end).getBytes(StandardCharsets.UTF_8);
+			this.nullItem = (start+"null"+end).getBytes(StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,473 @@
+package com.example.bookservice.index;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Component;
+
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.event.BookChangeStream;
+import com.example.bookservice.mapper.CustomObjectMapper;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.repository.BookRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * In-process inverted index over book names and author names for type-ahead suggestions.
+ * Every indexed book gets an int ordinal; each token maps to a sorted, growable posting list of
+ * ordinals. Ordinals only increase during a build, so building appends to postings in place.
+ * The index is built from the book collection on startup and kept current from the change events.
+ * When the change stream opens, books modified since the build started are indexed again; it is
+ * rebuilt only when the stream could not resume after an interruption or the collection was
+ * dropped or renamed. Books deleted between the startup build and the stream opening stay
+ * suggested until then. Changes are applied by one subscriber thread at a time, reads never lock.
+ * @Structure
+ * 	@Methods:
+ * 		1. public List<BookDto> suggest(String prefix, int limit): books having a token starting with
+ * 			every token of prefix.
+ * 		2. public int size(): number of indexed books.
+ * 		3. public double bytesPerDocument(): estimated memory used per indexed book.
+ * 	@Fields:
+ * 		1. BookRepository bookRepository: to stream the book collection on rebuild.
+ * 		2. CustomObjectMapper mapper: to map indexed books.
+ * 		3. MongoConverter converter: to read books from change event documents.
+ * 		4. BookChangeStream changeStream: changes to apply.
+ * 		5. Segment segment: current index, swapped whole on rebuild.
+ * 		6. Instant builtFrom: start time of the last build, to catch up from when the stream opens.
+ * 		7. boolean opened: whether the change stream has opened since startup.
+ */
+@Slf4j
+@Component
+public class BookIndex
+{
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+	private static final String[] NO_TOKENS = new String[0];
+	private static final int BATCH_SIZE = 1000;
+	private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+	static final BookChangeEvent STARTUP = BookChangeEvent.resync();
+	
+	private BookRepository bookRepository;
+	private CustomObjectMapper mapper;
+	private MongoConverter converter;
+	private BookChangeStream changeStream;
+	private volatile Segment segment = new Segment();
+	private Instant builtFrom;
+	private boolean opened;
+	private Disposable subscription;
+	
+	@Autowired
+	public BookIndex(BookRepository bookRepository, CustomObjectMapper mapper, ReactiveMongoTemplate mongoTemplate,
+					BookChangeStream changeStream, MeterRegistry meterRegistry)
+	{
+		this.bookRepository = bookRepository;
+		this.mapper = mapper;
+		this.converter = mongoTemplate.getConverter();
+		this.changeStream = changeStream;
+		Gauge.builder("book.index.documents", this, BookIndex::size)
+			.register(meterRegistry);
+		Gauge.builder("book.index.bytes.per.document", this, BookIndex::bytesPerDocument)
+			.baseUnit("bytes")
+			.description("Estimated heap used by the suggestion index per indexed book")
+			.register(meterRegistry);
+	}
+	
+	@PostConstruct
+	public void subscribe()
+	{
+		subscription = changeStream.changes()
+								.onBackpressureBuffer()
+								.startWith(STARTUP)
+								.concatMap(this::onChange)
+								.subscribe();
+	}
+	
+	@PreDestroy
+	public void unsubscribe()
+	{
+		subscription.dispose();
+	}
+	
+	/**
+	 * To suggest books for a type-ahead prefix.
+	 * @param prefix: free text, every token is matched as a token prefix of book name or author name.
+	 * @param limit: most books returned.
+	 * @Structure:
+	 * 	1. Tokenize prefix.
+	 * 	2. Walk posting lists of index tokens starting with the longest token, the most selective one,
+	 * 		in token order.
+	 * 	3. Keep books matching every token, once each, and stop as soon as limit books are found.
+	 * 	4. @return first limit matching books, ordered by their token matching the longest one.
+	 */
+	public List<BookDto> suggest(String prefix, int limit)
+	{
+		String[] tokens = tokens(Book.searchKey(prefix));
+		if(tokens.length == 0 || limit <= 0)
+			return Collections.emptyList();
+		
+		String longest = tokens[0];
+		for(String token : tokens)
+			if(token.length() > longest.length())
+				longest = token;
+		Segment current = segment;
+		Entry[] docs = current.docs;
+		List<BookDto> books = new ArrayList<>(limit);
+		Set<Integer> seen = new HashSet<>();
+		for(Posting posting : current.match(longest))
+		{
+			int[] ordinals = posting.ordinals;
+			for(int i = 0, size = posting.size; i < size; i++)
+			{
+				int ordinal = ordinals[i];
+				Entry entry = ordinal < docs.length ? docs[ordinal] : null;
+				if(entry != null && entry.matches(tokens) && seen.add(ordinal))
+				{
+					books.add(entry.book);
+					if(books.size() == limit)
+						return books;
+				}
+			}
+		}
+		return books;
+	}
+	
+	public int size()
+	{
+		return segment.live;
+	}
+	
+	/**
+	 * Estimated heap used per indexed book: posting lists, token keys, skip list nodes, the
+	 * document table and the indexed books, divided by number of indexed books.
+	 * Assumes compressed oops and Latin-1 strings.
+	 */
+	public double bytesPerDocument()
+	{
+		Segment current = segment;
+		int live = current.live;
+		if(live == 0)
+			return 0;
+		
+		long bytes = 16L + 4L * current.docs.length;
+		for(Map.Entry<String, Posting> posting : current.postings.entrySet())
+			bytes += 48 + stringBytes(posting.getKey()) + 24 + 16 + 4L * posting.getValue().ordinals.length;
+		for(Entry entry : current.docs)
+		{
+			if(entry == null)
+				continue;
+			bytes += 24 + 16 + 4L * entry.tokens.length + stringBytes(entry.id) + 48;
+			BookDto book = entry.book;
+			bytes += 40 + stringBytes(book.getBookName()) + stringBytes(book.getIsbn());
+			if(book.getAuthor() != null)
+				bytes += 24 + stringBytes(book.getAuthor().getAuthorName()) + stringBytes(book.getAuthor().getCountry());
+		}
+		return (double) bytes / live;
+	}
+	
+	/**
+	 * To apply a change, the STARTUP marker first.
+	 * @Structure:
+	 * 	1. STARTUP: build.
+	 * 	2. RESYNC resumed after a token: nothing was missed.
+	 * 	3. First RESYNC from the current time: index books modified since the startup build began, less
+	 * 		CLOCK_SKEW as last_modified may be set by the clock of another service.
+	 * 	4. Any later RESYNC from the current time: rebuild.
+	 * 	5. Insert, update, replace and delete: put or remove the book.
+	 */
+	Mono<Void> onChange(BookChangeEvent event)
+	{
+		if(event == STARTUP)
+			return this.rebuild();
+		switch(event.getType())
+		{
+			case RESYNC:
+				if(event.getResumeToken() != null)
+					return Mono.empty();
+				if(!opened)
+				{
+					opened = true;
+					return builtFrom == null ? this.rebuild() : this.catchUp(builtFrom.minus(CLOCK_SKEW));
+				}
+				return this.rebuild();
+			case INTERRUPTED:
+				return Mono.empty();
+			case DELETE:
+				return Mono.fromRunnable(() -> segment.remove(event.getId()));
+			default:
+				return Mono.fromRunnable(() -> {
+					if(event.getDocument() == null)
+						segment.remove(event.getId());
+					else
+						this.put(segment, converter.read(Book.class, event.getDocument()));
+				});
+		}
+	}
+	
+	/**
+	 * To build a new segment from the book collection and swap it in.
+	 * The old segment keeps serving until the new one is complete, or if the rebuild fails.
+	 */
+	private Mono<Void> rebuild()
+	{
+		Segment fresh = new Segment();
+		Instant from = Instant.now();
+		long start = System.nanoTime();
+		return bookRepository.findAll()
+							.doOnNext(book -> this.put(fresh, book))
+							.then(Mono.fromRunnable(() -> {
+								segment = fresh;
+								builtFrom = from;
+								log.info("@Book-Service:: Suggestion index built, books: "+fresh.live+", took ms: "
+											+(System.nanoTime() - start) / 1_000_000);
+							}))
+							.onErrorResume(e -> {
+								log.warn("@Book-Service:: Suggestion index rebuild failed: "+e.getMessage());
+								return Mono.empty();
+							})
+							.then();
+	}
+	
+	/**
+	 * To index again the books modified since a time, into the current segment.
+	 */
+	private Mono<Void> catchUp(Instant since)
+	{
+		return bookRepository.findModifiedSince(since, BATCH_SIZE)
+							.doOnNext(book -> this.put(segment, book))
+							.onErrorResume(e -> {
+								log.warn("@Book-Service:: Suggestion index catch up failed: "+e.getMessage());
+								return Mono.empty();
+							})
+							.then();
+	}
+	
+	private void put(Segment target, Book book)
+	{
+		Author author = book.getAuthor();
+		String[] nameTokens = tokens(Book.searchKey(book.getBookName()));
+		String[] authorTokens = author == null ? NO_TOKENS : tokens(Book.searchKey(author.getAuthorName()));
+		String[] tokens = Arrays.stream(concat(nameTokens, authorTokens)).distinct().toArray(String[]::new);
+		target.put(new Entry(book.getId(), mapper.bookDtoFromBook(book), tokens));
+	}
+	
+	private static String[] concat(String[] first, String[] second)
+	{
+		String[] all = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, all, first.length, second.length);
+		return all;
+	}
+	
+	private static String[] tokens(String text)
+	{
+		if(text == null || text.isEmpty())
+			return NO_TOKENS;
+		return Arrays.stream(TOKEN_SEPARATOR.split(text))
+					.filter(token -> !token.isEmpty())
+					.toArray(String[]::new);
+	}
+	
+	private static long stringBytes(String value)
+	{
+		return value == null ? 0 : 40 + value.length();
+	}
+	
+	/**
+	 * One indexed book.
+	 */
+	private static class Entry
+	{
+		private final String id;
+		private final BookDto book;
+		private final String[] tokens;
+		
+		private Entry(String id, BookDto book, String[] tokens)
+		{
+			this.id = id;
+			this.book = book;
+			this.tokens = tokens;
+		}
+		
+		/**
+		 * Rechecks a match, as an ordinal read from a posting list may have been reused since.
+		 */
+		private boolean matches(String[] prefixes)
+		{
+			for(String prefix : prefixes)
+			{
+				boolean found = false;
+				for(String token : tokens)
+					found |= token.startsWith(prefix);
+				if(!found)
+					return false;
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Sorted ordinals of one token, in an array with room to grow. Ordinals below size never change,
+	 * so a reader holding the posting sees a consistent list: an ordinal larger than the last one is
+	 * appended in place and published by size, any other change copies into a new posting.
+	 */
+	private static class Posting
+	{
+		private final int[] ordinals;
+		private volatile int size;
+		
+		private Posting(int[] ordinals, int size)
+		{
+			this.ordinals = ordinals;
+			this.size = size;
+		}
+		
+		/**
+		 * @return this posting or a new one with the ordinal.
+		 */
+		private Posting insert(int ordinal)
+		{
+			int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+			if(at >= 0)
+				return this;
+			at = -at - 1;
+			if(at == size && size < ordinals.length)
+			{
+				ordinals[size] = ordinal;
+				size++;
+				return this;
+			}
+			int[] larger = new int[at == size ? ordinals.length * 2 : size + 1 + (size >> 3)];
+			System.arraycopy(ordinals, 0, larger, 0, at);
+			larger[at] = ordinal;
+			System.arraycopy(ordinals, at, larger, at + 1, size - at);
+			return new Posting(larger, size + 1);
+		}
+		
+		/**
+		 * @return this posting, a new one without the ordinal, or null if it was the last.
+		 */
+		private Posting remove(int ordinal)
+		{
+			int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+			if(at < 0)
+				return this;
+			if(size == 1)
+				return null;
+			int[] smaller = new int[size - 1];
+			System.arraycopy(ordinals, 0, smaller, 0, at);
+			System.arraycopy(ordinals, at + 1, smaller, at, size - at - 1);
+			return new Posting(smaller, size - 1);
+		}
+	}
+	
+	/**
+	 * Postings and document table.
+	 * Written by one thread at a time; readers see a posting only after its document is published.
+	 */
+	private static class Segment
+	{
+		private final ConcurrentSkipListMap<String, Posting> postings = new ConcurrentSkipListMap<>();
+		private final Map<String, Integer> ordinals = new HashMap<>();
+		private volatile Entry[] docs = new Entry[64];
+		private int[] free = new int[16];
+		private int freeCount;
+		private int next;
+		private volatile int live;
+		
+		/**
+		 * Postings of tokens starting with prefix, in token order, read lazily.
+		 */
+		private Collection<Posting> match(String prefix)
+		{
+			return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+		}
+		
+		/**
+		 * To add or replace a book, keeping its ordinal when replaced.
+		 */
+		private void put(Entry entry)
+		{
+			Integer existing = ordinals.get(entry.id);
+			String[] oldTokens = NO_TOKENS;
+			int ordinal;
+			if(existing != null)
+			{
+				ordinal = existing;
+				oldTokens = docs[ordinal].tokens;
+			}
+			else
+			{
+				ordinal = this.allocate();
+				ordinals.put(entry.id, ordinal);
+				live++;
+			}
+			docs[ordinal] = entry;
+			for(String token : entry.tokens)
+				if(!contains(oldTokens, token))
+					postings.compute(token, (key, posting) -> posting == null ? new Posting(new int[] {ordinal, 0}, 1)
+																				: posting.insert(ordinal));
+			for(String token : oldTokens)
+				if(!contains(entry.tokens, token))
+					this.unpost(token, ordinal);
+		}
+		
+		private void remove(String id)
+		{
+			Integer ordinal = id == null ? null : ordinals.remove(id);
+			if(ordinal == null)
+				return;
+			for(String token : docs[ordinal].tokens)
+				this.unpost(token, ordinal);
+			docs[ordinal] = null;
+			live--;
+			if(freeCount == free.length)
+				free = Arrays.copyOf(free, free.length * 2);
+			free[freeCount++] = ordinal;
+		}
+		
+		private int allocate()
+		{
+			if(freeCount > 0)
+				return free[--freeCount];
+			if(next == docs.length)
+				docs = Arrays.copyOf(docs, docs.length * 2);
+			return next++;
+		}
+		
+		private void unpost(String token, int ordinal)
+		{
+			postings.computeIfPresent(token, (key, posting) -> posting.remove(ordinal));
+		}
+		
+		private static boolean contains(String[] tokens, String token)
+		{
+			for(String candidate : tokens)
+				if(candidate.equals(token))
+					return true;
+			return false;
+		}
+	}
+}
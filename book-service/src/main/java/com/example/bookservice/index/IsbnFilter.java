@@ -0,0 +1,372 @@
+package com.example.bookservice.index;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.bookservice.event.BookChangeStream;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+import com.example.bookservice.repository.BookRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Bloom filter over the ISBN of every book, to answer lookups of ISBNs that do not exist without a
+ * database round trip. mightContain false is definite, true may be a false positive.
+ * The filter is built from the book collection on startup, and inserts are added from the change
+ * events and, before the write, by addBook and import. It is used once the change stream opens and
+ * the books inserted since the build began are added. While the stream is interrupted inserts by other
+ * instances may be missed, so the filter is set aside; it is used again when the stream resumes after
+ * its last change, and rebuilt when the stream could not resume or the collection was dropped or
+ * renamed. Deleted ISBNs can not be removed from a Bloom filter, they pass it and cost a round trip
+ * until the next rebuild. A rebuild also happens when inserts fill the filter beyond twice its target
+ * false positive rate.
+ * @Structure
+ * 	@Methods:
+ * 		1. public boolean mightContain(String isbn): false if no book has isbn.
+ * 		2. public void add(String isbn): to add the ISBN of a book about to be inserted.
+ * 		3. public void falsePositive(): to count a lookup the filter passed and found no book.
+ * 		4. public double falsePositiveRate(): estimated from the bits set.
+ * 		5. public long bytes(): memory used by the bits.
+ * 	@Fields:
+ * 		1. BookRepository bookRepository: to read ISBNs on rebuild.
+ * 		2. BookChangeStream changeStream: changes to apply.
+ * 		3. boolean enabled: false to pass every lookup to the database.
+ * 		4. long expectedIsbns, double targetRate: smallest capacity and false positive rate of a filter.
+ * 		5. Bloom filter: filter in use, null until the stream opens and while it is interrupted.
+ * 		6. Bloom suspended: filter kept current but not used, until the stream opens or resumes.
+ * 		7. Bloom building: filter being rebuilt, also given ISBNs added during the rebuild.
+ * 		8. AtomicLong interruptions: change stream interruptions, a filter is not used if one happened
+ * 			while it was built.
+ * 		9. Instant builtFrom, boolean opened: start time of the last build, whether the stream has opened.
+ * 		10. Counter absent, falsePositives: lookups answered by the filter, lookups it passed in vain.
+ */
+@Slf4j
+@Component
+public class IsbnFilter
+{
+	private static final int BATCH_SIZE = 10_000;
+	private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+	private static final BookChangeEvent STARTUP = BookChangeEvent.resync();
+	
+	private BookRepository bookRepository;
+	private BookChangeStream changeStream;
+	private boolean enabled;
+	private long expectedIsbns;
+	private double targetRate;
+	private volatile Bloom filter;
+	private volatile Bloom suspended;
+	private volatile Bloom building;
+	private volatile long lastCount;
+	private AtomicLong interruptions = new AtomicLong();
+	private Instant builtFrom;
+	private boolean opened;
+	private Counter absent;
+	private Counter falsePositives;
+	private Disposable subscription;
+	
+	@Autowired
+	public IsbnFilter(BookRepository bookRepository, BookChangeStream changeStream, MeterRegistry meterRegistry,
+					@Value("${book.isbn-filter.enabled:true}") boolean enabled,
+					@Value("${book.isbn-filter.expected-isbns:1000000}") long expectedIsbns,
+					@Value("${book.isbn-filter.false-positive-rate:0.01}") double targetRate)
+	{
+		this.bookRepository = bookRepository;
+		this.changeStream = changeStream;
+		this.enabled = enabled;
+		this.expectedIsbns = expectedIsbns;
+		this.targetRate = targetRate;
+		this.absent = meterRegistry.counter("book.isbn.filter.lookups", "result", "absent");
+		this.falsePositives = meterRegistry.counter("book.isbn.filter.lookups", "result", "false_positive");
+		Gauge.builder("book.isbn.filter.false.positive.rate", this, IsbnFilter::falsePositiveRate)
+			.description("False positive rate of the ISBN filter estimated from the bits set")
+			.register(meterRegistry);
+		Gauge.builder("book.isbn.filter.bytes", this, IsbnFilter::bytes)
+			.baseUnit("bytes")
+			.description("Memory used by the ISBN filter bits")
+			.register(meterRegistry);
+	}
+	
+	@PostConstruct
+	public void subscribe()
+	{
+		if(!enabled)
+			return;
+		subscription = changeStream.changes()
+								.startWith(STARTUP)
+								.doOnNext(this::onChange)
+								.filter(event -> event.getType() == ChangeType.RESYNC || this.overfilled())
+								.onBackpressureLatest()
+								.concatMap(this::resync, 1)
+								.subscribe();
+	}
+	
+	@PreDestroy
+	public void unsubscribe()
+	{
+		if(subscription != null)
+			subscription.dispose();
+	}
+	
+	public boolean mightContain(String isbn)
+	{
+		Bloom current = filter;
+		if(current == null || isbn == null || current.mightContain(isbn))
+			return true;
+		absent.increment();
+		return false;
+	}
+	
+	public void add(String isbn)
+	{
+		if(isbn == null)
+			return;
+		Bloom current = filter;
+		Bloom aside = suspended;
+		Bloom next = building;
+		if(current != null)
+			current.put(isbn);
+		if(aside != null)
+			aside.put(isbn);
+		if(next != null)
+			next.put(isbn);
+	}
+	
+	public void falsePositive()
+	{
+		if(filter != null)
+			falsePositives.increment();
+	}
+	
+	public double falsePositiveRate()
+	{
+		Bloom current = filter;
+		return current == null ? 0 : current.falsePositiveRate();
+	}
+	
+	public long bytes()
+	{
+		Bloom current = filter;
+		return current == null ? 0 : current.bytes();
+	}
+	
+	/**
+	 * To apply a change as soon as it is seen, also while a rebuild is running, so inserts queued
+	 * behind the rebuild can not be missed by a filter swapped in before them.
+	 */
+	private void onChange(BookChangeEvent event)
+	{
+		if(event.getType() == ChangeType.INTERRUPTED)
+		{
+			interruptions.incrementAndGet();
+			Bloom current = filter;
+			if(current != null)
+				suspended = current;
+			filter = null;
+		}
+		else if(event.getType() != ChangeType.DELETE && event.getDocument() != null)
+			this.add(event.getDocument().getString("isbn"));
+	}
+	
+	private boolean overfilled()
+	{
+		Bloom current = filter;
+		return current != null && building == null && current.falsePositiveRate() > 2 * targetRate;
+	}
+	
+	/**
+	 * To act on the STARTUP marker, a RESYNC, or a change that overfilled the filter.
+	 * @Structure:
+	 * 	1. STARTUP: build, set aside until the stream opens.
+	 * 	2. RESYNC resumed after a token: use the filter set aside, nothing was missed.
+	 * 	3. First RESYNC from the current time: add ISBNs of books modified since the startup build began,
+	 * 		less CLOCK_SKEW as other instances stamp last_modified with their own clock, then use it.
+	 * 	4. Any later RESYNC from the current time, or no filter to use: rebuild.
+	 * 	5. Overfilled: rebuild larger.
+	 */
+	private Mono<Void> resync(BookChangeEvent event)
+	{
+		if(event == STARTUP)
+			return this.rebuild(false);
+		if(event.getType() != ChangeType.RESYNC)
+			return this.rebuild(true);
+		boolean first = !opened;
+		opened = true;
+		if(suspended == null)
+			return this.rebuild(true);
+		if(event.getResumeToken() != null)
+			return Mono.fromRunnable(() -> this.use(suspended, interruptions.get()));
+		if(first && builtFrom != null)
+			return this.catchUp(builtFrom.minus(CLOCK_SKEW));
+		return this.rebuild(true);
+	}
+	
+	/**
+	 * To add the ISBNs of books modified since a time to the filter set aside, then use it.
+	 */
+	private Mono<Void> catchUp(Instant since)
+	{
+		Bloom aside = suspended;
+		long interrupted = interruptions.get();
+		return bookRepository.findModifiedSince(since, BATCH_SIZE)
+							.doOnNext(book -> aside.put(book.getIsbn()))
+							.then(Mono.fromRunnable(() -> this.use(aside, interrupted)))
+							.onErrorResume(e -> {
+								log.warn("@Book-Service:: ISBN filter catch up failed, rebuilding: "+e.getMessage());
+								return this.rebuild(true);
+							})
+							.then();
+	}
+	
+	/**
+	 * To use a filter, unless the change stream was interrupted since interrupted was read.
+	 */
+	private void use(Bloom bloom, long interrupted)
+	{
+		if(interruptions.get() != interrupted)
+			return;
+		filter = bloom;
+		if(suspended == bloom)
+			suspended = null;
+	}
+	
+	/**
+	 * To build a new filter from the book collection, sized for twice the books of the last build and
+	 * at least book.isbn-filter.expected-isbns. It is used if serve is true and the change stream was
+	 * not interrupted meanwhile, else set aside. If the rebuild fails the filter is not used until the
+	 * next one. A filter built too small for the collection is rebuilt right away with the count just read.
+	 */
+	private Mono<Void> rebuild(boolean serve)
+	{
+		Bloom fresh = new Bloom(Math.max(expectedIsbns, 2 * lastCount), targetRate);
+		building = fresh;
+		long interrupted = interruptions.get();
+		Instant from = Instant.now();
+		long start = System.nanoTime();
+		return bookRepository.findAllIsbns(BATCH_SIZE)
+							.doOnNext(fresh::put)
+							.count()
+							.doOnNext(count -> {
+								lastCount = count;
+								builtFrom = from;
+								suspended = fresh;
+								if(serve)
+									this.use(fresh, interrupted);
+								log.info("@Book-Service:: ISBN filter built, books: "+count+", bytes: "+fresh.bytes()
+											+", took ms: "+(System.nanoTime() - start) / 1_000_000);
+							})
+							.onErrorResume(e -> {
+								filter = null;
+								suspended = null;
+								log.warn("@Book-Service:: ISBN filter rebuild failed: "+e.getMessage());
+								return Mono.empty();
+							})
+							.doFinally(signal -> {
+								if(building == fresh)
+									building = null;
+							})
+							.then(Mono.defer(() -> (filter == fresh || suspended == fresh) && fresh.falsePositiveRate() > 2 * targetRate
+												? this.rebuild(serve) : Mono.empty()));
+	}
+	
+	/**
+	 * Bloom filter of m bits and k hash functions, derived from two 64 bit hashes of the ISBN
+	 * (Kirsch-Mitzenmacher). Bits are set with CAS, so puts and reads need no lock.
+	 */
+	private static class Bloom
+	{
+		private final AtomicLongArray words;
+		private final long bits;
+		private final int hashes;
+		private final AtomicLong bitsSet = new AtomicLong();
+		
+		private Bloom(long expected, double rate)
+		{
+			long m = (long) Math.ceil(-expected * Math.log(rate) / (Math.log(2) * Math.log(2)));
+			int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) / 64));
+			this.words = new AtomicLongArray(words);
+			this.bits = 64L * words;
+			this.hashes = Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+		}
+		
+		private void put(String isbn)
+		{
+			if(isbn == null)
+				return;
+			long h1 = mix(fnv(isbn));
+			long h2 = mix(h1) | 1;
+			for(int i = 0; i < hashes; i++)
+			{
+				long bit = Math.floorMod(h1 + i * h2, bits);
+				int word = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				long old;
+				do
+				{
+					old = words.get(word);
+					if((old & mask) != 0)
+						break;
+				}
+				while(!words.compareAndSet(word, old, old | mask));
+				if((old & mask) == 0)
+					bitsSet.incrementAndGet();
+			}
+		}
+		
+		private boolean mightContain(String isbn)
+		{
+			long h1 = mix(fnv(isbn));
+			long h2 = mix(h1) | 1;
+			for(int i = 0; i < hashes; i++)
+			{
+				long bit = Math.floorMod(h1 + i * h2, bits);
+				if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+					return false;
+			}
+			return true;
+		}
+		
+		private double falsePositiveRate()
+		{
+			return Math.pow((double) bitsSet.get() / bits, hashes);
+		}
+		
+		private long bytes()
+		{
+			return 16 + 8L * words.length();
+		}
+		
+		private static long fnv(String value)
+		{
+			long hash = 0xcbf29ce484222325L;
+			for(int i = 0; i < value.length(); i++)
+			{
+				hash ^= value.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			return hash;
+		}
+		
+		private static long mix(long z)
+		{
+			z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+			z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+			return z ^ (z >>> 33);
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package com.example.bookservice.model;
 
+import java.time.Instant;
+import java.util.Locale;
+
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -19,6 +23,7 @@ import lombok.ToString;
 @AllArgsConstructor
 @NoArgsConstructor
 @Document
+@CompoundIndex(name = "author_name_id", def = "{'author.author_name': 1, '_id': 1}")
 public class Book
 {
 	@Id
@@ -32,6 +37,16 @@ public class Book
 	private double rating;
 	private int quantity;	
 	private Author author;
+	@Indexed
+	@Field("book_name_lc")
+	private String bookNameLc;
+	@Indexed
+	@Field("author_name_lc")
+	private String authorNameLc;
+	@Indexed
+	@Field("last_modified")
+	private Instant lastModified;
+	private Long version;
 	
 	public Book(BookDto bookDto)
 	{
@@ -42,5 +57,17 @@ public class Book
 		this.author = bookDto.getAuthor();
 		this.isbn = bookDto.getIsbn();
 		this.rating = 0.0;
+		this.bookNameLc = searchKey(this.bookName);
+		this.authorNameLc = this.author == null ? null : searchKey(this.author.getAuthorName());
+		this.lastModified = Instant.now();
+	}
+	
+	/**
+	 * Normalized form of a name used for case-insensitive prefix search:
+	 * trimmed, lower case, single spaces.
+	 */
+	public static String searchKey(String name)
+	{
+		return name == null ? null : name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
 	}
 }
@@ -0,0 +1,113 @@
+package com.example.bookservice.model;
+
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @author Shivam
+ * Compact view of a change on the book collection.
+ * @Fields:
+ * 	1. ChangeType type: type of change.
+ * 	2. String id: id of the changed book, null for RESYNC and INTERRUPTED.
+ * 	3. Document document: full document after the change, null for deletes.
+ * 	4. String resumeToken: _data of the change stream resume token. For RESYNC, the token the stream
+ * 		was resumed after, null if it was opened from the current time and changes may have been missed.
+ * 	5. Document updatedFields: fields set by an UPDATE, by dotted path.
+ * 	6. List<String> removedFields: fields unset by an UPDATE.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class BookChangeEvent
+{
+	private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+	
+	private ChangeType type;
+	private String id;
+	private Document document;
+	private String resumeToken;
+	private Document updatedFields;
+	private List<String> removedFields;
+	
+	public static BookChangeEvent resync()
+	{
+		return resync(null);
+	}
+	
+	public static BookChangeEvent resync(String resumedAfter)
+	{
+		return new BookChangeEvent(ChangeType.RESYNC, null, null, resumedAfter, null, null);
+	}
+	
+	public static BookChangeEvent interrupted()
+	{
+		return new BookChangeEvent(ChangeType.INTERRUPTED, null, null, null, null, null);
+	}
+	
+	/**
+	 * To build event from a change stream event.
+	 * Collection level operations (drop, rename, invalidate) are reported as RESYNC.
+	 */
+	public static BookChangeEvent from(ChangeStreamEvent<Document> event)
+	{
+		ChangeStreamDocument<Document> raw = event.getRaw();
+		if(raw == null || raw.getOperationType() == null)
+			return resync();
+		
+		String token = tokenOf(raw.getResumeToken());
+		switch(raw.getOperationType())
+		{
+			case INSERT:
+				return new BookChangeEvent(ChangeType.INSERT, idOf(raw), raw.getFullDocument(), token, null, null);
+			case UPDATE:
+				UpdateDescription update = raw.getUpdateDescription();
+				return new BookChangeEvent(ChangeType.UPDATE, idOf(raw), raw.getFullDocument(), token,
+										update == null || update.getUpdatedFields() == null ? null
+												: DOCUMENT_CODEC.decode(new BsonDocumentReader(update.getUpdatedFields()),
+																		DecoderContext.builder().build()),
+										update == null ? null : update.getRemovedFields());
+			case REPLACE:
+				return new BookChangeEvent(ChangeType.REPLACE, idOf(raw), raw.getFullDocument(), token, null, null);
+			case DELETE:
+				return new BookChangeEvent(ChangeType.DELETE, idOf(raw), null, token, null, null);
+			default:
+				return resync();
+		}
+	}
+	
+	/**
+	 * @return the _data string of a resume token, which is all of it for MongoDB 4.2 and later.
+	 */
+	public static String tokenOf(BsonDocument resumeToken)
+	{
+		if(resumeToken == null || !resumeToken.isString("_data"))
+			return null;
+		return resumeToken.getString("_data").getValue();
+	}
+	
+	private static String idOf(ChangeStreamDocument<Document> raw)
+	{
+		BsonValue id = raw.getDocumentKey() == null ? null : raw.getDocumentKey().get("_id");
+		if(id == null)
+			return null;
+		if(id.isObjectId())
+			return id.asObjectId().getValue().toHexString();
+		if(id.isString())
+			return id.asString().getValue();
+		return id.toString();
+	}
+}
@@ -0,0 +1,17 @@
+package com.example.bookservice.model;
+
+/**
+ * @author Shivam
+ * Type of a BookChangeEvent.
+ * RESYNC and INTERRUPTED are not database operations: RESYNC is emitted whenever the change stream
+ * is (re)opened and INTERRUPTED whenever it fails, consumers must assume they missed changes.
+ */
+public enum ChangeType
+{
+	INSERT,
+	UPDATE,
+	REPLACE,
+	DELETE,
+	RESYNC,
+	INTERRUPTED
+}
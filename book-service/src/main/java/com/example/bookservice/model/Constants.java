@@ -1,5 +1,7 @@
 package com.example.bookservice.model;
 
+import java.util.Set;
+
 public class Constants 
 {
 	private Constants() {}
@@ -7,6 +9,20 @@ public class Constants
 	public static final String ENDPOINT_VERSION = "/v1";
 	public static final String BOOK_ENDPOINT = "/books";
 	public static final String UNPROCESSALE_EXCEPTION_MESSAGE = "No book exists for: ";
+	public static final String UNPROCESSABLE_ENTITY_MESSAGE = "Unprocessable Entity Passed";
+	public static final String INVALID_PARAMETER_MESSAGE = "Invalid Mandatory Parameter";
 	public static final String INTERNAL_SERVER_ERROR_MESSAGE = "Internal Server Error";
 	public static final String CORRELATION_ID = "X-Correlation-Id";
+	public static final String INVALID_CURSOR_MESSAGE = "Invalid cursor";
+	public static final String NOT_A_NUMBER_MESSAGE = " must be a number";
+	public static final String EMPTY_SEARCH_MESSAGE = "Search query can not be empty";
+	public static final String TOO_MANY_ISBNS_MESSAGE = "Number of ISBNs can not be more than ";
+	public static final String NULL_ISBN_MESSAGE = "ISBNs can not be null";
+	public static final String UNKNOWN_FIELD_MESSAGE = "Unknown field: ";
+	public static final String EMPTY_FIELDS_MESSAGE = "fields can not be empty";
+	public static final String DUPLICATE_BOOK_MESSAGE = "Book already exists";
+	public static final String INVALID_JSON_MESSAGE = "Invalid JSON: ";
+	public static final String UNSUPPORTED_IMPORT_MESSAGE = "Content type must be application/x-ndjson or text/csv";
+	public static final String INVALID_SINCE_MESSAGE = "since must be an ISO-8601 instant, e.g. 2022-01-31T00:00:00Z";
+	public static final Set<String> BOOK_FIELDS = Set.of("book_name", "price", "isbn", "quantity", "author");
 }
@@ -1,5 +1,9 @@
 package com.example.bookservice.repository;
 
+import java.util.Collection;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -9,9 +13,13 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Repository(value = "bookRepository")
-public interface BookRepository extends ReactiveMongoRepository<Book, String>
+public interface BookRepository extends ReactiveMongoRepository<Book, String>, BookRepositoryCustom
 {
 	public Mono<Book> findByIsbn(String isbn);
 	public Flux<Book> findByAuthorAuthorName(String authorName);
 	public Mono<Book> findByBookName(String bookName);
+	public Flux<Book> findByIsbnIn(Collection<String> isbns);
+	public Flux<Book> findByAuthorAuthorNameOrderByIdAsc(String authorName, Pageable pageable);
+	public Flux<Book> findByAuthorAuthorNameAndIdGreaterThanOrderByIdAsc(String authorName, ObjectId id,
+																			Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.example.bookservice.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+import com.example.bookservice.model.Book;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Repository fragment for reads that only load the requested fields of a book, for prefix search, for
+ * bulk inserts, for exports and for deletes. Field names are book collection field names, e.g. book_name, price, isbn.
+ */
+public interface BookRepositoryCustom
+{
+	public Mono<Document> findProjectedByIsbn(String isbn, Collection<String> fields);
+	public Mono<Document> findProjectedByBookName(String bookName, Collection<String> fields);
+	public Flux<Document> findProjectedByAuthorName(String authorName, Collection<String> fields);
+	public Flux<Book> findByBookNamePrefix(String prefix, int limit);
+	public Flux<Book> findByAuthorNamePrefix(String prefix, int limit);
+	public Mono<Map<Integer, String>> insertUnordered(List<Book> books);
+	public Flux<Book> findModifiedSince(Instant since, int batchSize);
+	public Flux<String> findAllIsbns(int batchSize);
+	public Mono<String> removeByIsbn(String isbn);
+	public Mono<Map<String, String>> removeByIsbnIn(Collection<String> isbns);
+}
@@ -0,0 +1,222 @@
+package com.example.bookservice.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.Constants;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Implementation of BookRepositoryCustom backed by ReactiveMongoTemplate.
+ * Only the requested fields are sent by the server and decoded, as a plain Document instead of a Book.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Mono<Document> findProjectedByIsbn(String isbn, Collection<String> fields)
+ * 		2. public Mono<Document> findProjectedByBookName(String bookName, Collection<String> fields)
+ * 		3. public Flux<Document> findProjectedByAuthorName(String authorName, Collection<String> fields)
+ * 		4. public Flux<Book> findByBookNamePrefix(String prefix, int limit)
+ * 		5. public Flux<Book> findByAuthorNamePrefix(String prefix, int limit)
+ * 		6. public Mono<Map<Integer, String>> insertUnordered(List<Book> books): to insert books with one
+ * 			unordered insertMany.
+ * 		7. public Flux<Book> findModifiedSince(Instant since, int batchSize): to read all books, or those
+ * 			changed since a time.
+ * 		8. public Flux<String> findAllIsbns(int batchSize): to read the ISBN of every book.
+ * 		9. public Mono<String> removeByIsbn(String isbn): to delete a book in one round trip.
+ * 		10. public Mono<Map<String, String>> removeByIsbnIn(Collection<String> isbns): to delete many books
+ * 			with one deleteMany.
+ * 		11. private Query projectedQuery(Criteria criteria, Collection<String> fields): to build a query
+ * 			returning only fields.
+ * 		12. private Query prefixQuery(String field, String prefix, int limit): to build an index range
+ * 			query for a prefix.
+ * 	@Fields:
+ * 		1. ReactiveMongoTemplate mongoTemplate: to execute queries.
+ */
+public class BookRepositoryCustomImpl implements BookRepositoryCustom
+{
+	private ReactiveMongoTemplate mongoTemplate;
+	
+	@Autowired
+	public BookRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate)
+	{
+		this.mongoTemplate = mongoTemplate;
+	}
+	
+	@Override
+	public Mono<Document> findProjectedByIsbn(String isbn, Collection<String> fields)
+	{
+		return mongoTemplate.findOne(this.projectedQuery(Criteria.where("isbn").is(isbn), fields),
+									Document.class, mongoTemplate.getCollectionName(Book.class));
+	}
+	
+	@Override
+	public Mono<Document> findProjectedByBookName(String bookName, Collection<String> fields)
+	{
+		return mongoTemplate.findOne(this.projectedQuery(Criteria.where("book_name").is(bookName), fields),
+									Document.class, mongoTemplate.getCollectionName(Book.class));
+	}
+	
+	@Override
+	public Flux<Document> findProjectedByAuthorName(String authorName, Collection<String> fields)
+	{
+		return mongoTemplate.find(this.projectedQuery(Criteria.where("author.author_name").is(authorName), fields),
+									Document.class, mongoTemplate.getCollectionName(Book.class));
+	}
+	
+	/**
+	 * To find books whose normalized book name starts with prefix, ordered by normalized book name.
+	 * @param prefix: normalized with Book.searchKey.
+	 * @param limit
+	 * @return Flux<Book>
+	 */
+	@Override
+	public Flux<Book> findByBookNamePrefix(String prefix, int limit)
+	{
+		return mongoTemplate.find(this.prefixQuery("bookNameLc", prefix, limit), Book.class);
+	}
+	
+	/**
+	 * To find books whose normalized author name starts with prefix, ordered by normalized author name.
+	 * @param prefix: normalized with Book.searchKey.
+	 * @param limit
+	 * @return Flux<Book>
+	 */
+	@Override
+	public Flux<Book> findByAuthorNamePrefix(String prefix, int limit)
+	{
+		return mongoTemplate.find(this.prefixQuery("authorNameLc", prefix, limit), Book.class);
+	}
+	
+	/**
+	 * To insert books with a single unordered insertMany: a book that can not be inserted, e.g. a
+	 * duplicate ISBN or book name, does not stop the others.
+	 * @param books
+	 * @return Mono<Map<Integer, String>> error message by index in books of the books not inserted.
+	 */
+	@Override
+	public Mono<Map<Integer, String>> insertUnordered(List<Book> books)
+	{
+		if(books.isEmpty())
+			return Mono.just(Collections.emptyMap());
+		List<Document> documents = new ArrayList<>(books.size());
+		books.forEach(book -> {
+			Document document = new Document();
+			mongoTemplate.getConverter().write(book, document);
+			documents.add(document);
+		});
+		
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Book.class))
+						.flatMap(collection -> Mono.from(
+								collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+						.<Map<Integer, String>>map(result -> Collections.emptyMap())
+						.onErrorResume(MongoBulkWriteException.class, e -> {
+							Map<Integer, String> errors = new HashMap<>();
+							e.getWriteErrors().forEach(error -> errors.put(error.getIndex(),
+									ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY
+											? Constants.DUPLICATE_BOOK_MESSAGE
+											: error.getMessage()));
+							return Mono.just(errors);
+						});
+	}
+	
+	/**
+	 * To read books with one cursor, fetching batchSize books per getMore as the stream is consumed.
+	 * @param since: lowest last_modified, null for all books including those never modified since
+	 * 		last_modified was introduced.
+	 * @param batchSize
+	 * @return Flux<Book> in natural order.
+	 */
+	@Override
+	public Flux<Book> findModifiedSince(Instant since, int batchSize)
+	{
+		Query query = since == null ? new Query() : Query.query(Criteria.where("lastModified").gte(since));
+		return mongoTemplate.find(query.cursorBatchSize(batchSize), Book.class);
+	}
+	
+	/**
+	 * ISBN of every book. The range isbn >= "" selects every string ISBN and lets the planner pick the
+	 * unique isbn index, and as _id is excluded the query is then covered. It is not hinted: the
+	 * startup build of IsbnFilter can run before IndexInitializer has created the index, and a hint
+	 * naming a missing index fails the query.
+	 * @param batchSize: ISBNs per cursor batch.
+	 * @return Flux<String>
+	 */
+	@Override
+	public Flux<String> findAllIsbns(int batchSize)
+	{
+		Query query = this.projectedQuery(Criteria.where("isbn").gte(""), Collections.singletonList("isbn"))
+						.cursorBatchSize(batchSize);
+		return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Book.class))
+							.map(document -> document.getString("isbn"));
+	}
+	
+	/**
+	 * To delete the book of an ISBN with one findAndModify, returning only its id.
+	 * @param isbn
+	 * @return Mono<String> id of the deleted book, empty if none.
+	 */
+	@Override
+	public Mono<String> removeByIsbn(String isbn)
+	{
+		Query query = Query.query(Criteria.where("isbn").is(isbn));
+		query.fields().include("_id");
+		return mongoTemplate.findAndRemove(query, Document.class, mongoTemplate.getCollectionName(Book.class))
+							.map(document -> document.get("_id").toString());
+	}
+	
+	/**
+	 * To delete the books of many ISBNs. Which ISBNs exist is read first, only isbn and id of each, as
+	 * deleteMany only reports a count; then one deleteMany removes them by id.
+	 * A book deleted concurrently between both is reported deleted, it is gone either way.
+	 * @param isbns
+	 * @return Mono<Map<String, String>> id of each deleted book by ISBN.
+	 */
+	@Override
+	public Mono<Map<String, String>> removeByIsbnIn(Collection<String> isbns)
+	{
+		Query query = Query.query(Criteria.where("isbn").in(isbns));
+		query.fields().include("isbn");
+		return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Book.class))
+							.collectMap(document -> document.getString("isbn"), document -> document.get("_id").toString())
+							.flatMap(ids -> ids.isEmpty() ? Mono.just(ids)
+											: mongoTemplate.remove(Query.query(Criteria.where("id").in(ids.values())), Book.class)
+															.thenReturn(ids));
+	}
+	
+	private Query projectedQuery(Criteria criteria, Collection<String> fields)
+	{
+		Query query = Query.query(criteria);
+		fields.forEach(field -> query.fields().include(field));
+		query.fields().exclude("_id");
+		return query;
+	}
+	
+	/**
+	 * Prefix as a range on an indexed field (prefix <= field < prefix + U+FFFF) instead of a regex,
+	 * so the index is walked only over matching keys.
+	 */
+	private Query prefixQuery(String field, String prefix, int limit)
+	{
+		return Query.query(Criteria.where(field).gte(prefix).lt(prefix + Character.MAX_VALUE))
+					.with(Sort.by(field))
+					.limit(limit);
+	}
+}
@@ -0,0 +1,51 @@
+package com.example.bookservice.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+
+import com.example.bookservice.model.Book;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Shivam
+ * This class creates the indexes declared on Book once the application is ready, instead of
+ * spring.data.mongodb.auto-index-creation doing it while the context starts, so new instances take
+ * traffic sooner. Indexes that already exist are left as they are; on a new database queries run
+ * without them until they are built.
+ * @Structure
+ * 	@Methods:
+ * 		1. public void createIndexes(): to ensure every index of Book, one at a time.
+ * 	@Fields:
+ * 		1. ReactiveMongoTemplate mongoTemplate: to create indexes.
+ */
+@Slf4j
+@Component
+public class IndexInitializer
+{
+	private ReactiveMongoTemplate mongoTemplate;
+	
+	@Autowired
+	public IndexInitializer(ReactiveMongoTemplate mongoTemplate)
+	{
+		this.mongoTemplate = mongoTemplate;
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public void createIndexes()
+	{
+		IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+		long start = System.nanoTime();
+		Flux.fromIterable(resolver.resolveIndexFor(Book.class))
+			.concatMap(index -> mongoTemplate.indexOps(Book.class).ensureIndex(index))
+			.count()
+			.subscribe(count -> log.info("@Book-Service:: Indexes ensured: "+count+", took ms: "
+											+(System.nanoTime() - start) / 1_000_000),
+						e -> log.warn("@Book-Service:: Index creation failed: "+e.getMessage()));
+	}
+}
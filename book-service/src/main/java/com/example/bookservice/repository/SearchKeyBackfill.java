@@ -0,0 +1,101 @@
+package com.example.bookservice.repository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.bookservice.model.Book;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * This class fills the normalized search keys of books written before they existed, once the
+ * application is ready. Keys are computed by Book.searchKey, as for books written since, so prefix
+ * search finds both alike: an update pipeline can not collapse inner whitespace, and $toLower only
+ * lower cases ASCII.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Mono<Long> backfill(): to set book_name_lc and author_name_lc where missing.
+ * 	@Fields:
+ * 		1. ReactiveMongoTemplate mongoTemplate: to read books and write their keys.
+ */
+@Slf4j
+@Component
+public class SearchKeyBackfill
+{
+	private static final int BATCH_SIZE = 1000;
+	private static final String BOOK_NAME = "book_name";
+	private static final String AUTHOR_NAME = "author.author_name";
+
+	private ReactiveMongoTemplate mongoTemplate;
+
+	@Autowired
+	public SearchKeyBackfill(ReactiveMongoTemplate mongoTemplate)
+	{
+		this.mongoTemplate = mongoTemplate;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void onReady()
+	{
+		this.backfill()
+			.subscribe(count -> log.info("@Book-Service:: Search keys backfilled for "+count+" books"),
+						e -> log.warn("@Book-Service:: Search key backfill failed: "+e.getMessage()));
+	}
+
+	/**
+	 * To set the search keys of books missing them.
+	 * @Structure:
+	 * 	1. Read id and names of books missing a key with one cursor.
+	 * 	2. Compute keys with Book.searchKey.
+	 * 	3. Write each batch of BATCH_SIZE books with one unordered bulkWrite, matching the names read
+	 * 		so a book renamed meanwhile, whose keys its writer has set, is left alone.
+	 * @return Mono<Long> with the number of books updated.
+	 */
+	public Mono<Long> backfill()
+	{
+		Bson missing = Filters.or(Filters.exists("book_name_lc", false), Filters.exists("author_name_lc", false));
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Book.class))
+						.flatMap(collection -> Flux.from(collection.find(missing)
+																.projection(Projections.include(BOOK_NAME, AUTHOR_NAME))
+																.batchSize(BATCH_SIZE))
+												.buffer(BATCH_SIZE)
+												.concatMap(books -> this.write(collection, books))
+												.reduce(0L, Long::sum));
+	}
+
+	private Mono<Long> write(MongoCollection<Document> collection, List<Document> books)
+	{
+		List<UpdateOneModel<Document>> updates = books.stream()
+													.map(book -> {
+														String bookName = book.getString(BOOK_NAME);
+														Document author = book.get("author", Document.class);
+														String authorName = author == null ? null : author.getString("author_name");
+														return new UpdateOneModel<Document>(
+																	Filters.and(Filters.eq("_id", book.get("_id")),
+																				Filters.eq(BOOK_NAME, bookName),
+																				Filters.eq(AUTHOR_NAME, authorName)),
+																	Updates.combine(Updates.set("book_name_lc", Book.searchKey(bookName)),
+																					Updates.set("author_name_lc", Book.searchKey(authorName))));
+													})
+													.collect(Collectors.toList());
+		return Mono.from(collection.bulkWrite(updates, new BulkWriteOptions().ordered(false)))
+					.map(result -> (long) result.getModifiedCount());
+	}
+}
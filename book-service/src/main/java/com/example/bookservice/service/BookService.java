@@ -1,6 +1,18 @@
 package com.example.bookservice.service;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import com.example.bookservice.cache.BookEntry;
+import com.example.bookservice.dto.BookDeleteDto;
 import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.dto.BookImportRecord;
+import com.example.bookservice.dto.BookImportResultDto;
+import com.example.bookservice.dto.BookLookupDto;
+import com.example.bookservice.dto.BookPageDto;
+import com.example.bookservice.dto.BookSearchDto;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -9,7 +21,19 @@ public interface BookService
 {
 	public Mono<BookDto> addBook(BookDto bookDto);
 	public Mono<BookDto> findByIsbn(String isbn);
+	public Mono<BookEntry> findEntryByIsbn(String isbn);
+	public Mono<Map<String, BookLookupDto>> findByIsbns(Collection<String> isbns);
 	public Flux<BookDto> findByAuthorName(String authoName);
+	public Mono<BookPageDto> findByAuthorName(String authorName, String cursor, Integer limit);
 	public Mono<Void> deleteBook(String isbn);
+	public Mono<Map<String, BookDeleteDto>> deleteBooks(Collection<String> isbns);
 	public Mono<BookDto> findByBookName(String bookName);
+	public Mono<BookEntry> findEntryByBookName(String bookName);
+	public Mono<Map<String, Object>> findByIsbn(String isbn, Set<String> fields);
+	public Mono<Map<String, Object>> findByBookName(String bookName, Set<String> fields);
+	public Flux<Map<String, Object>> findByAuthorName(String authorName, Set<String> fields);
+	public Mono<BookSearchDto> search(String query, Integer limit, Integer offset);
+	public Flux<BookDto> suggest(String prefix, Integer limit);
+	public Flux<BookImportResultDto> importBooks(Flux<BookImportRecord> records);
+	public Flux<BookDto> export(Instant since);
 }
@@ -1,17 +1,58 @@
 package com.example.bookservice.service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import com.example.bookservice.cache.BookCache;
+import com.example.bookservice.cache.BookEntry;
+import com.example.bookservice.cache.SingleFlight;
+import com.example.bookservice.dto.BookDeleteDto;
 import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.dto.BookImportRecord;
+import com.example.bookservice.dto.BookImportResultDto;
+import com.example.bookservice.dto.BookLookupDto;
+import com.example.bookservice.dto.BookPageDto;
+import com.example.bookservice.dto.BookSearchDto;
+import com.example.bookservice.exception.BadRequestException;
 import com.example.bookservice.exception.UnprocessableEntityException;
+import com.example.bookservice.index.BookIndex;
+import com.example.bookservice.index.IsbnFilter;
 import com.example.bookservice.mapper.CustomObjectMapper;
 import com.example.bookservice.model.Book;
 import com.example.bookservice.model.Constants;
 import com.example.bookservice.repository.BookRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 /**
  * @author Shivam
@@ -23,22 +64,101 @@ import reactor.core.publisher.Mono;
  * 		3. public Mono<ServerResponse> findByAuthorName(ServerRequest request): to find book by author name.
  * 		4. public Mono<ServerResponse> findByIsbn(ServerRequest request): find book by ISBN.
  * 		5. public Mono<ServerResponse> deleteBook(ServerRequest request): to delete book by ISBN.
+ * 		6. public Mono<BookPageDto> findByAuthorName(String authorName, String cursor, Integer limit): to find
+ * 			one page of books by author name.
+ * 		7. public Mono<Map<String, BookLookupDto>> findByIsbns(Collection<String> isbns): to find many books
+ * 			by ISBN.
+ * 		8. public Mono<Map<String, Object>> findByIsbn(String isbn, Set<String> fields), findByBookName(String
+ * 			bookName, Set<String> fields), Flux<Map<String, Object>> findByAuthorName(String authorName,
+ * 			Set<String> fields): to find only some fields of books.
+ * 		9. public Mono<BookSearchDto> search(String query, Integer limit, Integer offset): to search books by
+ * 			book name or author name prefix.
+ * 		10. public Flux<BookDto> suggest(String prefix, Integer limit): type-ahead suggestions from the
+ * 			in-memory index.
+ * 		11. public Flux<BookImportResultDto> importBooks(Flux<BookImportRecord> records): to insert a stream
+ * 			of books in batches.
+ * 		12. public Flux<BookDto> export(Instant since): to stream the catalog, or the books changed since a time.
+ * 		13. public Mono<Map<String, BookDeleteDto>> deleteBooks(Collection<String> isbns): to delete many
+ * 			books by ISBN.
  * 	@Fields:
  * 		1. private BookRepository bookRepository: To communicate with book repository.
  *		2. private CustomObjectMapper mapper: To map different objects.
+ *		3. private ObjectMapper objectMapper: To encode cached books once.
+ *		4. private BookCache bookCache: To serve hot books without a database round trip.
+ *		5. private SingleFlight<BookEntry> isbnLookups, bookNameLookups: To share one repository call
+ *			among concurrent lookups of the same key.
+ *		6. private int defaultPageSize, maxPageSize: Page size limits of paginated queries.
+ *		7. private int isbnChunkSize: Largest number of ISBNs in one $in query.
+ *		8. private int defaultSearchSize, maxSearchSize, maxSearchOffset, Duration searchBudget: Search limits.
+ *		9. private BookIndex bookIndex: In-memory suggestion index.
+ *		10. private IsbnFilter isbnFilter: To answer lookups of unknown ISBNs without a database round trip.
+ *		11. private int defaultSuggestSize, maxSuggestSize: Suggestion limits.
+ *		12. private int importBatchSize, importConcurrency: Books per insertMany and insertMany in flight.
+ *		13. private int exportBatchSize: Books per cursor batch of an export.
  */
+@Slf4j
 @Service(value = "bookService")
 public class BookServiceImpl implements BookService
 {
 	private BookRepository bookRepository;
 	private CustomObjectMapper mapper;
+	private ObjectMapper objectMapper;
+	private BookCache bookCache;
+	private SingleFlight<BookEntry> isbnLookups;
+	private SingleFlight<BookEntry> bookNameLookups;
+	private int defaultPageSize;
+	private int maxPageSize;
+	private int isbnChunkSize;
+	private int defaultSearchSize;
+	private int maxSearchSize;
+	private int maxSearchOffset;
+	private Duration searchBudget;
+	private BookIndex bookIndex;
+	private IsbnFilter isbnFilter;
+	private int defaultSuggestSize;
+	private int maxSuggestSize;
+	private int importBatchSize;
+	private int importConcurrency;
+	private int exportBatchSize;
 	
 	@Autowired
-	public BookServiceImpl(BookRepository bookRepository, CustomObjectMapper mapper)
+	public BookServiceImpl(BookRepository bookRepository, CustomObjectMapper mapper, ObjectMapper objectMapper,
+							BookCache bookCache,
+							BookIndex bookIndex, IsbnFilter isbnFilter, MeterRegistry meterRegistry,
+							@Value("${book.page.default-size:20}") int defaultPageSize,
+							@Value("${book.page.max-size:100}") int maxPageSize,
+							@Value("${book.batch.isbn-chunk-size:500}") int isbnChunkSize,
+							@Value("${book.search.default-size:10}") int defaultSearchSize,
+							@Value("${book.search.max-size:50}") int maxSearchSize,
+							@Value("${book.search.max-offset:200}") int maxSearchOffset,
+							@Value("${book.search.latency-budget:200ms}") Duration searchBudget,
+							@Value("${book.suggest.default-size:10}") int defaultSuggestSize,
+							@Value("${book.suggest.max-size:50}") int maxSuggestSize,
+							@Value("${book.import.batch-size:1000}") int importBatchSize,
+							@Value("${book.import.concurrency:2}") int importConcurrency,
+							@Value("${book.export.batch-size:1000}") int exportBatchSize)
 	{
 		super();
 		this.bookRepository = bookRepository;
 		this.mapper = mapper;
+		this.objectMapper = objectMapper;
+		this.bookCache = bookCache;
+		this.isbnLookups = new SingleFlight<>(meterRegistry.counter("book.lookup.coalesced", "lookup", "isbn"));
+		this.bookNameLookups = new SingleFlight<>(meterRegistry.counter("book.lookup.coalesced", "lookup", "name"));
+		this.defaultPageSize = defaultPageSize;
+		this.maxPageSize = maxPageSize;
+		this.isbnChunkSize = isbnChunkSize;
+		this.defaultSearchSize = defaultSearchSize;
+		this.maxSearchSize = maxSearchSize;
+		this.maxSearchOffset = maxSearchOffset;
+		this.searchBudget = searchBudget;
+		this.bookIndex = bookIndex;
+		this.isbnFilter = isbnFilter;
+		this.defaultSuggestSize = defaultSuggestSize;
+		this.maxSuggestSize = maxSuggestSize;
+		this.importBatchSize = importBatchSize;
+		this.importConcurrency = importConcurrency;
+		this.exportBatchSize = exportBatchSize;
 	}
 	
 	/**
@@ -51,25 +171,141 @@ public class BookServiceImpl implements BookService
 	@Override
 	public Mono<BookDto> addBook(BookDto bookDto)
 	{
+		isbnFilter.add(bookDto.getIsbn());
 		return bookRepository.save(new Book(bookDto))
 							.map(book -> mapper.bookDtoFromBook(book));
 	}
 	
 	/**
-	 * To find book by ISBN.
+	 * To insert a stream of books, reading ahead at most book.import.concurrency batches.
 	 * @Structure:
-	 * 	1. Call repository method.
-	 * 	2. If empty response:
-	 * 		throw UnprocessableEntityException
-	 * 	3. @return Mono<BookDto>
+	 * 	1. Group records in batches of book.import.batch-size.
+	 * 	2. Insert the valid books of each batch with one unordered insertMany,
+	 * 		book.import.concurrency batches at a time.
+	 * 	3. Report invalid records and books the insert rejected, e.g. duplicates.
+	 * 	4. @return Flux<BookImportResultDto> with one result per failed line, then the summary.
+	 */
+	@Override
+	public Flux<BookImportResultDto> importBooks(Flux<BookImportRecord> records)
+	{
+		AtomicLong read = new AtomicLong();
+		AtomicLong failed = new AtomicLong();
+		return records.doOnNext(record -> read.incrementAndGet())
+					.buffer(importBatchSize)
+					.flatMap(this::insertBatch, importConcurrency)
+					.doOnNext(failure -> failed.incrementAndGet())
+					.concatWith(Mono.fromSupplier(() -> BookImportResultDto.summary(read.get(), failed.get())));
+	}
+	
+	private Flux<BookImportResultDto> insertBatch(List<BookImportRecord> batch)
+	{
+		List<BookImportResultDto> failures = new ArrayList<>();
+		List<BookImportRecord> valid = new ArrayList<>(batch.size());
+		for(BookImportRecord record : batch)
+		{
+			if(record.isValid())
+				valid.add(record);
+			else
+				failures.add(BookImportResultDto.failure(record.getLine(),
+								record.getBook() == null ? null : record.getBook().getIsbn(), record.getErrors()));
+		}
+		List<Book> books = valid.stream().map(record -> new Book(record.getBook())).collect(Collectors.toList());
+		books.forEach(book -> isbnFilter.add(book.getIsbn()));
+		return bookRepository.insertUnordered(books)
+					.flatMapIterable(errors -> {
+						errors.forEach((index, error) -> {
+							BookImportRecord record = valid.get(index);
+							failures.add(BookImportResultDto.failure(record.getLine(), record.getBook().getIsbn(),
+																	Collections.singletonList(error)));
+						});
+						failures.sort(Comparator.comparing(BookImportResultDto::getLine));
+						return failures;
+					});
+	}
+	
+	/**
+	 * To stream the catalog without collecting it, book.export.batch-size books per cursor batch.
+	 * @param since: lowest last modified time, null for all books.
+	 * @return Flux<BookDto>
 	 */
+	@Override
+	public Flux<BookDto> export(Instant since)
+	{
+		return bookRepository.findModifiedSince(since, exportBatchSize)
+							.map(mapper::bookDtoFromBook);
+	}
+	
 	@Override
 	public Mono<BookDto> findByIsbn(String isbn)
 	{
-		return bookRepository.findByIsbn(isbn)
-						.switchIfEmpty(Mono.error(
-								new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+isbn)))
-						.map(book -> mapper.bookDtoFromBook(book));
+		return this.findEntryByIsbn(isbn).map(BookEntry::getBook);
+	}
+	
+	/**
+	 * To find book by ISBN, with its entity tag.
+	 * @Structure:
+	 * 	1. If cached, @return cached book.
+	 * 	2. If the ISBN filter does not have the ISBN, throw UnprocessableEntityException.
+	 * 	3. Call repository method, or join the call already running for this ISBN.
+	 * 	4. If empty response:
+	 * 		throw UnprocessableEntityException
+	 * 	5. Map and cache book.
+	 * 	6. @return Mono<BookEntry>
+	 */
+	@Override
+	public Mono<BookEntry> findEntryByIsbn(String isbn)
+	{
+		return Mono.defer(() -> {
+			BookEntry cached = bookCache.getByIsbn(isbn);
+			if(cached != null)
+				return Mono.just(cached);
+			if(!isbnFilter.mightContain(isbn))
+				return Mono.error(UnprocessableEntityException.notFound(isbn));
+			
+			return isbnLookups.execute(isbn, () -> {
+				long generation = bookCache.generation();
+				return bookRepository.findByIsbn(isbn)
+							.switchIfEmpty(this.isbnNotFound(isbn))
+							.map(book -> this.cacheBook(book, generation));
+			});
+		});
+	}
+	
+	/**
+	 * To find many books by ISBN.
+	 * @Structure:
+	 * 	1. Take cached books from the cache, drop ISBNs the ISBN filter does not have.
+	 * 	2. Call repository method with remaining ISBNs, one $in query per book.batch.isbn-chunk-size ISBNs.
+	 * 	3. Map and cache found books.
+	 * 	4. @return Mono<Map<String, BookLookupDto>> with one entry per requested ISBN, in request order,
+	 * 		found = false for unknown ISBNs.
+	 */
+	@Override
+	public Mono<Map<String, BookLookupDto>> findByIsbns(Collection<String> isbns)
+	{
+		return Mono.defer(() -> {
+			Set<String> keys = new LinkedHashSet<>(isbns);
+			Map<String, BookDto> found = new ConcurrentHashMap<>();
+			List<String> misses = new ArrayList<>();
+			keys.forEach(isbn -> {
+				BookEntry cached = bookCache.getByIsbn(isbn);
+				if(cached != null)
+					found.put(isbn, cached.getBook());
+				else if(isbnFilter.mightContain(isbn))
+					misses.add(isbn);
+			});
+			
+			long generation = bookCache.generation();
+			return Flux.fromIterable(misses)
+						.buffer(isbnChunkSize)
+						.flatMap(chunk -> bookRepository.findByIsbnIn(chunk))
+						.doOnNext(book -> found.put(book.getIsbn(), this.cacheBook(book, generation).getBook()))
+						.then(Mono.fromSupplier(() -> {
+							Map<String, BookLookupDto> results = new LinkedHashMap<>();
+							keys.forEach(isbn -> results.put(isbn, new BookLookupDto(found.containsKey(isbn), found.get(isbn))));
+							return results;
+						}));
+		});
 	}
 	
 	/**
@@ -84,44 +320,346 @@ public class BookServiceImpl implements BookService
 	public Flux<BookDto> findByAuthorName(String authoName)
 	{
 		return bookRepository.findByAuthorAuthorName(authoName)
-						.switchIfEmpty(Mono.error(
-								new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+authoName)))
+						.switchIfEmpty(Mono.error(() -> UnprocessableEntityException.notFound(authoName)))
 						.map(book -> mapper.bookDtoFromBook(book));
 	}
 	
+	/**
+	 * To find one page of books by author name, ordered by id.
+	 * @param authorName
+	 * @param cursor: next_cursor of the previous page, null for the first page.
+	 * @param limit: page size, null for default, capped to book.page.max-size.
+	 * @Structure:
+	 * 	1. Decode cursor into the last id of the previous page.
+	 * 	2. Call repository method for ids after the cursor, fetching one extra book.
+	 * 	3. If first page is empty:
+	 * 		throw UnprocessableEntityException
+	 * 	4. If the extra book was found, encode the last id of this page as next cursor.
+	 * 	5. @return Mono<BookPageDto>
+	 */
+	@Override
+	public Mono<BookPageDto> findByAuthorName(String authorName, String cursor, Integer limit)
+	{
+		int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+		Pageable pageable = PageRequest.of(0, pageSize + 1);
+		return Mono.defer(() -> {
+			Flux<Book> books = cursor == null
+					? bookRepository.findByAuthorAuthorNameOrderByIdAsc(authorName, pageable)
+								.switchIfEmpty(Mono.error(() -> UnprocessableEntityException.notFound(authorName)))
+					: bookRepository.findByAuthorAuthorNameAndIdGreaterThanOrderByIdAsc(authorName,
+																		this.decodeCursor(cursor), pageable);
+			return books.collectList()
+						.map(page -> {
+							boolean hasNext = page.size() > pageSize;
+							List<Book> content = hasNext ? page.subList(0, pageSize) : page;
+							String nextCursor = hasNext ? this.encodeCursor(content.get(pageSize - 1).getId()) : null;
+							return new BookPageDto(content.stream()
+															.map(book -> mapper.bookDtoFromBook(book))
+															.collect(Collectors.toList()),
+													nextCursor);
+						});
+		});
+	}
+	
+	private String encodeCursor(String id)
+	{
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * To decode a page cursor.
+	 * @param cursor
+	 * @return id of the last book of the previous page.
+	 * @throws BadRequestException if cursor is not a cursor produced by encodeCursor.
+	 */
+	private ObjectId decodeCursor(String cursor)
+	{
+		try
+		{
+			String id = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			if(ObjectId.isValid(id))
+				return new ObjectId(id);
+		}
+		catch(IllegalArgumentException e)
+		{
+			log.debug("@Book-Service:: "+e.getLocalizedMessage());
+		}
+		throw new BadRequestException(Collections.singletonList(Constants.INVALID_CURSOR_MESSAGE));
+	}
+	
 	/**
 	 * To delete book by ISBN.
 	 * @Structure:
-	 * 	1. Call repository findByIsbn method.
-	 * 	2. if empty response:
+	 * 	1. If the ISBN filter does not have the ISBN, throw UnprocessableEntityException.
+	 * 	2. Call repository method to delete the book in one round trip.
+	 * 	3. if nothing was deleted:
 	 * 		throw UnprocessableEntityException
-	 * 	3. Call repository layer to delete book.
-	 * 	4. @return Mono<Void>.
+	 * 	4. Invalidate cached book.
+	 * 	5. @return Mono<Void>.
 	 */
 	@Override
 	public Mono<Void> deleteBook(String isbn) 
 	{
-		return bookRepository.findByIsbn(isbn)
-							.switchIfEmpty(Mono.error(
-									new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+isbn)))
-							.flatMap(book -> bookRepository.delete(book));
+		if(!isbnFilter.mightContain(isbn))
+			return Mono.error(UnprocessableEntityException.notFound(isbn));
+		return bookRepository.removeByIsbn(isbn)
+							.switchIfEmpty(this.isbnNotFound(isbn))
+							.doOnNext(id -> bookCache.invalidate(id))
+							.then();
+	}
+	
+	/**
+	 * To delete many books by ISBN.
+	 * @Structure:
+	 * 	1. Drop ISBNs the ISBN filter does not have.
+	 * 	2. Call repository method with remaining ISBNs, one deleteMany per book.batch.isbn-chunk-size ISBNs.
+	 * 	3. Invalidate cached books.
+	 * 	4. @return Mono<Map<String, BookDeleteDto>> with one entry per requested ISBN, in request order,
+	 * 		deleted = false for unknown ISBNs.
+	 */
+	@Override
+	public Mono<Map<String, BookDeleteDto>> deleteBooks(Collection<String> isbns)
+	{
+		return Mono.defer(() -> {
+			Set<String> keys = new LinkedHashSet<>(isbns);
+			Set<String> deleted = ConcurrentHashMap.newKeySet();
+			List<String> candidates = keys.stream()
+										.filter(isbnFilter::mightContain)
+										.collect(Collectors.toList());
+			
+			return Flux.fromIterable(candidates)
+						.buffer(isbnChunkSize)
+						.flatMap(chunk -> bookRepository.removeByIsbnIn(chunk))
+						.doOnNext(ids -> ids.forEach((isbn, id) -> {
+							deleted.add(isbn);
+							bookCache.invalidate(id);
+						}))
+						.then(Mono.fromSupplier(() -> {
+							Map<String, BookDeleteDto> results = new LinkedHashMap<>();
+							keys.forEach(isbn -> results.put(isbn, new BookDeleteDto(deleted.contains(isbn))));
+							return results;
+						}));
+		});
 	}
 		
+	@Override
+	public Mono<BookDto> findByBookName(String bookName)
+	{
+		return this.findEntryByBookName(bookName).map(BookEntry::getBook);
+	}
+	
 	/**
-	 * To find book by book name.
+	 * To find book by book name, with its entity tag.
 	 * @Structure:
-	 * 	1. Call repository method.
-	 * 	2. If empty response:
+	 * 	1. If cached, @return cached book.
+	 * 	2. Call repository method, or join the call already running for this book name.
+	 * 	3. If empty response:
 	 * 		throw UnprocessableEntityException
-	 * 	3. @return Mono<BookDto>
+	 * 	4. Map and cache book.
+	 * 	5. @return Mono<BookEntry>
 	 */
 	@Override
-	public Mono<BookDto> findByBookName(String bookName)
+	public Mono<BookEntry> findEntryByBookName(String bookName)
 	{
-		return bookRepository.findByBookName(bookName)
-							.switchIfEmpty(Mono.error(
-									new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+bookName)))
-							.map(book -> mapper.bookDtoFromBook(book));
+		return Mono.defer(() -> {
+			BookEntry cached = bookCache.getByBookName(bookName);
+			if(cached != null)
+				return Mono.just(cached);
+			
+			return bookNameLookups.execute(bookName, () -> {
+				long generation = bookCache.generation();
+				return bookRepository.findByBookName(bookName)
+							.switchIfEmpty(Mono.error(() -> UnprocessableEntityException.notFound(bookName)))
+							.map(book -> this.cacheBook(book, generation));
+			});
+		});
+	}
+	
+	/**
+	 * To find only some fields of a book by ISBN.
+	 * @Structure:
+	 * 	1. Validate fields.
+	 * 	2. If the ISBN filter does not have the ISBN, throw UnprocessableEntityException.
+	 * 	3. Call repository projection method.
+	 * 	4. If empty response:
+	 * 		throw UnprocessableEntityException
+	 * 	5. @return Mono<Map<String, Object>> with requested fields.
+	 */
+	@Override
+	public Mono<Map<String, Object>> findByIsbn(String isbn, Set<String> fields)
+	{
+		return Mono.<Map<String, Object>>defer(() -> {
+							Set<String> validFields = this.validateFields(fields);
+							if(!isbnFilter.mightContain(isbn))
+								return Mono.error(UnprocessableEntityException.notFound(isbn));
+							return bookRepository.findProjectedByIsbn(isbn, validFields);
+						})
+						.switchIfEmpty(this.isbnNotFound(isbn));
+	}
+	
+	/**
+	 * To find only some fields of a book by book name.
+	 * @Structure:
+	 * 	1. Validate fields.
+	 * 	2. Call repository projection method.
+	 * 	3. If empty response:
+	 * 		throw UnprocessableEntityException
+	 * 	4. @return Mono<Map<String, Object>> with requested fields.
+	 */
+	@Override
+	public Mono<Map<String, Object>> findByBookName(String bookName, Set<String> fields)
+	{
+		return Mono.<Map<String, Object>>defer(() -> bookRepository.findProjectedByBookName(bookName, this.validateFields(fields)))
+							.switchIfEmpty(Mono.error(() -> UnprocessableEntityException.notFound(bookName)));
+	}
+	
+	/**
+	 * To find only some fields of books by author name.
+	 * @Structure:
+	 * 	1. Validate fields.
+	 * 	2. Call repository projection method.
+	 * 	3. If empty response:
+	 * 		throw UnprocessableEntityException
+	 * 	4. @return Flux<Map<String, Object>> with requested fields.
+	 */
+	@Override
+	public Flux<Map<String, Object>> findByAuthorName(String authorName, Set<String> fields)
+	{
+		return Flux.defer(() -> Flux.<Map<String, Object>>from(
+							bookRepository.findProjectedByAuthorName(authorName, this.validateFields(fields))))
+						.switchIfEmpty(Mono.error(() -> UnprocessableEntityException.notFound(authorName)));
+	}
+	
+	/**
+	 * To search books by book name or author name prefix, case-insensitive.
+	 * @param query
+	 * @param limit: page size, null for default, capped to book.search.max-size.
+	 * @param offset: number of results to skip, capped to book.search.max-offset.
+	 * @Structure:
+	 * 	1. Normalize query with Book.searchKey.
+	 * 	2. If empty query:
+	 * 		throw BadRequestException
+	 * 	3. Call repository prefix methods for book name and author name, offset + limit books each.
+	 * 	4. Stop reading when book.search.latency-budget is spent and flag the result as truncated.
+	 * 	5. Rank: exact book name, then book name prefix, then author name prefix, then by book name.
+	 * 	6. @return Mono<BookSearchDto> with the requested page of ranked books.
+	 */
+	@Override
+	public Mono<BookSearchDto> search(String query, Integer limit, Integer offset)
+	{
+		String prefix = Book.searchKey(query);
+		int size = limit == null ? defaultSearchSize : Math.max(1, Math.min(limit, maxSearchSize));
+		int skip = offset == null ? 0 : Math.max(0, Math.min(offset, maxSearchOffset));
+		AtomicBoolean truncated = new AtomicBoolean();
+		return Mono.defer(() -> {
+			if(prefix == null || prefix.isEmpty())
+				return Mono.error(new BadRequestException(Collections.singletonList(Constants.EMPTY_SEARCH_MESSAGE)));
+			
+			return Flux.merge(
+						bookRepository.findByBookNamePrefix(prefix, skip + size)
+								.map(book -> Tuples.of(prefix.equals(book.getBookNameLc()) ? 0 : 1, book)),
+						bookRepository.findByAuthorNamePrefix(prefix, skip + size)
+								.map(book -> Tuples.of(2, book)))
+					.takeUntilOther(Mono.delay(searchBudget).doOnNext(tick -> truncated.set(true)))
+					.collect(HashMap<String, Tuple2<Integer, Book>>::new,
+							(hits, hit) -> hits.merge(hit.getT2().getIsbn(), hit,
+														(first, second) -> first.getT1() <= second.getT1() ? first : second))
+					.map(hits -> new BookSearchDto(
+										hits.values().stream()
+											.sorted(Comparator.<Tuple2<Integer, Book>>comparingInt(Tuple2::getT1)
+													.thenComparing(hit -> hit.getT2().getBookNameLc(),
+																	Comparator.nullsLast(Comparator.naturalOrder())))
+											.skip(skip)
+											.limit(size)
+											.map(hit -> mapper.bookDtoFromBook(hit.getT2()))
+											.collect(Collectors.toList()),
+										skip, size, truncated.get()));
+		});
+	}
+	
+	/**
+	 * To suggest books for a type-ahead prefix, served from the in-memory index only.
+	 * @param prefix: every word is matched as a word prefix of book name or author name.
+	 * @param limit: most books returned, null for default, capped to book.suggest.max-size.
+	 * @Structure:
+	 * 	1. If empty prefix:
+	 * 		throw BadRequestException
+	 * 	2. @return Flux<BookDto> of matching books from the index.
+	 */
+	@Override
+	public Flux<BookDto> suggest(String prefix, Integer limit)
+	{
+		int size = limit == null ? defaultSuggestSize : Math.max(1, Math.min(limit, maxSuggestSize));
+		return Flux.defer(() -> {
+			if(prefix == null || prefix.isBlank())
+				return Flux.error(new BadRequestException(Collections.singletonList(Constants.EMPTY_SEARCH_MESSAGE)));
+			return Flux.fromIterable(bookIndex.suggest(prefix, size));
+		});
+	}
+	
+	/**
+	 * To validate requested fields.
+	 * @param fields
+	 * @return fields
+	 * @throws BadRequestException if no field is given or a field is not one of Constants.BOOK_FIELDS.
+	 */
+	private Set<String> validateFields(Set<String> fields)
+	{
+		if(fields.isEmpty())
+			throw new BadRequestException(Collections.singletonList(Constants.EMPTY_FIELDS_MESSAGE));
+		List<String> unknown = fields.stream()
+								.filter(field -> !Constants.BOOK_FIELDS.contains(field))
+								.map(field -> Constants.UNKNOWN_FIELD_MESSAGE+field)
+								.collect(Collectors.toList());
+		if(!unknown.isEmpty())
+			throw new BadRequestException(unknown);
+		return fields;
+	}
+	
+	/**
+	 * Error of a lookup by an ISBN the filter passed and the database did not find.
+	 * @param isbn
+	 * @return Mono.error of UnprocessableEntityException, created on subscription.
+	 */
+	private <T> Mono<T> isbnNotFound(String isbn)
+	{
+		return Mono.error(() -> {
+			isbnFilter.falsePositive();
+			return UnprocessableEntityException.notFound(isbn);
+		});
+	}
+	
+	/**
+	 * To encode a book as the response body of reads by ISBN and book name.
+	 * @param bookDto
+	 * @return byte[] or null if it can not be encoded, then responses serialize it again.
+	 */
+	private byte[] encode(BookDto bookDto)
+	{
+		try
+		{
+			return objectMapper.writeValueAsBytes(bookDto);
+		}
+		catch (JsonProcessingException e)
+		{
+			log.error("@Book-Service:: Can not write book value as byte");
+			log.debug("@Book-Service:: "+e.getLocalizedMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * To map a loaded book, encode it and cache it.
+	 * @param book
+	 * @param generation: cache generation read before loading the book.
+	 * @return BookEntry
+	 */
+	private BookEntry cacheBook(Book book, long generation)
+	{
+		BookDto bookDto = mapper.bookDtoFromBook(book);
+		BookEntry entry = BookEntry.of(book, bookDto, this.encode(bookDto));
+		bookCache.put(book, entry, generation);
+		return entry;
 	}
 	
 }
@@ -0,0 +1,51 @@
+package com.example.bookservice;
+
+import java.net.InetSocketAddress;
+
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+
+import com.example.bookservice.repository.BookRepository;
+import com.example.bookservice.repository.BookRepositoryCustomImpl;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+
+/**
+ * @author Shivam
+ * In-process Mongo server for tests, with a template and a BookRepository on it.
+ */
+public class InMemoryMongo implements AutoCloseable
+{
+	private MongoServer server = new MongoServer(new MemoryBackend());
+	private MongoClient client;
+	private ReactiveMongoTemplate template;
+	
+	public InMemoryMongo()
+	{
+		InetSocketAddress address = server.bind();
+		client = MongoClients.create("mongodb://"+address.getHostString()+":"+address.getPort());
+		template = new ReactiveMongoTemplate(client, "test");
+	}
+	
+	public ReactiveMongoTemplate template()
+	{
+		return template;
+	}
+	
+	public BookRepository bookRepository()
+	{
+		return new ReactiveMongoRepositoryFactory(template)
+					.getRepository(BookRepository.class, RepositoryFragments.just(new BookRepositoryCustomImpl(template)));
+	}
+	
+	@Override
+	public void close()
+	{
+		client.close();
+		server.shutdownNow();
+	}
+}
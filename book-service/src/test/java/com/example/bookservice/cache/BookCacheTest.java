@@ -0,0 +1,144 @@
+package com.example.bookservice.cache;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.bookservice.event.BookChangeStream;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Sinks;
+
+class BookCacheTest
+{
+	private Sinks.Many<BookChangeEvent> changes = Sinks.many().multicast().directBestEffort();
+	private BookCache cache;
+	
+	@BeforeEach
+	void setUp()
+	{
+		BookChangeStream changeStream = mock(BookChangeStream.class);
+		when(changeStream.changes()).thenReturn(changes.asFlux());
+		cache = new BookCache(changeStream, new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+		cache.subscribe();
+	}
+	
+	@AfterEach
+	void tearDown()
+	{
+		cache.unsubscribe();
+	}
+	
+	@Test
+	void loadedBookIsCachedByIsbnAndName()
+	{
+		Book book = book("1", "isbn-1", "Name");
+		cache.put(book, entry(book), cache.generation());
+		
+		assertNotNull(cache.getByIsbn("isbn-1"));
+		assertNotNull(cache.getByBookName("Name"));
+	}
+	
+	@Test
+	void bookLoadedBeforeAnInvalidationIsNotCached()
+	{
+		Book book = book("1", "isbn-1", "Name");
+		long generation = cache.generation();
+		changes.tryEmitNext(change(ChangeType.UPDATE, "1"));
+		cache.put(book, entry(book), generation);
+		
+		assertNull(cache.getByIsbn("isbn-1"));
+		assertNull(cache.getByBookName("Name"));
+	}
+	
+	@Test
+	void changeInvalidatesEveryKeyOfTheBook()
+	{
+		Book book = book("1", "isbn-1", "Name");
+		Book other = book("2", "isbn-2", "Other");
+		cache.put(book, entry(book), cache.generation());
+		cache.put(other, entry(other), cache.generation());
+		changes.tryEmitNext(change(ChangeType.DELETE, "1"));
+		
+		assertNull(cache.getByIsbn("isbn-1"));
+		assertNull(cache.getByBookName("Name"));
+		assertNotNull(cache.getByIsbn("isbn-2"));
+	}
+	
+	@Test
+	void interruptionAndResyncWithoutResumeDropEveryEntry()
+	{
+		Book book = book("1", "isbn-1", "Name");
+		cache.put(book, entry(book), cache.generation());
+		changes.tryEmitNext(BookChangeEvent.interrupted());
+		assertNull(cache.getByIsbn("isbn-1"));
+		
+		cache.put(book, entry(book), cache.generation());
+		changes.tryEmitNext(BookChangeEvent.resync(null));
+		assertNull(cache.getByIsbn("isbn-1"));
+	}
+	
+	@Test
+	void resumedResyncKeepsEntries()
+	{
+		Book book = book("1", "isbn-1", "Name");
+		cache.put(book, entry(book), cache.generation());
+		changes.tryEmitNext(BookChangeEvent.resync("token"));
+		
+		assertNotNull(cache.getByIsbn("isbn-1"));
+	}
+	
+	@Test
+	void changeInvalidatesAHotBookThatOutlivedColdOnes()
+	{
+		BookChangeStream changeStream = mock(BookChangeStream.class);
+		when(changeStream.changes()).thenReturn(changes.asFlux());
+		BookCache small = new BookCache(changeStream, new SimpleMeterRegistry(), 4, Duration.ofMinutes(1));
+		small.subscribe();
+		Book hot = book("0", "isbn-0", "Name 0");
+		small.put(hot, entry(hot), small.generation());
+		for(int i = 1; i < 50; i++)
+		{
+			for(int read = 0; read < 10; read++)
+				small.getByIsbn("isbn-0");
+			Book cold = book(""+i, "isbn-"+i, "Name "+i);
+			small.put(cold, entry(cold), small.generation());
+		}
+		assertNotNull(small.getByIsbn("isbn-0"));
+		
+		changes.tryEmitNext(change(ChangeType.UPDATE, "0"));
+		
+		assertNull(small.getByIsbn("isbn-0"));
+		assertNull(small.getByBookName("Name 0"));
+		small.unsubscribe();
+	}
+	
+	private static Book book(String id, String isbn, String name)
+	{
+		Book book = new Book();
+		book.setId(id);
+		book.setIsbn(isbn);
+		book.setBookName(name);
+		return book;
+	}
+	
+	private static BookEntry entry(Book book)
+	{
+		return BookEntry.of(book, null, null);
+	}
+	
+	private static BookChangeEvent change(ChangeType type, String id)
+	{
+		return new BookChangeEvent(type, id, null, "token-"+id, null, null);
+	}
+}
@@ -0,0 +1,117 @@
+package com.example.bookservice.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class SingleFlightTest
+{
+	private Counter duplicates = new SimpleMeterRegistry().counter("duplicates");
+	private SingleFlight<String> singleFlight = new SingleFlight<>(duplicates);
+	private AtomicInteger calls = new AtomicInteger();
+	
+	@Test
+	void concurrentCallsForAKeyShareOneCall()
+	{
+		Sinks.One<String> result = Sinks.one();
+		Mono<String> first = singleFlight.execute("key", () -> this.call(result));
+		Mono<String> second = singleFlight.execute("key", () -> this.call(result));
+		
+		StepVerifier.create(Mono.zip(first, second))
+					.then(() -> result.tryEmitValue("book"))
+					.assertNext(both -> {
+						assertEquals("book", both.getT1());
+						assertEquals("book", both.getT2());
+					})
+					.verifyComplete();
+		assertEquals(1, calls.get());
+		assertEquals(1, duplicates.count());
+	}
+	
+	@Test
+	void callsForDifferentKeysDoNotShare()
+	{
+		StepVerifier.create(Mono.zip(singleFlight.execute("a", () -> this.call(Mono.just("a"))),
+									singleFlight.execute("b", () -> this.call(Mono.just("b")))))
+					.expectNextCount(1)
+					.verifyComplete();
+		assertEquals(2, calls.get());
+		assertEquals(0, duplicates.count());
+	}
+	
+	@Test
+	void completedCallIsNotReused()
+	{
+		StepVerifier.create(singleFlight.execute("key", () -> this.call(Mono.just("first")))).expectNext("first").verifyComplete();
+		StepVerifier.create(singleFlight.execute("key", () -> this.call(Mono.just("second")))).expectNext("second").verifyComplete();
+		assertEquals(2, calls.get());
+	}
+	
+	@Test
+	void errorReachesEveryWaiterAndIsNotReused()
+	{
+		Sinks.One<String> result = Sinks.one();
+		Mono<String> first = singleFlight.execute("key", () -> this.call(result));
+		Mono<String> second = singleFlight.execute("key", () -> this.call(result));
+		
+		StepVerifier.create(Mono.zipDelayError(first.onErrorReturn("failed"), second.onErrorReturn("failed")))
+					.then(() -> result.tryEmitError(new IllegalStateException("down")))
+					.assertNext(both -> {
+						assertEquals("failed", both.getT1());
+						assertEquals("failed", both.getT2());
+					})
+					.verifyComplete();
+		StepVerifier.create(singleFlight.execute("key", () -> this.call(Mono.just("book")))).expectNext("book").verifyComplete();
+		assertEquals(2, calls.get());
+	}
+	
+	@Test
+	void cancelledWaiterDoesNotCancelOthers()
+	{
+		Sinks.One<String> result = Sinks.one();
+		Disposable cancelled = singleFlight.execute("key", () -> this.call(result)).subscribe();
+		Mono<String> waiting = singleFlight.execute("key", () -> this.call(result));
+		
+		StepVerifier.create(waiting)
+					.then(() -> {
+						cancelled.dispose();
+						result.tryEmitValue("book");
+					})
+					.expectNext("book")
+					.verifyComplete();
+		assertEquals(1, calls.get());
+	}
+	
+	@Test
+	void callCancelledByEveryWaiterIsNotReused()
+	{
+		AtomicInteger cancels = new AtomicInteger();
+		Disposable only = singleFlight.execute("key", () -> this.call(Mono.<String>never().doOnCancel(cancels::incrementAndGet)))
+									.subscribe();
+		only.dispose();
+		
+		StepVerifier.create(singleFlight.execute("key", () -> this.call(Mono.just("book")))).expectNext("book").verifyComplete();
+		assertEquals(1, cancels.get());
+		assertEquals(2, calls.get());
+	}
+	
+	private Mono<String> call(Sinks.One<String> result)
+	{
+		return this.call(result.asMono());
+	}
+	
+	private Mono<String> call(Mono<String> result)
+	{
+		calls.incrementAndGet();
+		return result;
+	}
+}
@@ -0,0 +1,55 @@
+package com.example.bookservice.configuration;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.example.bookservice.handler.BookHandler;
+
+class BookRouterTest
+{
+	private WebTestClient client;
+	
+	@BeforeEach
+	void setUp()
+	{
+		BookHandler handler = mock(BookHandler.class);
+		when(handler.streamByAuthorName(any())).thenAnswer(invocation -> ServerResponse.ok().bodyValue("stream"));
+		when(handler.findByAuthorName(any())).thenAnswer(invocation -> ServerResponse.ok().bodyValue("array"));
+		client = WebTestClient.bindToRouterFunction(new BookRouter().bookRoutes(handler)).build();
+	}
+	
+	@Test
+	void ndjsonWithParametersIsStreamed()
+	{
+		this.expect("application/x-ndjson;q=0.9", "stream");
+		this.expect("application/x-ndjson;q=0.9, application/json;q=0.5", "stream");
+		this.expect("application/json;q=0.5, application/ndjson;charset=UTF-8", "stream");
+	}
+	
+	@Test
+	void jsonAndWildcardsGetTheArray()
+	{
+		this.expect(null, "array");
+		this.expect("*/*", "array");
+		this.expect("application/*", "array");
+		this.expect("application/json", "array");
+		this.expect("application/ndjson;q=0.5, application/json", "array");
+		this.expect("application/ndjson;q=0, */*", "array");
+	}
+	
+	private void expect(String accept, String body)
+	{
+		WebTestClient.RequestHeadersSpec<?> request = client.get().uri("/v1/books/author/Someone");
+		if(accept != null)
+			request = request.header("Accept", accept);
+		request.exchange()
+				.expectStatus().isOk()
+				.expectBody(String.class).isEqualTo(body);
+	}
+}
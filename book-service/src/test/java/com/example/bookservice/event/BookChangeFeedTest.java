@@ -0,0 +1,196 @@
+package com.example.bookservice.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+
+import com.example.bookservice.dto.BookChangeDto;
+import com.example.bookservice.event.BookChangeFeed.Overflow;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class BookChangeFeedTest
+{
+	private Sinks.Many<BookChangeEvent> changes = Sinks.many().multicast().directBestEffort();
+	private BookChangeStream changeStream = mock(BookChangeStream.class);
+	private BookChangeFeed feed;
+	
+	@AfterEach
+	void tearDown()
+	{
+		feed.unsubscribe();
+	}
+	
+	@Test
+	void subscriberGetsVisibleFieldsOfChangesWithTokensAsIds()
+	{
+		this.start(10, Overflow.DROP_OLDEST);
+		StepVerifier.create(feed.events(null))
+					.then(() -> {
+						this.emit(new BookChangeEvent(ChangeType.INSERT, "1",
+													new Document("isbn", "isbn-1").append("book_name", "One").append("book_name_lc", "one"),
+													"t1", null, null));
+						this.emit(new BookChangeEvent(ChangeType.UPDATE, "1", new Document("isbn", "isbn-1"), "t2",
+													new Document("quantity_batches", List.of()), null));
+						this.emit(new BookChangeEvent(ChangeType.UPDATE, "1", new Document("isbn", "isbn-1"), "t3",
+													new Document("price", 12.5).append("version", 2), List.of("rating", "last_modified")));
+						this.emit(new BookChangeEvent(ChangeType.DELETE, "1", null, "t4", null, null));
+					})
+					.assertNext(event -> {
+						assertEquals("t1", event.id());
+						assertEquals("insert", event.event());
+						assertEquals(Map.of("isbn", "isbn-1", "book_name", "One"), event.data().getFields());
+					})
+					.assertNext(event -> {
+						assertEquals("t3", event.id());
+						assertEquals("update", event.event());
+						assertEquals(Map.of("price", 12.5), event.data().getFields());
+						assertEquals(List.of("rating"), event.data().getRemoved());
+					})
+					.assertNext(event -> {
+						assertEquals("t4", event.id());
+						assertEquals("delete", event.event());
+						assertEquals("1", event.data().getId());
+					})
+					.thenCancel()
+					.verify(Duration.ofSeconds(5));
+	}
+	
+	@Test
+	void lastEventIdInTheReplayWindowContinuesAfterIt()
+	{
+		this.start(10, Overflow.DROP_OLDEST);
+		for(int i = 1; i <= 3; i++)
+			this.emit(this.delete(i));
+		
+		StepVerifier.create(feed.events("t1"))
+					.assertNext(event -> assertEquals("t2", event.id()))
+					.assertNext(event -> assertEquals("t3", event.id()))
+					.thenCancel()
+					.verify(Duration.ofSeconds(5));
+	}
+	
+	@Test
+	void lastEventIdOlderThanTheWindowResumesOnACursorOrResets()
+	{
+		this.start(10, Overflow.DROP_OLDEST);
+		when(changeStream.changesAfter("old")).thenReturn(Flux.just(this.delete(7)));
+		when(changeStream.changesAfter("lost"))
+			.thenReturn(Flux.error(new MongoCommandException(new BsonDocument("code", new BsonInt32(286)),
+															new ServerAddress())));
+		
+		StepVerifier.create(feed.events("old"))
+					.assertNext(event -> assertEquals("t7", event.id()))
+					.verifyComplete();
+		StepVerifier.create(feed.events("lost"))
+					.assertNext(event -> assertEquals("reset", event.event()))
+					.verifyComplete();
+	}
+	
+	@Test
+	void resyncSendsResetOnlyWhenPublishedChangesMayHaveBeenMissed()
+	{
+		this.start(10, Overflow.DROP_OLDEST);
+		StepVerifier.create(feed.events(null))
+					.then(() -> {
+						this.emit(BookChangeEvent.resync());
+						this.emit(this.delete(1));
+						this.emit(BookChangeEvent.interrupted());
+						this.emit(BookChangeEvent.resync("t1"));
+						this.emit(this.delete(2));
+						this.emit(BookChangeEvent.interrupted());
+						this.emit(BookChangeEvent.resync());
+						this.emit(BookChangeEvent.resync());
+						this.emit(this.delete(3));
+					})
+					.assertNext(event -> assertEquals("t1", event.id()))
+					.assertNext(event -> assertEquals("t2", event.id()))
+					.assertNext(event -> {
+						assertEquals("reset", event.event());
+						assertNull(event.id());
+					})
+					.assertNext(event -> assertEquals("t3", event.id()))
+					.thenCancel()
+					.verify(Duration.ofSeconds(5));
+	}
+	
+	@Test
+	void slowSubscriberIsToldHowManyChangesItMissed()
+	{
+		this.start(2, Overflow.DROP_OLDEST);
+		List<ServerSentEvent<BookChangeDto>> received = new ArrayList<>();
+		StepVerifier.create(feed.events(null), 0)
+					.then(() -> {
+						for(int i = 1; i <= 8; i++)
+							this.emit(this.delete(i));
+					})
+					.thenRequest(Long.MAX_VALUE)
+					.recordWith(() -> received)
+					.thenConsumeWhile(event -> !"t8".equals(event.id()))
+					.thenCancel()
+					.verify(Duration.ofSeconds(5));
+		
+		List<String> ids = received.stream().map(ServerSentEvent::id).collect(Collectors.toList());
+		ServerSentEvent<BookChangeDto> lagged = received.stream().filter(event -> "lagged".equals(event.event())).findFirst().get();
+		assertEquals(List.of("t7", "t8"), ids.subList(ids.size() - 2, ids.size()));
+		assertEquals(8, received.size() - 1 + lagged.data().getDropped());
+	}
+	
+	@Test
+	void slowSubscriberIsDisconnectedWithDisconnectOverflow()
+	{
+		this.start(2, Overflow.DISCONNECT);
+		List<ServerSentEvent<BookChangeDto>> received = new ArrayList<>();
+		StepVerifier.create(feed.events(null), 0)
+					.then(() -> {
+						for(int i = 1; i <= 8; i++)
+							this.emit(this.delete(i));
+					})
+					.thenRequest(Long.MAX_VALUE)
+					.recordWith(() -> received)
+					.thenConsumeWhile(event -> true)
+					.verifyComplete();
+		
+		assertTrue(received.size() < 8);
+		assertTrue(received.stream().noneMatch(event -> "lagged".equals(event.event())));
+	}
+	
+	private void start(int bufferSize, Overflow overflow)
+	{
+		when(changeStream.changes()).thenReturn(changes.asFlux());
+		feed = new BookChangeFeed(changeStream, new SimpleMeterRegistry(), 10, bufferSize, overflow, Duration.ofHours(1));
+		feed.subscribe();
+	}
+	
+	private void emit(BookChangeEvent event)
+	{
+		changes.tryEmitNext(event);
+	}
+	
+	private BookChangeEvent delete(int i)
+	{
+		return new BookChangeEvent(ChangeType.DELETE, String.valueOf(i), null, "t"+i, null, null);
+	}
+}
@@ -0,0 +1,157 @@
+package com.example.bookservice.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+class BookChangeStreamTest
+{
+	private ReactiveMongoTemplate mongoTemplate = mock(ReactiveMongoTemplate.class);
+	private AtomicInteger opened = new AtomicInteger();
+	
+	@BeforeEach
+	void setUp()
+	{
+		when(mongoTemplate.getCollectionName(Book.class)).thenReturn("book");
+	}
+	
+	@Test
+	void everySubscriberBeforeConnectSeesFirstResyncOnceTheCursorIsOpen()
+	{
+		this.cursors(Flux.never());
+		VirtualTimeScheduler scheduler = VirtualTimeScheduler.getOrSet();
+		try
+		{
+			BookChangeStream changeStream = new BookChangeStream(mongoTemplate, Duration.ofSeconds(30), 10);
+			List<BookChangeEvent> first = new ArrayList<>();
+			List<BookChangeEvent> second = new ArrayList<>();
+			Disposable firstSubscription = changeStream.changes().subscribe(first::add);
+			Disposable secondSubscription = changeStream.changes().subscribe(second::add);
+			changeStream.connect();
+			changeStream.connect();
+			scheduler.advanceTimeBy(Duration.ofMillis(999));
+			assertEquals(List.of(), types(first));
+			
+			scheduler.advanceTimeBy(Duration.ofSeconds(10));
+			assertEquals(List.of(ChangeType.RESYNC), types(first));
+			assertEquals(List.of(ChangeType.RESYNC), types(second));
+			assertEquals(1, opened.get());
+			firstSubscription.dispose();
+			secondSubscription.dispose();
+			changeStream.disconnect();
+		}
+		finally
+		{
+			VirtualTimeScheduler.reset();
+		}
+	}
+	
+	@Test
+	void failingStreamBacksOffAndGivesUpWithoutResync()
+	{
+		this.cursors(Flux.error(unsupported()));
+		BookChangeStream changeStream = new BookChangeStream(mongoTemplate, Duration.ofSeconds(30), 2);
+		
+		StepVerifier.withVirtualTime(changeStream::changes)
+					.then(changeStream::connect)
+					.expectNextMatches(type(ChangeType.INTERRUPTED))
+					.expectNoEvent(Duration.ofMillis(999))
+					.thenAwait(Duration.ofMillis(1))
+					.expectNextMatches(type(ChangeType.INTERRUPTED))
+					.expectNoEvent(Duration.ofMillis(1999))
+					.thenAwait(Duration.ofMillis(1))
+					.expectNextMatches(type(ChangeType.INTERRUPTED))
+					.verifyComplete();
+		assertEquals(3, opened.get());
+	}
+	
+	@Test
+	void changeResetsFailuresAndIsResumedAfter()
+	{
+		this.cursors(Flux.error(unsupported()),
+					Flux.concat(Flux.just(change("token-1")), Flux.error(unsupported())),
+					Flux.never());
+		BookChangeStream changeStream = new BookChangeStream(mongoTemplate, Duration.ofSeconds(30), 1);
+		
+		StepVerifier.withVirtualTime(changeStream::changes)
+					.then(changeStream::connect)
+					.expectNextMatches(type(ChangeType.INTERRUPTED))
+					.thenAwait(Duration.ofSeconds(1))
+					.expectNextMatches(event -> event.getType() == ChangeType.RESYNC && event.getResumeToken() == null)
+					.expectNextMatches(event -> event.getType() == ChangeType.DELETE && "1".equals(event.getId()))
+					.expectNextMatches(type(ChangeType.INTERRUPTED))
+					.thenAwait(Duration.ofSeconds(1))
+					.expectNoEvent(Duration.ofMillis(999))
+					.thenAwait(Duration.ofMillis(1))
+					.expectNextMatches(event -> event.getType() == ChangeType.RESYNC && "token-1".equals(event.getResumeToken()))
+					.expectNoEvent(Duration.ofSeconds(10))
+					.thenCancel()
+					.verify();
+		assertEquals(3, opened.get());
+	}
+	
+	@SafeVarargs
+	private final void cursors(Flux<ChangeStreamEvent<Document>>... cursors)
+	{
+		when(mongoTemplate.changeStream(eq("book"), any(ChangeStreamOptions.class), eq(Document.class)))
+			.thenAnswer(invocation -> cursors[Math.min(opened.getAndIncrement(), cursors.length - 1)]);
+	}
+	
+	private static ChangeStreamEvent<Document> change(String token)
+	{
+		return new ChangeStreamEvent<>(new ChangeStreamDocument<>(OperationType.DELETE,
+																new BsonDocument("_data", new BsonString(token)), null, null,
+																null, new BsonDocument("_id", new BsonString("1")), null,
+																null, null, null),
+										Document.class, null);
+	}
+	
+	private static MongoCommandException unsupported()
+	{
+		return new MongoCommandException(new BsonDocument("code", new BsonInt32(40573))
+												.append("errmsg", new BsonString("The $changeStream stage is only supported on replica sets")),
+										new ServerAddress());
+	}
+	
+	private static Predicate<BookChangeEvent> type(ChangeType type)
+	{
+		return event -> event.getType() == type;
+	}
+	
+	private static List<ChangeType> types(List<BookChangeEvent> events)
+	{
+		return events.stream().map(BookChangeEvent::getType).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,34 @@
+package com.example.bookservice.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class ExportEncodingTest
+{
+	@Test
+	void zstdIsPreferredToGzipWhateverTheOrder()
+	{
+		assertEquals(ExportEncoding.ZSTD, ExportEncoding.negotiate(Collections.singletonList("gzip, deflate, zstd")));
+		assertEquals(ExportEncoding.ZSTD, ExportEncoding.negotiate(Arrays.asList("gzip", "zstd")));
+		assertEquals(ExportEncoding.GZIP, ExportEncoding.negotiate(Collections.singletonList("deflate, GZIP;q=0.5")));
+	}
+	
+	@Test
+	void codingsWithQZeroAreRefused()
+	{
+		assertEquals(ExportEncoding.GZIP, ExportEncoding.negotiate(Collections.singletonList("zstd;q=0, gzip")));
+		assertEquals(ExportEncoding.GZIP, ExportEncoding.negotiate(Collections.singletonList("zstd; q=0.000, gzip;q=0.1")));
+		assertEquals(ExportEncoding.IDENTITY, ExportEncoding.negotiate(Collections.singletonList("gzip;q=0, zstd;q=0.0")));
+	}
+	
+	@Test
+	void noAcceptedCodingIsIdentity()
+	{
+		assertEquals(ExportEncoding.IDENTITY, ExportEncoding.negotiate(Collections.emptyList()));
+		assertEquals(ExportEncoding.IDENTITY, ExportEncoding.negotiate(Collections.singletonList("br, deflate")));
+	}
+}
@@ -0,0 +1,154 @@
+package com.example.bookservice.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class NdjsonExporterTest
+{
+	private static final int CHUNK_SIZE = 64;
+	
+	private NdjsonExporter exporter = new NdjsonExporter(new ObjectMapper(), DataSize.ofBytes(CHUNK_SIZE));
+	private TrackingBufferFactory bufferFactory = new TrackingBufferFactory();
+	
+	@Test
+	void everyChunkButTheLastIsFullAndTheyJoinIntoOneLinePerValue()
+	{
+		List<DataBuffer> chunks = exporter.encode(this.values(20), ExportEncoding.IDENTITY, bufferFactory)
+										.collectList()
+										.block();
+		
+		assertTrue(chunks.size() > 1);
+		chunks.subList(0, chunks.size() - 1)
+				.forEach(chunk -> assertTrue(chunk.readableByteCount() >= CHUNK_SIZE));
+		assertEquals(this.lines(20), new String(this.join(chunks), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	void gzipChunksDecodeBackToTheLines() throws IOException
+	{
+		byte[] encoded = this.join(exporter.encode(this.values(500), ExportEncoding.GZIP, bufferFactory)
+											.collectList()
+											.block());
+		
+		assertEquals(this.lines(500), this.decode(new GZIPInputStream(new ByteArrayInputStream(encoded))));
+	}
+	
+	@Test
+	void zstdChunksDecodeBackToTheLines() throws IOException
+	{
+		byte[] encoded = this.join(exporter.encode(this.values(500), ExportEncoding.ZSTD, bufferFactory)
+											.collectList()
+											.block());
+		
+		assertEquals(this.lines(500), this.decode(new ZstdInputStream(new ByteArrayInputStream(encoded))));
+	}
+	
+	@Test
+	void chunksNotConsumedAreReleasedOnCancel()
+	{
+		StepVerifier.create(exporter.encode(this.values(500), ExportEncoding.IDENTITY, bufferFactory), 1)
+					.consumeNextWith(DataBufferUtils::release)
+					.thenCancel()
+					.verify();
+		
+		assertTrue(bufferFactory.allocated.size() > 1);
+		bufferFactory.assertReleased();
+	}
+	
+	@Test
+	void chunksNotConsumedAreReleasedOnError()
+	{
+		Flux<Map<String, String>> failing = this.values(1).concatWith(Flux.error(new IllegalStateException("read failed")));
+		
+		StepVerifier.create(exporter.encode(failing, ExportEncoding.GZIP, bufferFactory))
+					.verifyError(IllegalStateException.class);
+		
+		bufferFactory.assertReleased();
+	}
+	
+	private Flux<Map<String, String>> values(int count)
+	{
+		return Flux.range(0, count).map(i -> Collections.singletonMap("isbn", "isbn-" + i));
+	}
+	
+	private String lines(int count)
+	{
+		return IntStream.range(0, count)
+						.mapToObj(i -> "{\"isbn\":\"isbn-" + i + "\"}\n")
+						.collect(Collectors.joining());
+	}
+	
+	private byte[] join(List<DataBuffer> chunks)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(DataBuffer chunk : chunks)
+		{
+			byte[] bytes = new byte[chunk.readableByteCount()];
+			chunk.read(bytes);
+			out.write(bytes, 0, bytes.length);
+			DataBufferUtils.release(chunk);
+		}
+		return out.toByteArray();
+	}
+	
+	private String decode(InputStream in) throws IOException
+	{
+		try(in)
+		{
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+	
+	/**
+	 * Netty buffers keep a reference count, so a chunk left unreleased shows as refCnt above 0.
+	 */
+	private static class TrackingBufferFactory extends NettyDataBufferFactory
+	{
+		private final List<NettyDataBuffer> allocated = new ArrayList<>();
+		
+		private TrackingBufferFactory()
+		{
+			super(UnpooledByteBufAllocator.DEFAULT);
+		}
+		
+		@Override
+		public NettyDataBuffer allocateBuffer(int initialCapacity)
+		{
+			NettyDataBuffer buffer = super.allocateBuffer(initialCapacity);
+			allocated.add(buffer);
+			return buffer;
+		}
+		
+		private void assertReleased()
+		{
+			allocated.forEach(buffer -> assertEquals(0, buffer.getNativeBuffer().refCnt()));
+		}
+	}
+}
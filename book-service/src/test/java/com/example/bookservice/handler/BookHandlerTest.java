@@ -0,0 +1,235 @@
+package com.example.bookservice.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.validation.Validation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+
+import com.example.bookservice.cache.BookEntry;
+import com.example.bookservice.configuration.BookRouter;
+import com.example.bookservice.dto.BookDeleteDto;
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.dto.BookLookupDto;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.Constants;
+import com.example.bookservice.service.BookService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Mono;
+
+class BookHandlerTest
+{
+	private BookService bookService = mock(BookService.class);
+	private WebTestClient client;
+	
+	@BeforeEach
+	void setUp()
+	{
+		BookHandler handler = new BookHandler(bookService, Validation.buildDefaultValidatorFactory().getValidator(),
+											null, null, null, 2, "no-cache", "no-cache");
+		client = WebTestClient.bindToRouterFunction(new BookRouter().bookRoutes(handler))
+							.handlerStrategies(HandlerStrategies.builder().exceptionHandler(new ExceptionHandler()).build())
+							.build();
+	}
+	
+	@Test
+	void batchLookupAnswersPerIsbn()
+	{
+		when(bookService.findByIsbns(any())).thenReturn(Mono.just(Map.of("9780306406157", new BookLookupDto(false, null))));
+		
+		client.post().uri("/v1/books/isbn:batch")
+			.bodyValue(List.of("9780306406157"))
+			.exchange()
+			.expectStatus().isOk()
+			.expectBody().jsonPath("$.9780306406157.found").isEqualTo(false);
+	}
+	
+	@Test
+	void batchLookupRejectsNullIsbn()
+	{
+		client.post().uri("/v1/books/isbn:batch")
+			.bodyValue(Collections.singletonList(null))
+			.exchange()
+			.expectStatus().isBadRequest()
+			.expectBody().jsonPath("$.messages[0].moreInfo").isEqualTo(Constants.NULL_ISBN_MESSAGE);
+		verifyNoInteractions(bookService);
+	}
+	
+	@Test
+	void batchLookupRejectsTooManyIsbns()
+	{
+		client.post().uri("/v1/books/isbn:batch")
+			.bodyValue(List.of("1", "2", "3"))
+			.exchange()
+			.expectStatus().isBadRequest()
+			.expectBody().jsonPath("$.messages[0].moreInfo").isEqualTo(Constants.TOO_MANY_ISBNS_MESSAGE+2);
+		verifyNoInteractions(bookService);
+	}
+	
+	@Test
+	void batchDeleteAnswersPerIsbn()
+	{
+		when(bookService.deleteBooks(any())).thenReturn(Mono.just(Map.of("9780306406157", new BookDeleteDto(true))));
+		
+		client.post().uri("/v1/books/delete:batch")
+			.bodyValue(List.of("9780306406157"))
+			.exchange()
+			.expectStatus().isOk()
+			.expectBody().jsonPath("$.9780306406157.deleted").isEqualTo(true);
+	}
+	
+	@Test
+	void batchDeleteRejectsNullIsbn()
+	{
+		client.post().uri("/v1/books/delete:batch")
+			.bodyValue(Collections.singletonList(null))
+			.exchange()
+			.expectStatus().isBadRequest()
+			.expectBody().jsonPath("$.messages[0].moreInfo").isEqualTo(Constants.NULL_ISBN_MESSAGE);
+		verifyNoInteractions(bookService);
+	}
+	
+	@Test
+	void batchDeleteRejectsTooManyIsbns()
+	{
+		client.post().uri("/v1/books/delete:batch")
+			.bodyValue(List.of("1", "2", "3"))
+			.exchange()
+			.expectStatus().isBadRequest()
+			.expectBody().jsonPath("$.messages[0].moreInfo").isEqualTo(Constants.TOO_MANY_ISBNS_MESSAGE+2);
+		verifyNoInteractions(bookService);
+	}
+	
+	@Test
+	void findByIsbnProjectsRequestedFields()
+	{
+		when(bookService.findByIsbn(eq("9780306406157"), eq(Set.of("price"))))
+			.thenReturn(Mono.just(Map.<String, Object>of("price", 10)));
+		
+		client.get().uri("/v1/books/isbn/9780306406157?fields=price")
+			.exchange()
+			.expectStatus().isOk()
+			.expectBody().jsonPath("$.price").isEqualTo(10);
+	}
+	
+	@Test
+	void findByIsbnRejectsEmptyFields()
+	{
+		for(String fields : List.of("", ",", " , "))
+			client.get().uri(builder -> builder.path("/v1/books/isbn/9780306406157").queryParam("fields", fields).build())
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody().jsonPath("$.messages[0].moreInfo").isEqualTo(Constants.EMPTY_FIELDS_MESSAGE);
+		verifyNoInteractions(bookService);
+	}
+	
+	@Test
+	void findByAuthorNameRejectsEmptyFields()
+	{
+		client.get().uri("/v1/books/author/Tolkien?fields=,")
+			.exchange()
+			.expectStatus().isBadRequest()
+			.expectBody().jsonPath("$.messages[0].moreInfo").isEqualTo(Constants.EMPTY_FIELDS_MESSAGE);
+		verifyNoInteractions(bookService);
+	}
+	
+	@Test
+	void findByIsbnAnswersNotModifiedWhenTheTagMatches()
+	{
+		BookEntry entry = this.entry(3L);
+		when(bookService.findEntryByIsbn("9780306406157")).thenReturn(Mono.just(entry));
+		
+		client.get().uri("/v1/books/isbn/9780306406157")
+			.exchange()
+			.expectStatus().isOk()
+			.expectHeader().valueEquals(HttpHeaders.ETAG, "\"book-1-3\"")
+			.expectHeader().cacheControl(CacheControl.noCache());
+		client.get().uri("/v1/books/isbn/9780306406157")
+			.header(HttpHeaders.IF_NONE_MATCH, "\"book-1-3\"")
+			.exchange()
+			.expectStatus().isNotModified()
+			.expectHeader().valueEquals(HttpHeaders.ETAG, "\"book-1-3\"")
+			.expectHeader().cacheControl(CacheControl.noCache())
+			.expectBody().isEmpty();
+	}
+	
+	@Test
+	void findByBookNameAnswersTheBookOnceItWasUpdated()
+	{
+		when(bookService.findEntryByBookName("Dune")).thenReturn(Mono.just(this.entry(4L)));
+		
+		client.get().uri("/v1/books/book/Dune")
+			.header(HttpHeaders.IF_NONE_MATCH, "\"book-1-3\"")
+			.exchange()
+			.expectStatus().isOk()
+			.expectHeader().valueEquals(HttpHeaders.ETAG, "\"book-1-4\"")
+			.expectBody().jsonPath("$.book_name").isEqualTo("Dune");
+	}
+	
+	@Test
+	void bookWithoutVersionIsTaggedAsVersionZero()
+	{
+		assertEquals("\"book-1-0\"", this.entry(null).getEtag());
+		assertNotEquals(this.entry(1L).getEtag(), this.entry(2L).getEtag());
+	}
+	
+	@Test
+	void preEncodedBodyIsTheJacksonEncodingOfTheBook() throws JsonProcessingException
+	{
+		BookEntry serialized = this.entry(3L);
+		byte[] json = new ObjectMapper().writeValueAsBytes(serialized.getBook());
+		BookEntry encoded = BookEntry.of(this.book(3L), serialized.getBook(), json);
+		when(bookService.findEntryByBookName("Dune")).thenReturn(Mono.just(serialized));
+		when(bookService.findEntryByIsbn("9780306406157")).thenReturn(Mono.just(encoded));
+		
+		byte[] expected = client.get().uri("/v1/books/book/Dune")
+								.exchange()
+								.expectBody().returnResult().getResponseBody();
+		assertArrayEquals(json, expected);
+		for(int i = 0; i < 2; i++)
+			client.get().uri("/v1/books/isbn/9780306406157")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON)
+				.expectHeader().contentLength(json.length)
+				.expectBody().consumeWith(result -> assertArrayEquals(expected, result.getResponseBody()));
+		assertTrue(encoded.json().isDirect());
+		assertTrue(encoded.json().isReadOnly());
+	}
+	
+	private BookEntry entry(Long version)
+	{
+		BookDto bookDto = new BookDto("Dune", 10, "9780306406157", 2, new Author("Frank Herbert", "US"));
+		return BookEntry.of(this.book(version), bookDto, null);
+	}
+	
+	private Book book(Long version)
+	{
+		Book book = new Book();
+		book.setId("book-1");
+		book.setVersion(version);
+		return book;
+	}
+}
@@ -0,0 +1,102 @@
+package com.example.bookservice.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.validation.Validation;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+
+import com.example.bookservice.dto.BookImportRecord;
+import com.example.bookservice.model.Constants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class BookImportReaderTest
+{
+	private static final MediaType CSV = MediaType.parseMediaType("text/csv");
+	
+	private BookImportReader reader = new BookImportReader(new ObjectMapper(),
+														Validation.buildDefaultValidatorFactory().getValidator(),
+														DataSize.ofBytes(256));
+	
+	@Test
+	void ndjsonLinesAreNumberedAcrossBlankLinesAndChunks()
+	{
+		List<BookImportRecord> records = reader.read(body("{\"book_name\":\"One\",\"price\":10,\"isbn\":\"9780306406157\",",
+														"\"quantity\":1,\"author\":{\"author_name\":\"A\",\"country\":\"IN\"}}\n\n",
+														"{\"book_name\":\"Two\",\"price\":-1,\"isbn\":\"9781861972712\",\"author\":{\"author_name\":\"B\"}}\n",
+														"{not json\n"),
+												MediaType.APPLICATION_NDJSON)
+										.collectList()
+										.block();
+		
+		assertEquals(3, records.size());
+		assertEquals(1, records.get(0).getLine());
+		assertTrue(records.get(0).isValid());
+		assertEquals("One", records.get(0).getBook().getBookName());
+		assertEquals("A", records.get(0).getBook().getAuthor().getAuthorName());
+		assertEquals(3, records.get(1).getLine());
+		assertEquals(List.of("Price must be a positive number"), records.get(1).getErrors());
+		assertEquals(4, records.get(2).getLine());
+		assertTrue(records.get(2).getErrors().get(0).startsWith(Constants.INVALID_JSON_MESSAGE));
+	}
+	
+	@Test
+	void csvColumnsAreReadByHeaderNameWithQuotedFields()
+	{
+		List<BookImportRecord> records = reader.read(body("ISBN,Book_Name,price,quantity,author_name,country\r\n",
+														"9780306406157,\"Dune, \"\"Deluxe\"\"\",12.5,3,Frank Herbert,US\r\n",
+														"9781861972712,Emma,abc,1,Jane Austen,UK\n",
+														"9781861972712,No Author,5,1,,"),
+												CSV)
+										.collectList()
+										.block();
+		
+		assertEquals(3, records.size());
+		BookImportRecord dune = records.get(0);
+		assertEquals(2, dune.getLine());
+		assertTrue(dune.isValid());
+		assertEquals("Dune, \"Deluxe\"", dune.getBook().getBookName());
+		assertEquals(12.5, dune.getBook().getPrice());
+		assertEquals(3, dune.getBook().getQuantity());
+		assertEquals("US", dune.getBook().getAuthor().getCountry());
+		assertEquals(List.of("price"+Constants.NOT_A_NUMBER_MESSAGE), records.get(1).getErrors());
+		assertFalse(records.get(2).isValid());
+		assertEquals(List.of("Author details are required"), records.get(2).getErrors());
+	}
+	
+	@Test
+	void lineLongerThanTheLimitFailsTheImport()
+	{
+		char[] name = new char[150];
+		Arrays.fill(name, 'x');
+		StepVerifier.create(reader.read(body("{\"book_name\":\"", new String(name), new String(name), "\"}\n"),
+										MediaType.APPLICATION_NDJSON))
+					.verifyError(DataBufferLimitException.class);
+	}
+	
+	@Test
+	void splitCsvKeepsEmptyFields()
+	{
+		assertEquals(List.of("a", "", "b,c", ""), BookImportReader.splitCsv("a,,\"b,c\","));
+	}
+	
+	private static Flux<DataBuffer> body(String... chunks)
+	{
+		return Flux.fromArray(chunks)
+					.map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8)));
+	}
+}
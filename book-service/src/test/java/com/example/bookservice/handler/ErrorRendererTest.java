@@ -0,0 +1,91 @@
+package com.example.bookservice.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+
+import com.example.bookservice.handler.ErrorRenderer.Template;
+import com.example.bookservice.model.Constants;
+import com.example.bookservice.model.ErrorMessage;
+import com.example.bookservice.model.ExceptionResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class ErrorRendererTest
+{
+	private static final List<String> MORE_INFOS = Arrays.asList("9780306406157", "quote \" and back\\slash",
+																"tab\tnew\nline\u0001", "Émile Zola – 日本", "", null);
+	
+	private ObjectMapper objectMapper = new ObjectMapper();
+	
+	@Test
+	void bodiesEqualJacksonSerializationOfExceptionResponse() throws JsonProcessingException
+	{
+		this.assertRendered(ErrorRenderer.NOT_FOUND, Constants.UNPROCESSABLE_ENTITY_MESSAGE, HttpStatus.UNPROCESSABLE_ENTITY,
+							Constants.UNPROCESSALE_EXCEPTION_MESSAGE);
+		this.assertRendered(ErrorRenderer.UNPROCESSABLE, Constants.UNPROCESSABLE_ENTITY_MESSAGE, HttpStatus.UNPROCESSABLE_ENTITY, "");
+		this.assertRendered(ErrorRenderer.INVALID_PARAMETER, Constants.INVALID_PARAMETER_MESSAGE, HttpStatus.BAD_REQUEST, "");
+		this.assertRendered(ErrorRenderer.INTERNAL_SERVER_ERROR, Constants.INTERNAL_SERVER_ERROR_MESSAGE,
+							HttpStatus.INTERNAL_SERVER_ERROR, "");
+	}
+	
+	@Test
+	void bodyWithoutMessagesIsAnEmptyList()
+	{
+		assertEquals("{\"messages\":[]}", render(ErrorRenderer.UNPROCESSABLE, List.of(), null));
+	}
+	
+	private void assertRendered(Template template, String message, HttpStatus status, String prefix)
+		throws JsonProcessingException
+	{
+		assertEquals(status, template.getStatus());
+		for(String moreInfo : MORE_INFOS)
+		{
+			List<String> moreInfos = Arrays.asList(moreInfo);
+			assertEquals(this.expected(message, status, prefix, moreInfos, null), render(template, moreInfos, null));
+			assertEquals(this.expected(message, status, prefix, moreInfos, "corr-1 \"x\""),
+						render(template, moreInfos, "corr-1 \"x\""));
+		}
+		assertEquals(this.expected(message, status, prefix, MORE_INFOS, "id-2"), render(template, MORE_INFOS, "id-2"));
+	}
+	
+	private String expected(String message, HttpStatus status, String prefix, List<String> moreInfos, String correlationId)
+		throws JsonProcessingException
+	{
+		List<ErrorMessage> messages = moreInfos.stream()
+											.map(moreInfo -> new ErrorMessage(message,
+																			moreInfo == null && prefix.isEmpty() ? null : prefix+moreInfo,
+																			status.value()))
+											.collect(Collectors.toList());
+		if(correlationId == null)
+			return objectMapper.writeValueAsString(new ExceptionResponse(messages));
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("messages", messages);
+		body.put("correlationId", correlationId);
+		return objectMapper.writeValueAsString(body);
+	}
+	
+	private static String render(Template template, List<String> moreInfos, String correlationId)
+	{
+		DataBuffer buffer = ErrorRenderer.render(DefaultDataBufferFactory.sharedInstance, template, moreInfos, correlationId);
+		try
+		{
+			return buffer.toString(StandardCharsets.UTF_8);
+		}
+		finally
+		{
+			DataBufferUtils.release(buffer);
+		}
+	}
+}
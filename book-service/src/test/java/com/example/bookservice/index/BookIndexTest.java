@@ -0,0 +1,161 @@
+package com.example.bookservice.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.bookservice.InMemoryMongo;
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.event.BookChangeStream;
+import com.example.bookservice.mapper.CustomObjectMapperImpl;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+import com.example.bookservice.repository.BookRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Sinks;
+
+class BookIndexTest
+{
+	private InMemoryMongo mongo;
+	private BookRepository bookRepository;
+	private Sinks.Many<BookChangeEvent> changes = Sinks.many().multicast().onBackpressureBuffer();
+	private BookIndex index;
+	
+	@BeforeEach
+	void setUp()
+	{
+		mongo = new InMemoryMongo();
+		bookRepository = mongo.bookRepository();
+		BookChangeStream changeStream = mock(BookChangeStream.class);
+		when(changeStream.changes()).thenReturn(changes.asFlux());
+		index = new BookIndex(bookRepository, new CustomObjectMapperImpl(), mongo.template(), changeStream,
+							new SimpleMeterRegistry());
+	}
+	
+	@AfterEach
+	void tearDown()
+	{
+		mongo.close();
+	}
+	
+	@Test
+	void indexIsBuiltOnStartupBeforeTheStreamOpens() throws InterruptedException
+	{
+		this.save("1", "War and Peace", "Leo Tolstoy");
+		this.save("2", "Anna Karenina", "Leo Tolstoy");
+		
+		index.subscribe();
+		for(int i = 0; i < 100 && index.size() < 2; i++)
+			Thread.sleep(50);
+		index.unsubscribe();
+		
+		assertEquals(2, index.size());
+		assertEquals(List.of("1", "2"), this.suggest("tol"));
+	}
+	
+	@Test
+	void changesPutAndRemoveBooks()
+	{
+		index.onChange(BookIndex.STARTUP).block();
+		Book book = this.save("1", "War and Peace", "Leo Tolstoy");
+		index.onChange(this.change(ChangeType.INSERT, book)).block();
+		assertEquals(List.of("1"), this.suggest("war pe"));
+		
+		book.setBookName("Resurrection");
+		index.onChange(this.change(ChangeType.UPDATE, book)).block();
+		assertEquals(List.of(), this.suggest("war"));
+		assertEquals(List.of("1"), this.suggest("res tol"));
+		assertEquals(1, index.size());
+		
+		index.onChange(new BookChangeEvent(ChangeType.DELETE, book.getId(), null, "t", null, null)).block();
+		assertEquals(List.of(), this.suggest("res"));
+		assertEquals(0, index.size());
+	}
+	
+	@Test
+	void onlyAResyncThatMayHaveMissedChangesRebuilds()
+	{
+		Book removed = this.save("1", "War and Peace", "Leo Tolstoy");
+		index.onChange(BookIndex.STARTUP).block();
+		
+		this.save("2", "Anna Karenina", "Leo Tolstoy");
+		bookRepository.delete(removed).block();
+		index.onChange(BookChangeEvent.resync("t")).block();
+		assertEquals(List.of("1"), this.suggest("tol"));
+		
+		index.onChange(BookChangeEvent.resync()).block();
+		assertEquals(List.of("1", "2"), this.suggest("tol"));
+		
+		index.onChange(BookChangeEvent.interrupted()).block();
+		index.onChange(BookChangeEvent.resync()).block();
+		assertEquals(List.of("2"), this.suggest("tol"));
+		assertEquals(1, index.size());
+	}
+	
+	@Test
+	void rebuildSwapsInAFreshSegment()
+	{
+		Book removed = this.save("1", "War and Peace", "Leo Tolstoy");
+		index.onChange(BookIndex.STARTUP).block();
+		index.onChange(BookChangeEvent.resync()).block();
+		bookRepository.delete(removed).block();
+		index.onChange(new BookChangeEvent(ChangeType.DELETE, removed.getId(), null, "t", null, null)).block();
+		this.save("2", "Anna Karenina", "Leo Tolstoy");
+		
+		index.onChange(BookChangeEvent.resync()).block();
+		
+		assertEquals(List.of("2"), this.suggest("anna"));
+		assertEquals(List.of("2"), this.suggest("tol"));
+		assertTrue(index.bytesPerDocument() > 0);
+	}
+	
+	@Test
+	void buildOfManyBooksFindsEveryOneAndSuggestStopsAtLimit()
+	{
+		for(int i = 0; i < 300; i++)
+			this.save(String.format("%03d", i), "Book "+i, i % 2 == 0 ? "Even Author" : "Odd Writer");
+		index.onChange(BookIndex.STARTUP).block();
+		
+		assertEquals(300, index.size());
+		assertEquals(5, index.suggest("book", 5).size());
+		assertEquals(150, index.suggest("even", 1000).size());
+		assertEquals(List.of("123"), this.suggest("odd 123"));
+		assertEquals(List.of("012", "120", "122", "124", "126", "128"), this.suggest("12 ev"));
+		
+		index.onChange(new BookChangeEvent(ChangeType.DELETE, bookRepository.findByIsbn("124").block().getId(), null, "t",
+											null, null)).block();
+		Book inserted = this.save("300", "Book 300", "Even Author");
+		index.onChange(this.change(ChangeType.INSERT, inserted)).block();
+		assertEquals(150, index.suggest("even", 1000).size());
+		assertEquals(List.of("300"), this.suggest("300"));
+	}
+	
+	private List<String> suggest(String prefix)
+	{
+		return index.suggest(prefix, 10).stream().map(BookDto::getIsbn).sorted().collect(Collectors.toList());
+	}
+	
+	private Book save(String isbn, String name, String author)
+	{
+		return bookRepository.save(new Book(new BookDto(name, 10, isbn, 1, new Author(author, "RU")))).block();
+	}
+	
+	private BookChangeEvent change(ChangeType type, Book book)
+	{
+		Document document = new Document();
+		mongo.template().getConverter().write(book, document);
+		return new BookChangeEvent(type, book.getId(), document, "t", null, null);
+	}
+}
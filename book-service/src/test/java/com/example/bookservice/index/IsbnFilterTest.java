@@ -0,0 +1,171 @@
+package com.example.bookservice.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.bookservice.InMemoryMongo;
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.event.BookChangeStream;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.BookChangeEvent;
+import com.example.bookservice.model.ChangeType;
+import com.example.bookservice.repository.BookRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Sinks;
+
+class IsbnFilterTest
+{
+	private static final String ABSENT = "absent-isbn";
+	
+	private InMemoryMongo mongo;
+	private BookRepository bookRepository;
+	private Sinks.Many<BookChangeEvent> changes = Sinks.many().multicast().onBackpressureBuffer();
+	private BookChangeStream changeStream = mock(BookChangeStream.class);
+	private IsbnFilter filter;
+	
+	@BeforeEach
+	void setUp()
+	{
+		mongo = new InMemoryMongo();
+		bookRepository = mongo.bookRepository();
+		when(changeStream.changes()).thenReturn(changes.asFlux());
+	}
+	
+	@AfterEach
+	void tearDown()
+	{
+		filter.unsubscribe();
+		mongo.close();
+	}
+	
+	@Test
+	void filterBuiltOnStartupIsUsedOnceTheStreamOpensAndCaughtUp()
+	{
+		this.save("isbn-1");
+		this.start(1000);
+		assertTrue(filter.mightContain(ABSENT));
+		this.save("isbn-2");
+		
+		changes.tryEmitNext(BookChangeEvent.resync());
+		
+		await(() -> !filter.mightContain(ABSENT));
+		assertTrue(filter.mightContain("isbn-1"));
+		assertTrue(filter.mightContain("isbn-2"));
+	}
+	
+	@Test
+	void interruptedFilterIsReusedOnResumeAndRebuiltOtherwise()
+	{
+		this.start(1000);
+		changes.tryEmitNext(BookChangeEvent.resync());
+		await(() -> !filter.mightContain(ABSENT));
+		
+		changes.tryEmitNext(BookChangeEvent.interrupted());
+		assertTrue(filter.mightContain(ABSENT));
+		filter.add("isbn-added");
+		this.save("isbn-unseen");
+		changes.tryEmitNext(BookChangeEvent.resync("t1"));
+		await(() -> !filter.mightContain(ABSENT));
+		assertTrue(filter.mightContain("isbn-added"));
+		assertFalse(filter.mightContain("isbn-unseen"));
+		
+		changes.tryEmitNext(BookChangeEvent.interrupted());
+		changes.tryEmitNext(BookChangeEvent.resync());
+		await(() -> filter.mightContain("isbn-unseen") && !filter.mightContain(ABSENT));
+	}
+	
+	@Test
+	void falsePositiveRateStaysNearTheTarget()
+	{
+		this.start(10_000);
+		changes.tryEmitNext(BookChangeEvent.resync());
+		await(() -> !filter.mightContain(ABSENT));
+		
+		IntStream.range(0, 10_000).forEach(i -> filter.add("present-"+i));
+		
+		assertTrue(IntStream.range(0, 10_000).allMatch(i -> filter.mightContain("present-"+i)));
+		long falsePositives = IntStream.range(0, 100_000).filter(i -> filter.mightContain("missing-"+i)).count();
+		assertTrue(falsePositives < 1500, "false positives: "+falsePositives);
+		assertEquals(0.01, filter.falsePositiveRate(), 0.005);
+	}
+	
+	@Test
+	void overfilledFilterIsRebuiltLarger()
+	{
+		this.start(100);
+		changes.tryEmitNext(BookChangeEvent.resync());
+		await(() -> !filter.mightContain(ABSENT));
+		long bytes = filter.bytes();
+		
+		List<Book> books = bookRepository.saveAll(IntStream.range(0, 1000)
+															.mapToObj(i -> this.book("isbn-"+i))
+															.collect(Collectors.toList()))
+										.collectList()
+										.block();
+		books.forEach(book -> changes.tryEmitNext(new BookChangeEvent(ChangeType.INSERT, book.getId(),
+																	new Document("isbn", book.getIsbn()), "t", null, null)));
+		
+		await(() -> filter.bytes() > bytes && filter.falsePositiveRate() <= 0.02);
+		assertTrue(books.stream().allMatch(book -> filter.mightContain(book.getIsbn())));
+	}
+	
+	@Test
+	void nullIsbnsPassTheFilterAndAreNotAdded()
+	{
+		this.start(1000);
+		changes.tryEmitNext(BookChangeEvent.resync());
+		await(() -> !filter.mightContain(ABSENT));
+		
+		filter.add(null);
+		assertTrue(filter.mightContain(null));
+	}
+	
+	private void start(long expectedIsbns)
+	{
+		filter = new IsbnFilter(bookRepository, changeStream, new SimpleMeterRegistry(), true, expectedIsbns, 0.01);
+		filter.subscribe();
+	}
+	
+	private Book book(String isbn)
+	{
+		return new Book(new BookDto("Book "+isbn, 10, isbn, 1, new Author("Author", "IN")));
+	}
+	
+	private void save(String isbn)
+	{
+		bookRepository.save(this.book(isbn)).block();
+	}
+	
+	private static void await(BooleanSupplier condition)
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!condition.getAsBoolean())
+		{
+			assertTrue(System.currentTimeMillis() < deadline, "condition not met in 5s");
+			try
+			{
+				Thread.sleep(10);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+}
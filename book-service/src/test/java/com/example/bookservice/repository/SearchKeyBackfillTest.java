@@ -0,0 +1,70 @@
+package com.example.bookservice.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.bookservice.InMemoryMongo;
+import com.example.bookservice.model.Book;
+
+import reactor.test.StepVerifier;
+
+class SearchKeyBackfillTest
+{
+	private InMemoryMongo mongo;
+	private SearchKeyBackfill backfill;
+	
+	@BeforeEach
+	void setUp()
+	{
+		mongo = new InMemoryMongo();
+		backfill = new SearchKeyBackfill(mongo.template());
+	}
+	
+	@AfterEach
+	void tearDown()
+	{
+		mongo.close();
+	}
+	
+	@Test
+	void backfilledKeysEqualSearchKeysOfNewBooks()
+	{
+		this.insert("1", "  The  Old\tMan and the SEA ", "ÉMILE   ZOLA");
+		this.insert("2", "ΟΔΥΣΣΕΙΑ", "Ὅμηρος");
+		this.insert("3", "Plain", null);
+		
+		StepVerifier.create(backfill.backfill()).expectNext(3L).verifyComplete();
+		
+		for(Document book : mongo.template().findAll(Document.class, "book").toIterable())
+		{
+			Document author = book.get("author", Document.class);
+			assertEquals(Book.searchKey(book.getString("book_name")), book.getString("book_name_lc"));
+			assertEquals(author == null ? null : Book.searchKey(author.getString("author_name")), book.getString("author_name_lc"));
+		}
+		Document first = mongo.template().findById("1", Document.class, "book").block();
+		assertEquals("the old man and the sea", first.getString("book_name_lc"));
+		assertEquals("émile zola", first.getString("author_name_lc"));
+		assertNull(mongo.template().findById("3", Document.class, "book").block().getString("author_name_lc"));
+	}
+	
+	@Test
+	void booksWithKeysAreLeftAlone()
+	{
+		this.insert("1", "Name", "Author");
+		StepVerifier.create(backfill.backfill()).expectNext(1L).verifyComplete();
+		StepVerifier.create(backfill.backfill()).expectNext(0L).verifyComplete();
+	}
+	
+	private void insert(String id, String bookName, String authorName)
+	{
+		Document book = new Document("_id", id).append("book_name", bookName).append("isbn", id);
+		if(authorName != null)
+			book.append("author", new Document("author_name", authorName));
+		mongo.template().insert(book, "book").block();
+	}
+}
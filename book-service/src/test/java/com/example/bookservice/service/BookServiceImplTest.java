@@ -0,0 +1,137 @@
+package com.example.bookservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.bookservice.InMemoryMongo;
+import com.example.bookservice.cache.BookCache;
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.dto.BookPageDto;
+import com.example.bookservice.exception.BadRequestException;
+import com.example.bookservice.exception.UnprocessableEntityException;
+import com.example.bookservice.index.BookIndex;
+import com.example.bookservice.index.IsbnFilter;
+import com.example.bookservice.mapper.CustomObjectMapperImpl;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.repository.BookRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.test.StepVerifier;
+
+class BookServiceImplTest
+{
+	private InMemoryMongo mongo;
+	private BookRepository bookRepository;
+	private IsbnFilter isbnFilter = mock(IsbnFilter.class);
+	private BookServiceImpl bookService;
+	
+	@BeforeEach
+	void setUp()
+	{
+		mongo = new InMemoryMongo();
+		bookRepository = mongo.bookRepository();
+		when(isbnFilter.mightContain(anyString())).thenReturn(true);
+		bookService = new BookServiceImpl(bookRepository, new CustomObjectMapperImpl(), new ObjectMapper(),
+										mock(BookCache.class), mock(BookIndex.class), isbnFilter, new SimpleMeterRegistry(),
+										20, 100, 500, 10, 50, 200, Duration.ofMillis(200), 10, 50, 1000, 2, 1000);
+	}
+	
+	@AfterEach
+	void tearDown()
+	{
+		mongo.close();
+	}
+	
+	@Test
+	void cursorPagesThroughEveryBookOfTheAuthorOnce()
+	{
+		List<String> isbns = new ArrayList<>();
+		for(int i = 0; i < 5; i++)
+		{
+			this.save("978000000000"+i, "Author");
+			isbns.add("978000000000"+i);
+		}
+		this.save("9780000000100", "Other");
+		
+		List<String> read = new ArrayList<>();
+		BookPageDto page = bookService.findByAuthorName("Author", null, 2).block();
+		List<Integer> sizes = new ArrayList<>();
+		while(true)
+		{
+			sizes.add(page.getBooks().size());
+			page.getBooks().forEach(book -> read.add(book.getIsbn()));
+			if(page.getNextCursor() == null)
+				break;
+			page = bookService.findByAuthorName("Author", page.getNextCursor(), 2).block();
+		}
+		
+		assertEquals(isbns, read);
+		assertEquals(List.of(2, 2, 1), sizes);
+	}
+	
+	@Test
+	void lastFullPageHasNoCursor()
+	{
+		this.save("9780000000001", "Author");
+		this.save("9780000000002", "Author");
+		
+		BookPageDto page = bookService.findByAuthorName("Author", null, 2).block();
+		assertEquals(2, page.getBooks().size());
+		assertNull(page.getNextCursor());
+	}
+	
+	@Test
+	void limitIsCappedAndDefaulted()
+	{
+		for(int i = 0; i < 25; i++)
+			this.save(String.format("97800000001%02d", i), "Author");
+		
+		assertEquals(20, bookService.findByAuthorName("Author", null, null).block().getBooks().size());
+		assertEquals(1, bookService.findByAuthorName("Author", null, 0).block().getBooks().size());
+	}
+	
+	@Test
+	void unknownAuthorAndInvalidCursorAreRejected()
+	{
+		this.save("9780000000001", "Author");
+		
+		StepVerifier.create(bookService.findByAuthorName("Nobody", null, 2))
+					.expectError(UnprocessableEntityException.class)
+					.verify();
+		StepVerifier.create(bookService.findByAuthorName("Author", "not-a-cursor", 2))
+					.expectError(BadRequestException.class)
+					.verify();
+	}
+	
+	@Test
+	void emptyFieldsAreRejectedInsteadOfProjectingTheWholeDocument()
+	{
+		this.save("9780000000001", "Author");
+		
+		StepVerifier.create(bookService.findByIsbn("9780000000001", Collections.emptySet()))
+					.expectError(BadRequestException.class)
+					.verify();
+		StepVerifier.create(bookService.findByAuthorName("Author", Collections.emptySet()))
+					.expectError(BadRequestException.class)
+					.verify();
+	}
+	
+	private void save(String isbn, String authorName)
+	{
+		bookRepository.save(new Book(new BookDto("Book "+isbn, 10, isbn, 1, new Author(authorName, "IN")))).block();
+	}
+}
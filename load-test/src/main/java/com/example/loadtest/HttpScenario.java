@@ -0,0 +1,61 @@
+package com.example.loadtest;
+
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * @author Shivam
+ * Operations through the services' HTTP APIs: GET /v1/books/isbn/{isbn} on book-service and
+ * PATCH /v1/books/update/quantity/{count}/{isbn} on update-service.
+ * Bodies are read as String so client side JSON decoding is not measured.
+ */
+public class HttpScenario implements Scenario
+{
+	private WebClient bookService;
+	private WebClient updateService;
+	
+	public HttpScenario(int bookServicePort, int updateServicePort, int concurrency)
+	{
+		ConnectionProvider connections = ConnectionProvider.builder("load-test")
+														.maxConnections(concurrency)
+														.pendingAcquireMaxCount(-1)
+														.build();
+		ReactorClientHttpConnector connector = new ReactorClientHttpConnector(HttpClient.create(connections));
+		this.bookService = WebClient.builder()
+								.clientConnector(connector)
+								.baseUrl("http://localhost:"+bookServicePort)
+								.build();
+		this.updateService = WebClient.builder()
+								.clientConnector(connector)
+								.baseUrl("http://localhost:"+updateServicePort)
+								.build();
+	}
+	
+	@Override
+	public String name()
+	{
+		return "http";
+	}
+	
+	@Override
+	public Mono<?> read(String isbn)
+	{
+		return bookService.get()
+						.uri("/v1/books/isbn/{isbn}", isbn)
+						.retrieve()
+						.bodyToMono(String.class);
+	}
+	
+	@Override
+	public Mono<?> write(String isbn, int delta)
+	{
+		return updateService.patch()
+						.uri("/v1/books/update/quantity/{count}/{isbn}", delta, isbn)
+						.retrieve()
+						.bodyToMono(String.class);
+	}
+}
@@ -0,0 +1,133 @@
+package com.example.loadtest;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Drives a mixed read/write workload against a scenario with a fixed number of closed loop
+ * workers and reports latency percentiles and throughput.
+ * Latencies are recorded in microseconds. As workers wait for each response before sending the
+ * next request, queueing delay behind a stalled request is not recorded (coordinated omission);
+ * compare scenarios at the same concurrency.
+ * @Structure
+ * 	@Methods:
+ * 		1. public void run(Scenario scenario): to warm up, measure and report one scenario.
+ * 	@Fields:
+ * 		1. LoadTestOptions options: concurrency, durations and read ratio.
+ * 		2. List<String> isbns: seeded ISBNs, picked uniformly.
+ */
+public class LoadDriver
+{
+	private static final double MICROS_PER_MILLI = 1000.0;
+	
+	private LoadTestOptions options;
+	private List<String> isbns;
+	
+	public LoadDriver(LoadTestOptions options, List<String> isbns)
+	{
+		this.options = options;
+		this.isbns = isbns;
+	}
+	
+	/**
+	 * @param scenario
+	 * @Structure:
+	 * 	1. Drive load for warmup, discard results.
+	 * 	2. Drive load for duration, recording read and write latencies.
+	 * 	3. Print summary and percentile distributions, write .hgrm files if output is set.
+	 */
+	public void run(Scenario scenario)
+	{
+		System.out.println("== "+scenario.name()+": warming up for "+options.getWarmup());
+		this.drive(scenario, options.getWarmup(), new ConcurrentHistogram(3), new ConcurrentHistogram(3), new AtomicLong());
+		
+		Histogram reads = new ConcurrentHistogram(3);
+		Histogram writes = new ConcurrentHistogram(3);
+		AtomicLong errors = new AtomicLong();
+		System.out.println("== "+scenario.name()+": measuring for "+options.getDuration());
+		long start = System.nanoTime();
+		this.drive(scenario, options.getDuration(), reads, writes, errors);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		
+		long requests = reads.getTotalCount() + writes.getTotalCount();
+		System.out.printf("== %s: %d requests in %.1f s, %.0f req/s, concurrency %d, errors %d%n",
+						scenario.name(), requests, seconds, requests / seconds, options.getConcurrency(), errors.get());
+		this.summary("read", reads);
+		this.summary("write", writes);
+		this.report(scenario.name()+"-read", reads);
+		this.report(scenario.name()+"-write", writes);
+	}
+	
+	private void drive(Scenario scenario, Duration duration, Histogram reads, Histogram writes, AtomicLong errors)
+	{
+		long deadline = System.nanoTime() + duration.toNanos();
+		Flux.range(0, options.getConcurrency())
+			.flatMap(worker -> Mono.defer(() -> this.request(scenario, reads, writes, errors))
+								.repeat(() -> System.nanoTime() < deadline),
+					options.getConcurrency())
+			.blockLast();
+	}
+	
+	private Mono<Object> request(Scenario scenario, Histogram reads, Histogram writes, AtomicLong errors)
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String isbn = isbns.get(random.nextInt(isbns.size()));
+		boolean read = random.nextDouble() < options.getReadRatio();
+		Histogram histogram = read ? reads : writes;
+		long start = System.nanoTime();
+		Mono<?> operation = read ? scenario.read(isbn) : scenario.write(isbn, random.nextBoolean() ? 1 : -1);
+		return operation.then(Mono.fromRunnable(() -> histogram.recordValue((System.nanoTime() - start) / 1000)))
+						.onErrorResume(e -> {
+							errors.incrementAndGet();
+							return Mono.empty();
+						});
+	}
+	
+	private void summary(String operation, Histogram histogram)
+	{
+		System.out.printf("   %-5s count %d, p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, max %.3f ms%n",
+						operation, histogram.getTotalCount(),
+						histogram.getValueAtPercentile(50) / MICROS_PER_MILLI,
+						histogram.getValueAtPercentile(99) / MICROS_PER_MILLI,
+						histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+						histogram.getMaxValue() / MICROS_PER_MILLI);
+	}
+	
+	private void report(String name, Histogram histogram)
+	{
+		if(histogram.getTotalCount() == 0)
+			return;
+		System.out.println("-- "+name+" latency (ms)");
+		histogram.outputPercentileDistribution(System.out, MICROS_PER_MILLI);
+		if(options.getOutput() == null)
+			return;
+		
+		try
+		{
+			Path directory = Files.createDirectories(Paths.get(options.getOutput()));
+			try(PrintStream out = new PrintStream(new FileOutputStream(directory.resolve(name+".hgrm").toFile())))
+			{
+				histogram.outputPercentileDistribution(out, MICROS_PER_MILLI);
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Can not write histogram "+name+": "+e.getMessage());
+		}
+	}
+}
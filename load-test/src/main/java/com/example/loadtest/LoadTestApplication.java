@@ -0,0 +1,120 @@
+package com.example.loadtest;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.bookservice.BookServiceApplication;
+import com.example.bookservice.dto.BookDto;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+import com.example.updateservice.UpdateServiceApplication;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Shivam
+ * Boots book-service and update-service in this JVM on random ports against an in-process Mongo
+ * stand-in (mongo-java-server, or --mongo-uri), seeds books and runs the load test scenarios.
+ * Change streams are not supported by the stand-in, so book-service runs with its cache bounded
+ * by book.cache.ttl only, as it does when the change stream is down.
+ * @Structure
+ * 	@Methods:
+ * 		1. public static void main(String[] args): to run the load test, see LoadTestOptions.
+ * 		2. private static ConfigurableApplicationContext start(Class<?> application, String mongoUri): to boot a service.
+ * 		3. private static List<String> seed(ConfigurableApplicationContext bookService, int count): to insert books.
+ * 		4. static String isbn(int number): valid ISBN-13 for a number.
+ */
+public class LoadTestApplication
+{
+	private static final int SEED_QUANTITY = 1_000_000;
+	
+	public static void main(String[] args)
+	{
+		LoadTestOptions options = LoadTestOptions.parse(args);
+		MongoServer mongoServer = null;
+		String mongoUri = options.getMongoUri();
+		if(mongoUri == null)
+		{
+			mongoServer = new MongoServer(new MemoryBackend());
+			InetSocketAddress address = mongoServer.bind();
+			mongoUri = "mongodb://"+address.getHostString()+":"+address.getPort()+"/loadtest";
+		}
+		
+		ConfigurableApplicationContext bookService = start(BookServiceApplication.class, mongoUri);
+		ConfigurableApplicationContext updateService = start(UpdateServiceApplication.class, mongoUri);
+		try
+		{
+			List<String> isbns = seed(bookService, options.getBooks());
+			LoadDriver driver = new LoadDriver(options, isbns);
+			if(options.getScenario().equals("all") || options.getScenario().equals("repository"))
+				driver.run(new RepositoryScenario(
+								bookService.getBean(com.example.bookservice.repository.BookRepository.class),
+								updateService.getBean(com.example.updateservice.repository.BookRepository.class)));
+			if(options.getScenario().equals("all") || options.getScenario().equals("http"))
+				driver.run(new HttpScenario(port(bookService), port(updateService), options.getConcurrency()));
+		}
+		finally
+		{
+			updateService.close();
+			bookService.close();
+			if(mongoServer != null)
+				mongoServer.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Both services have an application.properties at the classpath root and only one would be
+	 * found, so neither is read: settings the services need are given here.
+	 */
+	private static ConfigurableApplicationContext start(Class<?> application, String mongoUri)
+	{
+		return new SpringApplicationBuilder(application)
+					.run("--spring.config.name=load-test",
+						"--server.port=0",
+						"--spring.data.mongodb.uri="+mongoUri,
+						"--spring.data.mongodb.auto-index-creation=true",
+						"--book.quantity.floor=0",
+						"--spring.main.banner-mode=off",
+						"--logging.level.root=WARN",
+						"--logging.level.com.example.bookservice.event=ERROR",
+						"--logging.level.de.bwaldvogel=OFF");
+	}
+	
+	private static int port(ConfigurableApplicationContext context)
+	{
+		return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+	}
+	
+	private static List<String> seed(ConfigurableApplicationContext bookService, int count)
+	{
+		List<String> isbns = Flux.range(0, count)
+								.map(LoadTestApplication::isbn)
+								.collect(Collectors.toList())
+								.block();
+		com.example.bookservice.repository.BookRepository repository =
+									bookService.getBean(com.example.bookservice.repository.BookRepository.class);
+		repository.deleteAll()
+				.thenMany(repository.saveAll(Flux.range(0, count)
+													.map(number -> new Book(new BookDto("Load Test Book "+number, 10.0,
+																		isbns.get(number), SEED_QUANTITY,
+																		new Author("Author "+number % 100, "IN"))))))
+				.blockLast();
+		System.out.println("== Seeded "+count+" books");
+		return isbns;
+	}
+	
+	static String isbn(int number)
+	{
+		String digits = String.format("978%09d", number);
+		int sum = 0;
+		for(int i = 0; i < digits.length(); i++)
+			sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+		return digits+(10 - sum % 10) % 10;
+	}
+}
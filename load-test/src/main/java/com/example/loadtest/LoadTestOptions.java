@@ -0,0 +1,104 @@
+package com.example.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * @author Shivam
+ * Options of a load test run, given as --name=value arguments.
+ * @Fields:
+ * 	1. int concurrency: requests in flight, each worker sends its next request when the last one completes.
+ * 		Default 64.
+ * 	2. Duration warmup: time driven before measuring, per scenario. Default 10s.
+ * 	3. Duration duration: measured time, per scenario. Default 30s.
+ * 	4. int books: number of books seeded and picked from uniformly. Default 10000.
+ * 	5. double readRatio: share of reads (GET /isbn/{isbn}), the rest are quantity updates. Default 0.9.
+ * 	6. String scenario: http, repository or all. Default all.
+ * 	7. String mongoUri: Mongo to test against, default is an in-process mongo-java-server.
+ * 	8. String output: directory to write .hgrm percentile files to, default none.
+ */
+public class LoadTestOptions
+{
+	private int concurrency = 64;
+	private Duration warmup = Duration.ofSeconds(10);
+	private Duration duration = Duration.ofSeconds(30);
+	private int books = 10_000;
+	private double readRatio = 0.9;
+	private String scenario = "all";
+	private String mongoUri;
+	private String output;
+	
+	public static LoadTestOptions parse(String[] args)
+	{
+		Map<String, String> values = new HashMap<>();
+		for(String arg : args)
+		{
+			int separator = arg.indexOf('=');
+			if(!arg.startsWith("--") || separator < 0)
+				throw new IllegalArgumentException("Expected --name=value, got: "+arg);
+			values.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+		
+		LoadTestOptions options = new LoadTestOptions();
+		if(values.containsKey("concurrency"))
+			options.concurrency = Integer.parseInt(values.remove("concurrency"));
+		if(values.containsKey("warmup"))
+			options.warmup = DurationStyle.detectAndParse(values.remove("warmup"));
+		if(values.containsKey("duration"))
+			options.duration = DurationStyle.detectAndParse(values.remove("duration"));
+		if(values.containsKey("books"))
+			options.books = Integer.parseInt(values.remove("books"));
+		if(values.containsKey("read-ratio"))
+			options.readRatio = Double.parseDouble(values.remove("read-ratio"));
+		options.scenario = values.getOrDefault("scenario", options.scenario);
+		values.remove("scenario");
+		options.mongoUri = values.remove("mongo-uri");
+		options.output = values.remove("output");
+		if(!values.isEmpty())
+			throw new IllegalArgumentException("Unknown options: "+values.keySet());
+		return options;
+	}
+	
+	public int getConcurrency()
+	{
+		return concurrency;
+	}
+	
+	public Duration getWarmup()
+	{
+		return warmup;
+	}
+	
+	public Duration getDuration()
+	{
+		return duration;
+	}
+	
+	public int getBooks()
+	{
+		return books;
+	}
+	
+	public double getReadRatio()
+	{
+		return readRatio;
+	}
+	
+	public String getScenario()
+	{
+		return scenario;
+	}
+	
+	public String getMongoUri()
+	{
+		return mongoUri;
+	}
+	
+	public String getOutput()
+	{
+		return output;
+	}
+}
@@ -0,0 +1,61 @@
+package com.example.loadtest;
+
+import java.time.Duration;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * @author Shivam
+ * Baseline: the same operations on the plain ReactiveMongoRepository paths, without HTTP and
+ * without the services' optimizations (cache, coalescing, atomic updates). A read is
+ * findByIsbn, a write is findByIsbn, change quantity and save.
+ * The update-service Book is versioned, so a save racing another write of the same book fails with
+ * OptimisticLockingFailureException. A write retries it from the read as update-service does, with
+ * its default book.update.* backoff, so conflicts cost latency instead of being counted as errors and
+ * the write percentiles measure the same outcome as the service's.
+ */
+public class RepositoryScenario implements Scenario
+{
+	private static final int MAX_RETRIES = 5;
+	private static final Duration RETRY_BACKOFF = Duration.ofMillis(5);
+	private static final Duration MAX_RETRY_BACKOFF = Duration.ofMillis(100);
+	
+	private com.example.bookservice.repository.BookRepository bookRepository;
+	private com.example.updateservice.repository.BookRepository updateRepository;
+	
+	public RepositoryScenario(com.example.bookservice.repository.BookRepository bookRepository,
+							com.example.updateservice.repository.BookRepository updateRepository)
+	{
+		this.bookRepository = bookRepository;
+		this.updateRepository = updateRepository;
+	}
+	
+	@Override
+	public String name()
+	{
+		return "repository";
+	}
+	
+	@Override
+	public Mono<?> read(String isbn)
+	{
+		return bookRepository.findByIsbn(isbn);
+	}
+	
+	@Override
+	public Mono<?> write(String isbn, int delta)
+	{
+		return updateRepository.findByIsbn(isbn)
+							.flatMap(book -> {
+								book.setQuantity(book.getQuantity() + delta);
+								return updateRepository.save(book);
+							})
+							.retryWhen(Retry.backoff(MAX_RETRIES, RETRY_BACKOFF)
+											.maxBackoff(MAX_RETRY_BACKOFF)
+											.jitter(0.5)
+											.filter(OptimisticLockingFailureException.class::isInstance));
+	}
+}
@@ -0,0 +1,18 @@
+package com.example.loadtest;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * One way of serving the load test operations.
+ * @Methods:
+ * 	1. String name(): scenario name used in reports.
+ * 	2. Mono<?> read(String isbn): to read one book by ISBN.
+ * 	3. Mono<?> write(String isbn, int delta): to change quantity of one book.
+ */
+public interface Scenario
+{
+	public String name();
+	public Mono<?> read(String isbn);
+	public Mono<?> write(String isbn, int delta);
+}
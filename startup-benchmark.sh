@@ -0,0 +1,29 @@
+#!/bin/sh
+# Startup time of book-service and update-service: the executable jar, the cds layout without the
+# archive and the cds layout with it (target/cds/start.sh). Each run exits once started
+# (cds.training=true), the time is the JVM uptime Spring Boot logs with "Started".
+# Build first with: mvn -Pcds package -DskipTests in both modules. Usage: ./startup-benchmark.sh [runs]
+cd "$(dirname "$0")" || exit 1
+RUNS=${1:-5}
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+ARGS="--cds.training=true --server.port=0"
+
+# mean JVM uptime in seconds of RUNS runs of the command
+measure()
+{
+	i=0
+	while [ "$i" -lt "$RUNS" ]
+	do
+		"$@" $ARGS 2>&1 | sed -n 's/.*Started .*(JVM running for \([0-9.]*\)).*/\1/p'
+		i=$((i + 1))
+	done | awk '{ sum += $1; n++ } END { if(n) printf "%.3f s (%d runs)\n", sum / n, n; else print "failed" }'
+}
+
+for module in book-service update-service
+do
+	jar=$(ls "$module"/target/"$module"-*-exec.jar)
+	echo "$module"
+	printf '  executable jar:   '; measure "$JAVA" -jar "$jar"
+	printf '  cds layout, off:  '; measure env JAVA_OPTS=-Xshare:off "$module"/target/cds/start.sh
+	printf '  cds layout, on:   '; measure "$module"/target/cds/start.sh
+done
@@ -0,0 +1,7 @@
+#!/bin/sh
+# Starts update-service with the AppCDS archive built by mvn -Pcds package, from this directory as the
+# class path must be the one the archive was dumped with (relative paths in settings resolve here).
+# Use the JDK that built the archive; JVM options can be given in JAVA_OPTS, arguments are passed on.
+cd "$(dirname "$0")" || exit 1
+exec "${JAVA_HOME:+$JAVA_HOME/bin/}java" -XX:SharedArchiveFile=app.jsa -Xshare:auto $JAVA_OPTS \
+	-cp "@project.build.finalName@.jar:@cds.classpath@" com.example.updateservice.UpdateServiceApplication "$@"
@@ -2,12 +2,16 @@ package com.example.updateservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 public class UpdateServiceApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(UpdateServiceApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(UpdateServiceApplication.class, args);
+		// Training run of the cds build profile: exit once started, the loaded classes are archived.
+		if(context.getEnvironment().getProperty("cds.training", Boolean.class, false))
+			System.exit(SpringApplication.exit(context));
 	}
 
 }
@@ -6,12 +6,15 @@ import java.util.stream.Collectors;
 
 import javax.validation.ConstraintViolationException;
 
+import org.springframework.boot.web.reactive.error.ErrorAttributes;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebExchange;
 
+import com.example.updateservice.exception.ConflictException;
 import com.example.updateservice.exception.UnprocessableEntityException;
 import com.example.updateservice.model.Constants;
 import com.example.updateservice.model.ErrorMessage;
@@ -25,9 +28,11 @@ import reactor.core.publisher.Mono;
 public class ExceptionController 
 {
 	@ExceptionHandler(ConstraintViolationException.class)
-	public Mono<ResponseEntity<ExceptionResponse>> handleConstrainViolation(ConstraintViolationException exception)
+	public Mono<ResponseEntity<ExceptionResponse>> handleConstrainViolation(ConstraintViolationException exception,
+																ServerWebExchange exchange)
 	{
-		log.error("@Update-Service:: Handling Constraint Violation Exception");
+		log.debug("@Update-Service:: Handling Constraint Violation Exception");
+		this.tagException(exchange, exception);
 		List<ErrorMessage> messages = exception.getConstraintViolations()
 										.parallelStream()
 										.map(violation -> 
@@ -42,9 +47,11 @@ public class ExceptionController
 	}
 	
 	@ExceptionHandler(WebExchangeBindException.class)
-	public Mono<ResponseEntity<ExceptionResponse>> handleWebExchangeBind(WebExchangeBindException exception)
+	public Mono<ResponseEntity<ExceptionResponse>> handleWebExchangeBind(WebExchangeBindException exception,
+																ServerWebExchange exchange)
 	{
-		log.error("@Update-Service:: Handling Web Exchange Bind Exception");
+		log.debug("@Update-Service:: Handling Web Exchange Bind Exception");
+		this.tagException(exchange, exception);
 		List<ErrorMessage> messages = exception.getAllErrors()
 										.parallelStream()
 										.map(error -> 
@@ -60,9 +67,11 @@ public class ExceptionController
 	}
 	
 	@ExceptionHandler(UnprocessableEntityException.class)
-	public Mono<ResponseEntity<ExceptionResponse>> handleUnprocessableEntity(UnprocessableEntityException exception)
+	public Mono<ResponseEntity<ExceptionResponse>> handleUnprocessableEntity(UnprocessableEntityException exception,
+																ServerWebExchange exchange)
 	{
-		log.error("@Update-Service:: Handling Unpprocessable Entity Exception");
+		log.debug("@Update-Service:: Handling Unpprocessable Entity Exception");
+		this.tagException(exchange, exception);
 		List<ErrorMessage> messages = new ArrayList<>();
 		messages.add(
 				ErrorMessage.builder()
@@ -73,4 +82,30 @@ public class ExceptionController
 		
 		return Mono.just(ResponseEntity.unprocessableEntity().body(new ExceptionResponse(messages)));
 	}
+	
+	@ExceptionHandler(ConflictException.class)
+	public Mono<ResponseEntity<ExceptionResponse>> handleConflict(ConflictException exception,
+																ServerWebExchange exchange)
+	{
+		log.debug("@Update-Service:: Handling Conflict Exception");
+		this.tagException(exchange, exception);
+		List<ErrorMessage> messages = new ArrayList<>();
+		messages.add(
+				ErrorMessage.builder()
+						.message(Constants.CONFLICT_MESSAGE)
+						.moreInfo(exception.getMessage())
+						.status(HttpStatus.CONFLICT.value())
+						.build());
+		
+		return Mono.just(ResponseEntity.status(HttpStatus.CONFLICT).body(new ExceptionResponse(messages)));
+	}
+	
+	/**
+	 * Exceptions handled here do not reach the metrics web filter, so expose them to it for the
+	 * exception tag of http.server.requests.
+	 */
+	private void tagException(ServerWebExchange exchange, Throwable exception)
+	{
+		exchange.getAttributes().put(ErrorAttributes.ERROR_ATTRIBUTE, exception);
+	}
 }
@@ -5,21 +5,26 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Positive;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.updateservice.dto.BookDto;
+import com.example.updateservice.dto.QuantityDeltaDto;
+import com.example.updateservice.dto.QuantityUpdateResultDto;
 import com.example.updateservice.dto.UpdateDto;
 import com.example.updateservice.model.Constants;
 import com.example.updateservice.service.UpdateService;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Slf4j
@@ -35,8 +40,8 @@ public class UpdateController
 	public Mono<ResponseEntity<BookDto>> updateBook(@RequestBody @Valid UpdateDto updateDto,
 								@PathVariable @NotBlank(message = "ISBN can not be blank") String isbn)
 	{
-		log.info("@Update-Service:: Got request to update book with ISBN: {}",isbn);
-		return updateService.updateBook(updateDto, isbn).log();
+		log.debug("@Update-Service:: Got request to update book with ISBN: {}",isbn);
+		return updateService.updateBook(updateDto, isbn);
 	}
 	
 	@PatchMapping(Constants.UPDATE_ENDPOINT+"/isbn/{newIsbn}/{oldIsbn}")
@@ -44,8 +49,8 @@ public class UpdateController
 			@PathVariable @NotBlank(message = "New ISBN can not be blank") String newIsbn,
 			@PathVariable @NotBlank(message = "Old ISBN can not be blank") String oldIsbn)
 	{
-		log.info("@Update-Service:: Got request to update isbn of book with ISBN: {}",oldIsbn);
-		return updateService.updateIsbn(newIsbn, oldIsbn).log();
+		log.debug("@Update-Service:: Got request to update isbn of book with ISBN: {}",oldIsbn);
+		return updateService.updateIsbn(newIsbn, oldIsbn);
 	}
 	
 	@PatchMapping(Constants.UPDATE_ENDPOINT+"/rating/{rating}/{isbn}")
@@ -53,16 +58,25 @@ public class UpdateController
 			@PathVariable @Positive(message = "Rating must be a positive number") int rating,
 			@PathVariable @NotBlank(message = "Old ISBN can not be blank") String isbn)
 	{
-		log.info("@Update-Service:: Got request to update rating of book with ISBN: {}",isbn);
-		return updateService.updateRating(rating, isbn).log();
+		log.debug("@Update-Service:: Got request to update rating of book with ISBN: {}",isbn);
+		return updateService.updateRating(rating, isbn);
 	}
 	
-	@PatchMapping(Constants.UPDATE_ENDPOINT+"/quantity/{count}")
+	@PatchMapping(Constants.UPDATE_ENDPOINT+"/quantity/{count}/{isbn}")
 	public Mono<ResponseEntity<BookDto>> updateQuantity(
 			@PathVariable @NotBlank(message = "Old ISBN can not be blank") String isbn,
 			@PathVariable int count)
 	{
-		log.info("@Update-Service:: Got request to update quantity of book with ISBN: {}",isbn);
-		return updateService.updateBookQuantity(count, isbn).log();
+		log.debug("@Update-Service:: Got request to update quantity of book with ISBN: {}",isbn);
+		return updateService.updateBookQuantity(count, isbn);
+	}
+	
+	@PostMapping(value = Constants.UPDATE_ENDPOINT+"/quantity/batch",
+			consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+			produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public Flux<QuantityUpdateResultDto> updateQuantities(@RequestBody Flux<QuantityDeltaDto> deltas)
+	{
+		log.debug("@Update-Service:: Got request to update quantity of books in batch");
+		return updateService.updateBookQuantities(deltas);
 	}
 }
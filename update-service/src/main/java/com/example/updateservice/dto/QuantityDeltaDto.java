@@ -0,0 +1,18 @@
+package com.example.updateservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class QuantityDeltaDto
+{
+	private String isbn;
+	private int delta;
+}
@@ -0,0 +1,21 @@
+package com.example.updateservice.dto;
+
+import com.example.updateservice.model.UpdateStatus;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+@AllArgsConstructor
+@NoArgsConstructor
+public class QuantityUpdateResultDto
+{
+	private String isbn;
+	private int delta;
+	private UpdateStatus status;
+}
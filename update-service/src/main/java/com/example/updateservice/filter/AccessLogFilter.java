@@ -0,0 +1,69 @@
+package com.example.updateservice.filter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.example.updateservice.model.Constants;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * This class writes one access log entry for a sample of requests to the "access" logger, which
+ * logback-spring.xml sends through an async appender.
+ * Entries are keyed by the X-Correlation-Id header, or by the connection's request id without it.
+ * With the default sample rate of 0 requests pass through without any extra work.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain): to sample and time requests.
+ * 	@Fields:
+ * 		1. double sampleRate: share of requests logged, 0 to 1.
+ */
+@Component
+public class AccessLogFilter implements WebFilter
+{
+	private static final Logger ACCESS_LOG = LoggerFactory.getLogger("access");
+	
+	private double sampleRate;
+	
+	public AccessLogFilter(@Value("${book.access-log.sample-rate:0}") double sampleRate)
+	{
+		this.sampleRate = sampleRate;
+	}
+	
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain)
+	{
+		if(sampleRate <= 0 || !this.sampled() || !ACCESS_LOG.isInfoEnabled())
+			return chain.filter(exchange);
+		
+		long start = System.nanoTime();
+		return chain.filter(exchange)
+					.doFinally(signal -> this.log(exchange, start));
+	}
+	
+	private boolean sampled()
+	{
+		return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+	
+	private void log(ServerWebExchange exchange, long start)
+	{
+		ServerHttpRequest request = exchange.getRequest();
+		String correlationId = request.getHeaders().getFirst(Constants.CORRELATION_ID);
+		ACCESS_LOG.info("correlation_id={} method={} path={} status={} duration_us={}",
+						correlationId == null ? request.getId() : correlationId,
+						request.getMethodValue(),
+						request.getPath().value(),
+						exchange.getResponse().getRawStatusCode(),
+						(System.nanoTime() - start) / 1000);
+	}
+}
@@ -1,6 +1,10 @@
 package com.example.updateservice.model;
 
+import java.time.Instant;
+import java.util.Locale;
+
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -30,6 +34,18 @@ public class Book
 	private double rating;
 	private int quantity;	
 	private Author author;
+	@Field("book_name_lc")
+	private String bookNameLc;
+	@Field("author_name_lc")
+	private String authorNameLc;
+	@Field("rating_count")
+	private long ratingCount;
+	@Field("rating_sum")
+	private double ratingSum;
+	@Version
+	private Long version;
+	@Field("last_modified")
+	private Instant lastModified;
 	
 	public Book(String bookName, double price, String isbn, double rating, int quantity, Author author) 
 	{
@@ -40,7 +56,16 @@ public class Book
 		this.rating = rating;
 		this.quantity = quantity;
 		this.author = author;
+		this.bookNameLc = searchKey(bookName);
+		this.authorNameLc = author == null ? null : searchKey(author.getAuthorName());
 	}
 	
-	
+	/**
+	 * Normalized form of a name used by book-service prefix search:
+	 * trimmed, lower case, single spaces.
+	 */
+	public static String searchKey(String name)
+	{
+		return name == null ? null : name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
 }
@@ -10,4 +10,7 @@ public class Constants
 	public static final String INTERNAL_SERVER_ERROR_MESSAGE = "Internal Server Error";
 	public static final String CORRELATION_ID = "X-Correlation-Id";
 	public static final String BAD_REQUEST_MESSAGE = "Invalid Mandatory Parameter";
+	public static final String CONFLICT_MESSAGE = "Conflicting Update";
+	public static final String CONFLICT_EXCEPTION_MESSAGE = "Not enough quantity available for: ";
+	public static final String CONCURRENT_UPDATE_MESSAGE = "Book is being updated concurrently, retry later: ";
 }
@@ -0,0 +1,9 @@
+package com.example.updateservice.model;
+
+public enum UpdateStatus
+{
+	APPLIED,
+	MISSING,
+	CONFLICT,
+	INVALID
+}
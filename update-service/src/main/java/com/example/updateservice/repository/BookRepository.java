@@ -8,7 +8,8 @@ import com.example.updateservice.model.Book;
 import reactor.core.publisher.Mono;
 
 @Repository(value = "bookRepository")
-public interface BookRepository extends ReactiveMongoRepository<Book, String>
+public interface BookRepository extends ReactiveMongoRepository<Book, String>, BookRepositoryCustom
 {
 	public Mono<Book> findByIsbn(String isbn);
-}
\ No newline at end of file
+	public Mono<Boolean> existsByIsbn(String isbn);
+}
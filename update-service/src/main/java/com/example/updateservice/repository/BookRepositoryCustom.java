@@ -0,0 +1,27 @@
+package com.example.updateservice.repository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.example.updateservice.model.Book;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Repository fragment for write operations that are executed atomically on the server
+ * instead of as a read followed by a save.
+ */
+public interface BookRepositoryCustom
+{
+	public Mono<Book> incrementQuantity(String isbn, int count, Integer floor);
+	public Mono<Set<String>> bulkIncrementQuantity(Map<String, Integer> deltas, Integer floor);
+	public Mono<Set<String>> findExistingIsbns(Collection<String> isbns);
+	public Mono<Long> applyQuantityJournal(String instance, long segment, Map<String, Integer> deltas, Integer floor);
+	public Mono<Long> clearQuantityJournal(String instance, long before);
+	public Mono<Book> updateIfVersion(String id, Long version, Update update);
+	public Mono<Book> addRatings(String isbn, long count, double sum);
+}
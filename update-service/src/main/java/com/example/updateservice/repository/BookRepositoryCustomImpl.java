@@ -0,0 +1,319 @@
+package com.example.updateservice.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.example.updateservice.model.Book;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Implementation of BookRepositoryCustom backed by ReactiveMongoTemplate.
+ * Every write sets last_modified to the server time, book-service exports changes since a time from it.
+ * @Structure
+ * 	@Methods:
+ * 		1. public Mono<Book> incrementQuantity(String isbn, int count, Integer floor): to atomically
+ * 			increment book quantity.
+ * 		2. public Mono<Set<String>> bulkIncrementQuantity(Map<String, Integer> deltas, Integer floor): to
+ * 			increment quantity of many books, deltas that can not cross the floor with one unordered bulkWrite.
+ * 		3. public Mono<Set<String>> findExistingIsbns(Collection<String> isbns): to read which ISBNs have a book.
+ * 		4. public Mono<Long> applyQuantityJournal(String instance, long segment, Map<String, Integer> deltas,
+ * 			Integer floor): to apply the quantity deltas of a journal segment, at most once per book.
+ * 		5. public Mono<Long> clearQuantityJournal(String instance, long before): to remove the segment
+ * 			markers of a journal instance that no segment still to apply needs.
+ * 		6. public Mono<Book> updateIfVersion(String id, Long version, Update update): to update fields of a
+ * 			book only if it was not changed since it was read.
+ * 		7. public Mono<Book> addRatings(String isbn, long count, double sum): to add votes to the rating of a
+ * 			book with one pipeline update.
+ * 	@Fields:
+ * 		1. ReactiveMongoTemplate mongoTemplate: to execute findAndModify commands.
+ */
+public class BookRepositoryCustomImpl implements BookRepositoryCustom
+{
+	private static final String JOURNAL_SEGMENTS = "journal_segments";
+	private static final String LAST_MODIFIED = "last_modified";
+	
+	private ReactiveMongoTemplate mongoTemplate;
+	
+	@Autowired
+	public BookRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate)
+	{
+		this.mongoTemplate = mongoTemplate;
+	}
+	
+	/**
+	 * To increment book quantity with a single findAndModify($inc) command.
+	 * @param isbn
+	 * @param count: delta to apply, can be negative.
+	 * @param floor: lowest quantity allowed after the update, null to disable the check.
+	 * @Structure:
+	 * 	1. Match book by ISBN.
+	 * 	2. If floor is given and count is negative, also match quantity >= floor - count.
+	 * 	3. @return Mono<Book> with the updated document, empty if nothing matched.
+	 */
+	@Override
+	public Mono<Book> incrementQuantity(String isbn, int count, Integer floor)
+	{
+		Criteria criteria = Criteria.where("isbn").is(isbn);
+		if(floor != null && count < 0)
+			criteria = criteria.and("quantity").gte((long) floor - count);
+		
+		return mongoTemplate.findAndModify(Query.query(criteria),
+										new Update().inc("quantity", count).inc("version", 1).currentDate(LAST_MODIFIED),
+										FindAndModifyOptions.options().returnNew(true),
+										Book.class);
+	}
+	
+	/**
+	 * To increment quantity of many books. A bulkWrite only counts matches, so deltas a floor guards,
+	 * the only ones that can be refused for a book that exists, are each written with their own
+	 * updateOne, concurrently, to know which were refused. The others go in one unordered bulkWrite,
+	 * and if it matched fewer books than it had deltas, the ISBNs without a book are read.
+	 * @param deltas: ISBN to delta, one update per ISBN.
+	 * @param floor: lowest quantity allowed after the update, null to disable the check.
+	 * @Structure:
+	 * 	1. Split deltas into guarded (negative with a floor) and unguarded.
+	 * 	2. Write unguarded deltas as one unordered bulkWrite of UpdateOne($inc), if fewer matched
+	 * 		read which of their ISBNs have a book.
+	 * 	3. Write each guarded delta with updateOne($inc) matching quantity >= floor - delta.
+	 * 	4. @return Mono<Set<String>> with the ISBNs whose delta was not applied, empty if all were.
+	 */
+	@Override
+	public Mono<Set<String>> bulkIncrementQuantity(Map<String, Integer> deltas, Integer floor)
+	{
+		List<WriteModel<Document>> unguarded = new ArrayList<>(deltas.size());
+		Map<String, Integer> guarded = new HashMap<>();
+		deltas.forEach((isbn, delta) -> {
+			if(floor != null && delta < 0)
+				guarded.put(isbn, delta);
+			else
+				unguarded.add(new UpdateOneModel<>(Filters.eq("isbn", isbn), quantityUpdate(delta)));
+		});
+		
+		Mono<Set<String>> missing = this.bulkWrite(unguarded)
+										.flatMap(matched -> matched == unguarded.size()
+												? Mono.just(Collections.<String>emptySet())
+												: this.findExistingIsbns(deltas.keySet())
+														.map(existing -> deltas.keySet().stream()
+																			.filter(isbn -> !guarded.containsKey(isbn))
+																			.filter(isbn -> !existing.contains(isbn))
+																			.collect(Collectors.toSet())));
+		Mono<List<String>> refused = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Book.class))
+										.flatMapMany(collection -> Flux.fromIterable(guarded.entrySet())
+																	.flatMap(delta -> Mono.from(collection.updateOne(
+																						quantityFilter(Filters.eq("isbn", delta.getKey()),
+																										delta.getValue(), floor),
+																						quantityUpdate(delta.getValue())))
+																					.filter(result -> result.getMatchedCount() == 0)
+																					.map(result -> delta.getKey())))
+										.collectList();
+		return Mono.zip(missing, refused, (unmatched, isbns) -> {
+			Set<String> notApplied = new HashSet<>(unmatched);
+			notApplied.addAll(isbns);
+			return notApplied;
+		});
+	}
+	
+	/**
+	 * To find which ISBNs have a book, reading only the ISBN of each.
+	 * @param isbns
+	 * @return Mono<Set<String>> with the ISBNs that have a book.
+	 */
+	@Override
+	public Mono<Set<String>> findExistingIsbns(Collection<String> isbns)
+	{
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Book.class))
+						.flatMapMany(collection -> Flux.from(collection.find(Filters.in("isbn", isbns))
+																	.projection(Projections.fields(Projections.include("isbn"),
+																									Projections.excludeId()))))
+						.map(document -> document.getString("isbn"))
+						.collect(Collectors.toSet());
+	}
+	
+	/**
+	 * To apply the summed quantity deltas of one write-behind journal segment with a single unordered
+	 * bulkWrite. Each updated book records the segment number under the journal instance, and books
+	 * recording this segment or a later one for the instance are skipped: the segments of an instance
+	 * are applied in order, so applying a segment again after a failure or a crash never counts a delta
+	 * twice. Segment numbers of different instances are unrelated and never compared.
+	 * A book keeps one marker per instance, overwritten by each segment; once the segment is deleted
+	 * from the journal it is no longer needed, and clearQuantityJournal removes it.
+	 * @param instance: id of the journal the segment belongs to.
+	 * @param segment: journal segment number.
+	 * @param deltas: ISBN to summed delta of the segment.
+	 * @param floor: lowest quantity allowed after the update, null to disable the check.
+	 * @Structure:
+	 * 	1. Build one UpdateOne($inc, $set journal_segments.<instance>) per ISBN, matching books not
+	 * 		tagged with this segment or a later one by the instance, guarded by the floor for negative deltas.
+	 * 	2. Execute them as one unordered bulkWrite on the book collection.
+	 * 	3. @return Mono<Long> with the number of matched documents.
+	 */
+	@Override
+	public Mono<Long> applyQuantityJournal(String instance, long segment, Map<String, Integer> deltas, Integer floor)
+	{
+		String applied = JOURNAL_SEGMENTS+"."+instance;
+		List<WriteModel<Document>> updates = new ArrayList<>(deltas.size());
+		deltas.forEach((isbn, delta) -> {
+			Bson filter = Filters.and(Filters.eq("isbn", isbn), Filters.not(Filters.gte(applied, segment)));
+			updates.add(new UpdateOneModel<>(quantityFilter(filter, delta, floor),
+											Updates.combine(Updates.inc("quantity", delta),
+															Updates.inc("version", 1),
+															Updates.set(applied, segment),
+															Updates.currentDate(LAST_MODIFIED))));
+		});
+		return this.bulkWrite(updates);
+	}
+	
+	/**
+	 * To remove the journal_segments marker of an instance from every book, where it is older than
+	 * the oldest segment the instance may still apply. The marker only guards against applying a
+	 * segment twice, so it is dead once its segment is deleted from the journal. Version and
+	 * last_modified are left alone, as the book fields do not change.
+	 * @param instance: id of the journal.
+	 * @param before: oldest segment number of the instance not applied yet.
+	 * @Structure:
+	 * 	1. $unset journal_segments.<instance> on books where it is lower than before, with one updateMany.
+	 * 	2. @return Mono<Long> with the number of books cleared.
+	 */
+	@Override
+	public Mono<Long> clearQuantityJournal(String instance, long before)
+	{
+		String applied = JOURNAL_SEGMENTS+"."+instance;
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Book.class))
+						.flatMap(collection -> Mono.from(collection.updateMany(Filters.lt(applied, before), Updates.unset(applied))))
+						.map(result -> result.getModifiedCount());
+	}
+	
+	/**
+	 * To apply a field level update with a single findAndModify command, conditional on version.
+	 * @param id
+	 * @param version: version the update was computed from, null for books written before versioning.
+	 * @param update: fields to change, version is incremented as well.
+	 * @Structure:
+	 * 	1. Match book by id and version.
+	 * 	2. Apply update and $inc version.
+	 * 	3. @return Mono<Book> with the updated document, empty if the book was changed or deleted since read.
+	 */
+	@Override
+	public Mono<Book> updateIfVersion(String id, Long version, Update update)
+	{
+		Query query = Query.query(Criteria.where("id").is(id).and("version").is(version));
+		return mongoTemplate.findAndModify(query,
+										update.inc("version", 1).currentDate(LAST_MODIFIED),
+										FindAndModifyOptions.options().returnNew(true),
+										Book.class);
+	}
+	
+	/**
+	 * To add votes to a book with a single findAndModify pipeline update, the mean is computed
+	 * on the server.
+	 * @param isbn
+	 * @param count: number of votes.
+	 * @param sum: sum of the votes.
+	 * @Structure:
+	 * 	1. Add count and sum to rating_count and rating_sum. Books rated before the counters existed
+	 * 		start from their rating as one vote, or from no vote if unrated.
+	 * 	2. Set rating to rating_sum / rating_count, last_modified and increment version. Version is set through
+	 * 		AggregationUpdate.set so Spring Data does not append its own version stage.
+	 * 	3. @return Mono<Book> with the updated document, empty if no book has the ISBN.
+	 */
+	@Override
+	public Mono<Book> addRatings(String isbn, long count, double sum)
+	{
+		List<AggregationOperation> stages = ratingStages(count, sum).stream()
+																.map(BookRepositoryCustomImpl::set)
+																.collect(Collectors.toCollection(ArrayList::new));
+		stages.add(set(new Document(LAST_MODIFIED, "$$NOW")));
+		AggregationUpdate update = AggregationUpdate.from(stages)
+								.set("version").toValue(ArithmeticOperators.valueOf(ConditionalOperators.ifNull("version").then(0))
+																			.add(1));
+		
+		return mongoTemplate.findAndModify(Query.query(Criteria.where("isbn").is(isbn)),
+										update,
+										FindAndModifyOptions.options().returnNew(true),
+										Book.class);
+	}
+	
+	/**
+	 * To build the fields set by each rating stage of addRatings: the counters, then the mean.
+	 * @param count: number of votes.
+	 * @param sum: sum of the votes.
+	 * @return List<Document> with the fields of each $set stage, in order.
+	 */
+	static List<Document> ratingStages(long count, double sum)
+	{
+		Document rated = new Document("$gt", Arrays.asList("$rating", 0));
+		Document totals = new Document("rating_count", add(ifNull("$rating_count",
+																	new Document("$cond", Arrays.asList(rated, 1, 0))), count))
+								.append("rating_sum", add(ifNull("$rating_sum",
+																	new Document("$cond", Arrays.asList(rated, "$rating", 0))), sum));
+		Document mean = new Document("rating", new Document("$divide", Arrays.asList("$rating_sum", "$rating_count")));
+		return Arrays.asList(totals, mean);
+	}
+	
+	private static AggregationOperation set(Document fields)
+	{
+		return context -> new Document("$set", fields);
+	}
+	
+	private static Document add(Object value, Object increment)
+	{
+		return new Document("$add", Arrays.asList(value, increment));
+	}
+	
+	private static Document ifNull(Object value, Object replacement)
+	{
+		return new Document("$ifNull", Arrays.asList(value, replacement));
+	}
+	
+	private Mono<Long> bulkWrite(List<WriteModel<Document>> updates)
+	{
+		if(updates.isEmpty())
+			return Mono.just(0L);
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Book.class))
+						.flatMap(collection -> Mono.from(
+								collection.bulkWrite(updates, new BulkWriteOptions().ordered(false))))
+						.map(result -> (long) result.getMatchedCount());
+	}
+	
+	private static Bson quantityUpdate(int delta)
+	{
+		return Updates.combine(Updates.inc("quantity", delta), Updates.inc("version", 1), Updates.currentDate(LAST_MODIFIED));
+	}
+	
+	private static Bson quantityFilter(Bson filter, int delta, Integer floor)
+	{
+		if(floor != null && delta < 0)
+			return Filters.and(filter, Filters.gte("quantity", (long) floor - delta));
+		return filter;
+	}
+}
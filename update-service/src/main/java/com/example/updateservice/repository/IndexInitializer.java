@@ -0,0 +1,51 @@
+package com.example.updateservice.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+
+import com.example.updateservice.model.Book;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+/**
+ * @author Shivam
+ * This class ensures the two indexes update-service relies on once the application is ready: isbn,
+ * which every update matches on, and book_name, which keeps renames unique. Both are declared on Book
+ * the same way as in book-service, so whichever service starts first creates them and the other
+ * finds them in place. The search and export indexes are book-service's alone.
+ * @Structure
+ * 	@Methods:
+ * 		1. public void createIndexes(): to ensure the indexes declared on Book, one at a time.
+ * 	@Fields:
+ * 		1. ReactiveMongoTemplate mongoTemplate: to create indexes.
+ */
+@Slf4j
+@Component
+public class IndexInitializer
+{
+	private ReactiveMongoTemplate mongoTemplate;
+	
+	@Autowired
+	public IndexInitializer(ReactiveMongoTemplate mongoTemplate)
+	{
+		this.mongoTemplate = mongoTemplate;
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public void createIndexes()
+	{
+		IndexResolver resolver = IndexResolver.create(mongoTemplate.getConverter().getMappingContext());
+		long start = System.nanoTime();
+		Flux.fromIterable(resolver.resolveIndexFor(Book.class))
+			.concatMap(index -> mongoTemplate.indexOps(Book.class).ensureIndex(index))
+			.count()
+			.subscribe(count -> log.info("@Update-Service:: Indexes ensured: "+count+", took ms: "
+											+(System.nanoTime() - start) / 1_000_000),
+						e -> log.warn("@Update-Service:: Index creation failed: "+e.getMessage()));
+	}
+}
@@ -0,0 +1,179 @@
+package com.example.updateservice.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.updateservice.repository.BookRepository;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Buffers rating votes in memory and writes them as one update per ISBN every flush interval,
+ * or earlier once book.rating.accumulator.max-pending votes are waiting.
+ * Votes are acknowledged before they are written: votes still buffered when the process dies are
+ * lost, and votes for unknown ISBNs are dropped at flush.
+ * @Structure
+ * 	@Methods:
+ * 		1. public boolean isEnabled(): whether votes should go through the accumulator.
+ * 		2. public void add(String isbn, int rating): to buffer one vote.
+ * 		3. public Mono<Void> flush(): to write buffered votes.
+ * 	@Fields:
+ * 		1. BookRepository bookRepo: to write votes.
+ * 		2. Map<String, Votes> pending: buffered votes by ISBN.
+ * 		3. AtomicInteger pendingCount: number of buffered votes.
+ * 		4. AtomicBoolean flushing: set while a flush runs.
+ */
+@Slf4j
+@Component
+public class RatingAccumulator
+{
+	private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+	
+	private BookRepository bookRepo;
+	private boolean enabled;
+	private Duration flushInterval;
+	private int maxPending;
+	private int flushConcurrency;
+	private Map<String, Votes> pending = new ConcurrentHashMap<>();
+	private AtomicInteger pendingCount = new AtomicInteger();
+	private AtomicBoolean flushing = new AtomicBoolean();
+	private Disposable ticker;
+	
+	@Autowired
+	public RatingAccumulator(BookRepository bookRepo,
+							@Value("${book.rating.accumulator.enabled:false}") boolean enabled,
+							@Value("${book.rating.accumulator.flush-interval:1s}") Duration flushInterval,
+							@Value("${book.rating.accumulator.max-pending:10000}") int maxPending,
+							@Value("${book.batch.concurrency:4}") int flushConcurrency)
+	{
+		this.bookRepo = bookRepo;
+		this.enabled = enabled;
+		this.flushInterval = flushInterval;
+		this.maxPending = maxPending;
+		this.flushConcurrency = flushConcurrency;
+	}
+	
+	@PostConstruct
+	public void start()
+	{
+		if(enabled)
+			ticker = Flux.interval(flushInterval)
+						.onBackpressureDrop()
+						.concatMap(tick -> this.flush())
+						.subscribe();
+	}
+	
+	/**
+	 * To write votes still buffered on shutdown, after a running flush is done.
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException
+	{
+		if(ticker == null)
+			return;
+		ticker.dispose();
+		long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT.toNanos();
+		while(flushing.get() && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		this.flush().block(SHUTDOWN_TIMEOUT);
+	}
+	
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+	
+	/**
+	 * To buffer one vote, flushing right away once max-pending votes are waiting.
+	 */
+	public void add(String isbn, int rating)
+	{
+		this.merge(isbn, 1, rating);
+		if(pendingCount.incrementAndGet() >= maxPending)
+			this.flush().subscribe();
+	}
+	
+	/**
+	 * To write buffered votes, one addRatings update per ISBN.
+	 * @Structure:
+	 * 	1. If a flush is already running, @return.
+	 * 	2. Take buffered votes of each ISBN out of the buffer.
+	 * 	3. Write them, book.batch.concurrency ISBNs at a time.
+	 * 	4. Put votes of failed writes back to be retried by the next flush.
+	 */
+	public Mono<Void> flush()
+	{
+		if(!flushing.compareAndSet(false, true))
+			return Mono.empty();
+		
+		List<Map.Entry<String, Votes>> batch = new ArrayList<>();
+		for(String isbn : pending.keySet())
+		{
+			Votes votes = pending.remove(isbn);
+			if(votes != null)
+			{
+				pendingCount.addAndGet((int) -votes.count);
+				batch.add(Map.entry(isbn, votes));
+			}
+		}
+		return Flux.fromIterable(batch)
+					.flatMap(entry -> this.write(entry.getKey(), entry.getValue()), flushConcurrency)
+					.doFinally(signal -> flushing.set(false))
+					.then();
+	}
+	
+	private Mono<Void> write(String isbn, Votes votes)
+	{
+		return bookRepo.addRatings(isbn, votes.count, votes.sum)
+					.switchIfEmpty(Mono.fromRunnable(() ->
+							log.debug("@Update-Service:: Dropped {} votes of unknown ISBN: {}",votes.count,isbn)))
+					.then()
+					.onErrorResume(e -> {
+						log.warn("@Update-Service:: Can not write votes, ISBN: "+isbn+", retrying on next flush: "+e.getMessage());
+						this.merge(isbn, votes.count, votes.sum);
+						pendingCount.addAndGet((int) votes.count);
+						return Mono.empty();
+					});
+	}
+	
+	private void merge(String isbn, long count, double sum)
+	{
+		pending.compute(isbn, (key, votes) -> votes == null ? new Votes(count, sum) : votes.plus(count, sum));
+	}
+	
+	/**
+	 * Buffered votes of one ISBN, immutable so that a removed entry is a consistent snapshot.
+	 */
+	private static class Votes
+	{
+		private final long count;
+		private final double sum;
+		
+		private Votes(long count, double sum)
+		{
+			this.count = count;
+			this.sum = sum;
+		}
+		
+		private Votes plus(long count, double sum)
+		{
+			return new Votes(this.count + count, this.sum + sum);
+		}
+	}
+}
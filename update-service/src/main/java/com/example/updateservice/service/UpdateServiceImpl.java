@@ -1,19 +1,40 @@
 package com.example.updateservice.service;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import com.example.updateservice.dto.BookDto;
+import com.example.updateservice.dto.QuantityDeltaDto;
+import com.example.updateservice.dto.QuantityUpdateResultDto;
 import com.example.updateservice.dto.UpdateDto;
+import com.example.updateservice.exception.ConflictException;
 import com.example.updateservice.exception.UnprocessableEntityException;
-import com.example.updateservice.model.Author;
+import com.example.updateservice.model.Book;
 import com.example.updateservice.model.Constants;
+import com.example.updateservice.model.UpdateStatus;
 import com.example.updateservice.repository.BookRepository;
 import com.example.updateservice.util.CustomObjectMapper;
+import com.example.updateservice.writebehind.QuantityWriteBehind;
 
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
 @Slf4j
 @Service(value = "updateService")
@@ -21,84 +42,239 @@ public class UpdateServiceImpl implements UpdateService
 {
 	private BookRepository bookRepo;
 	private CustomObjectMapper mapper;
+	private Integer quantityFloor;
+	private int batchChunkSize;
+	private int batchConcurrency;
+	private int updateMaxRetries;
+	private Duration updateRetryBackoff;
+	private Duration updateMaxRetryBackoff;
+	private RatingAccumulator ratingAccumulator;
+	private QuantityWriteBehind quantityWriteBehind;
 	
 	@Autowired
-	public UpdateServiceImpl(BookRepository bookRepo,CustomObjectMapper mapper)
+	public UpdateServiceImpl(BookRepository bookRepo,CustomObjectMapper mapper,RatingAccumulator ratingAccumulator,
+							QuantityWriteBehind quantityWriteBehind,
+							@Value("${book.quantity.floor:#{null}}") Integer quantityFloor,
+							@Value("${book.batch.chunk-size:500}") int batchChunkSize,
+							@Value("${book.batch.concurrency:4}") int batchConcurrency,
+							@Value("${book.update.max-retries:5}") int updateMaxRetries,
+							@Value("${book.update.retry-backoff:5ms}") Duration updateRetryBackoff,
+							@Value("${book.update.max-retry-backoff:100ms}") Duration updateMaxRetryBackoff)
 	{
 		this.mapper = mapper;
 		this.bookRepo = bookRepo;
+		this.quantityFloor = quantityFloor;
+		this.batchChunkSize = batchChunkSize;
+		this.batchConcurrency = batchConcurrency;
+		this.updateMaxRetries = updateMaxRetries;
+		this.updateRetryBackoff = updateRetryBackoff;
+		this.updateMaxRetryBackoff = updateMaxRetryBackoff;
+		this.ratingAccumulator = ratingAccumulator;
+		this.quantityWriteBehind = quantityWriteBehind;
 	}
 
+	/**
+	 * To update book quantity.
+	 * @Structure:
+	 * 	1. If write-behind is enabled, @return 202 once the delta is journaled.
+	 * 	2. Atomically increment quantity on the server, respecting the configured floor.
+	 * 	3. If nothing matched:
+	 * 		3.1 If book exists, throw ConflictException (floor would be crossed).
+	 * 		3.2 Else throw UnprocessableEntityException.
+	 * 	4. @return Mono<ResponseEntity<BookDto>> with the updated book.
+	 */
 	@Override
 	public Mono<ResponseEntity<BookDto>> updateBookQuantity(int count, String isbn)
 	{
-		log.info("@Update-Service:: Updating book qunatity, ISBN: {}",isbn);
-		return bookRepo.findByIsbn(isbn)
-					.switchIfEmpty(Mono.error(
-							new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+isbn)))
-					.flatMap(book -> {
-						book.setQuantity(book.getQuantity()+count);
-						return bookRepo.save(book)
-									.map(newBook -> {
-										log.info("@Update-Service:: Book quantity updated, ISBN: {}",isbn);
-										return ResponseEntity.ok().body(mapper.bookToBookDto(newBook));
-									});
+		log.debug("@Update-Service:: Updating book qunatity, ISBN: {}",isbn);
+		if(quantityWriteBehind.accepts(isbn))
+			return quantityWriteBehind.add(isbn, count)
+					.thenReturn(ResponseEntity.accepted().build());
+		return bookRepo.incrementQuantity(isbn, count, quantityFloor)
+					.switchIfEmpty(Mono.defer(() -> bookRepo.existsByIsbn(isbn)
+							.flatMap(exists -> Mono.error(exists
+									? new ConflictException(Constants.CONFLICT_EXCEPTION_MESSAGE+isbn)
+									: new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+isbn)))))
+					.map(newBook -> {
+						log.debug("@Update-Service:: Book quantity updated, ISBN: {}",isbn);
+						return ResponseEntity.ok().body(mapper.bookToBookDto(newBook));
 					});
 	}
 
+	/**
+	 * To update quantity of many books.
+	 * @Structure:
+	 * 	1. Split incoming deltas into chunks of book.batch.chunk-size.
+	 * 	2. Apply each chunk with one bulkWrite, up to book.batch.concurrency chunks at a time.
+	 * 	3. @return Flux<QuantityUpdateResultDto> with one result per delta, in request order.
+	 */
+	@Override
+	public Flux<QuantityUpdateResultDto> updateBookQuantities(Flux<QuantityDeltaDto> deltas)
+	{
+		return deltas.buffer(batchChunkSize)
+					.flatMapSequential(this::updateQuantityChunk, batchConcurrency)
+					.flatMapIterable(results -> results);
+	}
+	
+	/**
+	 * To apply one chunk of quantity deltas.
+	 * @Structure:
+	 * 	1. Sum deltas per ISBN, deltas without ISBN are INVALID.
+	 * 	2. Call repository bulk increment, which returns the ISBNs it did not apply.
+	 * 	3. If it applied every ISBN, all deltas are APPLIED.
+	 * 	4. Else resolve status of the ISBNs not applied from whether their book exists.
+	 * 	5. @return Mono<List<QuantityUpdateResultDto>> in chunk order.
+	 */
+	private Mono<List<QuantityUpdateResultDto>> updateQuantityChunk(List<QuantityDeltaDto> chunk)
+	{
+		Map<String, Integer> deltas = new LinkedHashMap<>();
+		chunk.stream()
+			.filter(delta -> StringUtils.hasText(delta.getIsbn()))
+			.forEach(delta -> deltas.merge(delta.getIsbn(), delta.getDelta(), Integer::sum));
+		if(deltas.isEmpty())
+			return Mono.just(this.toQuantityResults(chunk, Collections.emptyMap()));
+		
+		return bookRepo.bulkIncrementQuantity(deltas, quantityFloor)
+					.flatMap(notApplied -> notApplied.isEmpty()
+							? Mono.just(this.quantityStatuses(deltas, UpdateStatus.APPLIED))
+							: this.resolveQuantityStatuses(deltas, notApplied))
+					.map(statuses -> {
+						log.debug("@Update-Service:: Book quantities updated, books: {}",deltas.size());
+						return this.toQuantityResults(chunk, statuses);
+					});
+	}
+	
+	/**
+	 * To find out why deltas of a chunk were not applied.
+	 * @Structure:
+	 * 	1. Read which of the ISBNs not applied have a book, with one query.
+	 * 	2. ISBNs not applied with a book are CONFLICT (the floor would be crossed), without a book
+	 * 		MISSING, the others APPLIED.
+	 * 	3. @return Mono<Map<String, UpdateStatus>> status per ISBN.
+	 */
+	private Mono<Map<String, UpdateStatus>> resolveQuantityStatuses(Map<String, Integer> deltas, Set<String> notApplied)
+	{
+		return bookRepo.findExistingIsbns(notApplied)
+					.map(existing -> {
+						Map<String, UpdateStatus> statuses = new HashMap<>();
+						deltas.keySet().forEach(isbn -> statuses.put(isbn, !notApplied.contains(isbn)
+																		? UpdateStatus.APPLIED
+																		: existing.contains(isbn) ? UpdateStatus.CONFLICT : UpdateStatus.MISSING));
+						return statuses;
+					});
+	}
+	
+	private Map<String, UpdateStatus> quantityStatuses(Map<String, Integer> deltas, UpdateStatus status)
+	{
+		Map<String, UpdateStatus> statuses = new HashMap<>();
+		deltas.keySet().forEach(isbn -> statuses.put(isbn, status));
+		return statuses;
+	}
+	
+	private List<QuantityUpdateResultDto> toQuantityResults(List<QuantityDeltaDto> chunk,
+																Map<String, UpdateStatus> statuses)
+	{
+		return chunk.stream()
+				.map(delta -> new QuantityUpdateResultDto(delta.getIsbn(), delta.getDelta(),
+									statuses.getOrDefault(delta.getIsbn(), UpdateStatus.INVALID)))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * To update name, price and author of a book.
+	 * @Structure:
+	 * 	1. $set changed fields, conditional on the version read (see updateIfUnchanged).
+	 * 	2. @return Mono<ResponseEntity<BookDto>> with the updated book.
+	 */
 	@Override
 	public Mono<ResponseEntity<BookDto>> updateBook(UpdateDto updateDto,String isbn) 
 	{
-		log.info("@Update-Service:: Updating book, ISBN: {}",isbn);
-		return bookRepo.findByIsbn(isbn)
-					.switchIfEmpty(Mono.error(
-							new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+isbn)))
-					.flatMap(book -> {
-						Author author = book.getAuthor();
-						book.setBookName(updateDto.getBookName());
-						book.setPrice(updateDto.getPrice());
-						author.setAuthorName(updateDto.getAuthorName());
-						author.setCountry(updateDto.getAuthorCountry());
-						return bookRepo.save(book)
-									.map(newBook -> {
-										log.info("@Update-Service:: Book updated, ISBN: {}",isbn);
-										return ResponseEntity.ok(mapper.bookToBookDto(newBook));
-									});
+		log.debug("@Update-Service:: Updating book, ISBN: {}",isbn);
+		return this.updateIfUnchanged(isbn, book -> new Update()
+										.set("bookName", updateDto.getBookName())
+										.set("bookNameLc", Book.searchKey(updateDto.getBookName()))
+										.set("price", updateDto.getPrice())
+										.set("author.authorName", updateDto.getAuthorName())
+										.set("author.country", updateDto.getAuthorCountry())
+										.set("authorNameLc", Book.searchKey(updateDto.getAuthorName())))
+					.map(newBook -> {
+						log.debug("@Update-Service:: Book updated, ISBN: {}",isbn);
+						return ResponseEntity.ok(mapper.bookToBookDto(newBook));
 					});
 	}
 
+	/**
+	 * To change ISBN of a book.
+	 * @Structure:
+	 * 	1. $set isbn, conditional on the version read (see updateIfUnchanged).
+	 * 	2. @return Mono<ResponseEntity<BookDto>> with the updated book.
+	 */
 	@Override
 	public Mono<ResponseEntity<BookDto>> updateIsbn(String newIsbn,String oldIsbn)
 	{
-		log.info("@Update-Service:: Updating book isbn, ISBN: {}",oldIsbn);
-		return bookRepo.findByIsbn(oldIsbn)
-				.switchIfEmpty(Mono.error(
-						new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+oldIsbn)))
-				.flatMap(book -> {
-					book.setIsbn(newIsbn);
-					return bookRepo.save(book)
-								.map(newBook ->{
-									log.info("@Update-Service:: Book isbn updated, ISBN: {}",newIsbn);
-									return ResponseEntity.ok(mapper.bookToBookDto(newBook));
-								});
+		log.debug("@Update-Service:: Updating book isbn, ISBN: {}",oldIsbn);
+		return this.updateIfUnchanged(oldIsbn, book -> new Update().set("isbn", newIsbn))
+				.map(newBook ->{
+					log.debug("@Update-Service:: Book isbn updated, ISBN: {}",newIsbn);
+					return ResponseEntity.ok(mapper.bookToBookDto(newBook));
 				});
 	}
 	
+	/**
+	 * To add a rating vote to a book.
+	 * @Structure:
+	 * 	1. If the rating accumulator is enabled:
+	 * 		1.1 Buffer the vote, it is written with other votes of the book on the next flush.
+	 * 		1.2 @return Mono<ResponseEntity<BookDto>> with status 202 and no body.
+	 * 	2. Add the vote to rating count and sum with one pipeline update, rating becomes their mean.
+	 * 	3. If empty response:
+	 * 		throw UnprocessableEntityException
+	 * 	4. @return Mono<ResponseEntity<BookDto>> with the updated book.
+	 */
 	@Override
 	public Mono<ResponseEntity<BookDto>> updateRating(int rating,String isbn)
 	{
-		log.info("@Update-Service:: Updating book rating, ISBN: {}",isbn);
-		return bookRepo.findByIsbn(isbn)
-				.switchIfEmpty(Mono.error(
+		log.debug("@Update-Service:: Updating book rating, ISBN: {}",isbn);
+		if(ratingAccumulator.isEnabled())
+		{
+			ratingAccumulator.add(isbn, rating);
+			return Mono.just(ResponseEntity.accepted().build());
+		}
+		return bookRepo.addRatings(isbn, 1, rating)
+				.switchIfEmpty(Mono.error(() ->
 						new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+isbn)))
-				.flatMap(book -> {
-					double newRating = (book.getRating() + rating)/ 2;
-					book.setRating(newRating);
-					return bookRepo.save(book)
-							.map(newBook -> {
-								log.info("@Update-Service:: Updated book rating, ISBN: {}",isbn);
-								return ResponseEntity.ok(mapper.bookToBookDto(newBook));
-							});
+				.map(newBook -> {
+					log.debug("@Update-Service:: Updated book rating, ISBN: {}",isbn);
+					return ResponseEntity.ok(mapper.bookToBookDto(newBook));
 				});
 	}
+	
+	/**
+	 * To update a book with optimistic locking.
+	 * @param isbn
+	 * @param change: field level update computed from the book read.
+	 * @Structure:
+	 * 	1. Read book by ISBN.
+	 * 	2. If empty response:
+	 * 		throw UnprocessableEntityException
+	 * 	3. Apply change only if the book version is still the one read.
+	 * 	4. If the book changed in between, retry from 1 with jittered exponential backoff, at most
+	 * 		book.update.max-retries times, then throw ConflictException.
+	 * 	5. @return Mono<Book> with the updated book.
+	 */
+	private Mono<Book> updateIfUnchanged(String isbn, Function<Book, Update> change)
+	{
+		return Mono.defer(() -> bookRepo.findByIsbn(isbn))
+					.switchIfEmpty(Mono.error(() ->
+							new UnprocessableEntityException(Constants.UNPROCESSALE_EXCEPTION_MESSAGE+isbn)))
+					.flatMap(book -> bookRepo.updateIfVersion(book.getId(), book.getVersion(), change.apply(book))
+											.switchIfEmpty(Mono.error(() ->
+													new OptimisticLockingFailureException(Constants.CONCURRENT_UPDATE_MESSAGE+isbn))))
+					.retryWhen(Retry.backoff(updateMaxRetries, updateRetryBackoff)
+									.maxBackoff(updateMaxRetryBackoff)
+									.jitter(0.5)
+									.filter(OptimisticLockingFailureException.class::isInstance)
+									.onRetryExhaustedThrow((spec, signal) ->
+											new ConflictException(Constants.CONCURRENT_UPDATE_MESSAGE+isbn)));
+	}
 }
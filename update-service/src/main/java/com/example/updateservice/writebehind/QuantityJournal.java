@@ -0,0 +1,368 @@
+package com.example.updateservice.writebehind;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Shivam
+ * Append-only journal of quantity deltas in memory-mapped segment files.
+ * Each delta is one fixed size record, so writers only reserve a slot and fill it concurrently.
+ * A record carries a CRC32C of its content: zero filled or torn slots are skipped on recovery.
+ * sync() is a group commit: one force() of the current segment acknowledges every record
+ * written before it started. Segments are forced when rotated.
+ * Segment numbers are never reused, also across restarts, as they tag the books they were
+ * applied to (see BookRepositoryCustom.applyQuantityJournal). They only increase within a journal
+ * directory, so books are tagged by the instance id stored with the segments as well.
+ * @Structure
+ * 	@Methods:
+ * 		1. public String instanceId(): id of the journal directory, created on first use.
+ * 		2. public List<RecoveredSegment> recover(): to read segments left by a previous run.
+ * 		3. public void open(): to start the first segment and the sync thread.
+ * 		4. public boolean append(String isbn, int delta): to write one record, false if the segment is full.
+ * 		5. public long rotate(): to force and close the current segment and open the next one.
+ * 		6. public Mono<Void> sync(): to wait until records written so far are on disk.
+ * 		7. public void delete(long segment): to remove an applied segment.
+ * 		8. public void close(): to stop the sync thread and force the current segment.
+ * 	@Fields:
+ * 		1. Path directory: directory of segment files.
+ * 		2. int capacity: bytes of a segment, a multiple of RECORD_SIZE.
+ * 		3. Segment current: segment records are appended to.
+ */
+@Slf4j
+public class QuantityJournal
+{
+	static final int RECORD_SIZE = 32;
+	static final int MAX_ISBN_BYTES = RECORD_SIZE - 9;
+	
+	private static final String PREFIX = "quantity-";
+	private static final String SUFFIX = ".journal";
+	private static final String INSTANCE_FILE = "instance.id";
+	
+	private Path directory;
+	private int capacity;
+	private volatile Segment current;
+	private long lastSegment;
+	private final Object syncLock = new Object();
+	private CompletableFuture<Void> nextSync = new CompletableFuture<>();
+	private boolean syncRequested;
+	private volatile boolean closed;
+	private Thread syncer;
+	
+	public QuantityJournal(Path directory, long segmentSize)
+	{
+		this.directory = directory;
+		this.capacity = (int) Math.min(Integer.MAX_VALUE / RECORD_SIZE, segmentSize / RECORD_SIZE) * RECORD_SIZE;
+	}
+	
+	/**
+	 * Whether an ISBN fits in a record.
+	 */
+	public static boolean fits(String isbn)
+	{
+		return isbn.length() <= MAX_ISBN_BYTES && StandardCharsets.US_ASCII.newEncoder().canEncode(isbn);
+	}
+	
+	/**
+	 * Id of the journal directory, read from its instance.id file or written there first.
+	 * Stays the same across restarts, as long as the directory is kept.
+	 */
+	public String instanceId()
+	{
+		Path path = directory.resolve(INSTANCE_FILE);
+		try
+		{
+			if(Files.exists(path))
+				return new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim();
+			Files.createDirectories(directory);
+			String id = UUID.randomUUID().toString().replace("-", "");
+			Path temporary = directory.resolve(INSTANCE_FILE+".tmp");
+			Files.write(temporary, id.getBytes(StandardCharsets.US_ASCII));
+			Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+			return id;
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Can not read or write journal instance id "+path, e);
+		}
+	}
+	
+	/**
+	 * To read the segments left by a previous run, oldest first.
+	 * @return segment number and summed deltas by ISBN of each segment file.
+	 */
+	public List<RecoveredSegment> recover()
+	{
+		List<RecoveredSegment> segments = new ArrayList<>();
+		for(Path path : this.segmentFiles())
+		{
+			long number = number(path);
+			lastSegment = Math.max(lastSegment, number);
+			Map<String, Integer> deltas = new HashMap<>();
+			try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+			{
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				byte[] record = new byte[RECORD_SIZE];
+				while(buffer.remaining() >= RECORD_SIZE)
+				{
+					buffer.get(record);
+					readRecord(record, deltas);
+				}
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException("Can not read journal segment "+path, e);
+			}
+			log.info("@Update-Service:: Recovered journal segment "+number+", books: "+deltas.size());
+			segments.add(new RecoveredSegment(number, deltas));
+		}
+		return segments;
+	}
+	
+	/**
+	 * To open the first segment, numbered after every segment seen and at least the current time
+	 * in milliseconds so numbers keep increasing after journal files are gone, and start syncing.
+	 */
+	public void open()
+	{
+		current = this.newSegment(Math.max(lastSegment + 1, System.currentTimeMillis()));
+		syncer = new Thread(this::syncLoop, "quantity-journal-sync");
+		syncer.setDaemon(true);
+		syncer.start();
+	}
+	
+	public long currentSegment()
+	{
+		return current.number;
+	}
+	
+	/**
+	 * To write one record to the current segment. Safe to call concurrently, but not
+	 * concurrently with rotate().
+	 * @return false if the segment is full, nothing is written then.
+	 */
+	public boolean append(String isbn, int delta)
+	{
+		Segment segment = current;
+		int position = segment.position.getAndAdd(RECORD_SIZE);
+		if(position + RECORD_SIZE > capacity)
+			return false;
+		
+		byte[] isbnBytes = isbn.getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer body = ByteBuffer.allocate(RECORD_SIZE - 4);
+		body.putInt(delta).put((byte) isbnBytes.length).put(isbnBytes);
+		CRC32C crc = new CRC32C();
+		crc.update(body.array());
+		ByteBuffer slot = segment.buffer.duplicate();
+		slot.position(position);
+		slot.putInt((int) crc.getValue()).put(body.array());
+		return true;
+	}
+	
+	/**
+	 * To force and close the current segment and continue in a new one. Not safe to call
+	 * concurrently with append().
+	 * @return number of the closed segment.
+	 */
+	public long rotate()
+	{
+		Segment old = current;
+		old.buffer.force();
+		current = this.newSegment(old.number + 1);
+		return old.number;
+	}
+	
+	/**
+	 * To wait until every record appended before this call is forced to disk.
+	 * Calls arriving while a force runs share the next one.
+	 */
+	public Mono<Void> sync()
+	{
+		CompletableFuture<Void> sync;
+		synchronized(syncLock)
+		{
+			syncRequested = true;
+			sync = nextSync;
+			syncLock.notifyAll();
+		}
+		return Mono.fromFuture(sync);
+	}
+	
+	public void delete(long segment)
+	{
+		try
+		{
+			Files.deleteIfExists(this.path(segment));
+		}
+		catch(IOException e)
+		{
+			log.warn("@Update-Service:: Can not delete journal segment "+segment+": "+e.getMessage());
+		}
+	}
+	
+	public void close()
+	{
+		closed = true;
+		synchronized(syncLock)
+		{
+			syncLock.notifyAll();
+		}
+		current.buffer.force();
+	}
+	
+	private void syncLoop()
+	{
+		while(!closed)
+		{
+			CompletableFuture<Void> sync;
+			synchronized(syncLock)
+			{
+				while(!syncRequested && !closed)
+				{
+					try
+					{
+						syncLock.wait();
+					}
+					catch(InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				syncRequested = false;
+				sync = nextSync;
+				nextSync = new CompletableFuture<>();
+			}
+			try
+			{
+				current.buffer.force();
+				sync.complete(null);
+			}
+			catch(RuntimeException e)
+			{
+				sync.completeExceptionally(e);
+			}
+		}
+	}
+	
+	private Segment newSegment(long number)
+	{
+		Path path = this.path(number);
+		try
+		{
+			Files.createDirectories(directory);
+			try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+														StandardOpenOption.READ, StandardOpenOption.WRITE))
+			{
+				return new Segment(number, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+			}
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Can not create journal segment "+path, e);
+		}
+	}
+	
+	private List<Path> segmentFiles()
+	{
+		if(!Files.isDirectory(directory))
+			return new ArrayList<>();
+		try(Stream<Path> files = Files.list(directory))
+		{
+			return files.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+										&& path.getFileName().toString().endsWith(SUFFIX))
+						.sorted((first, second) -> Long.compare(number(first), number(second)))
+						.collect(Collectors.toList());
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException("Can not list journal directory "+directory, e);
+		}
+	}
+	
+	private Path path(long number)
+	{
+		return directory.resolve(PREFIX+number+SUFFIX);
+	}
+	
+	private static long number(Path path)
+	{
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+	
+	private static void readRecord(byte[] record, Map<String, Integer> deltas)
+	{
+		ByteBuffer buffer = ByteBuffer.wrap(record);
+		int expected = buffer.getInt();
+		CRC32C crc = new CRC32C();
+		crc.update(record, 4, RECORD_SIZE - 4);
+		int delta = buffer.getInt();
+		int length = buffer.get();
+		if((int) crc.getValue() != expected || length <= 0 || length > MAX_ISBN_BYTES)
+			return;
+		String isbn = new String(record, 9, length, StandardCharsets.US_ASCII);
+		deltas.merge(isbn, delta, Integer::sum);
+	}
+	
+	/**
+	 * One segment file being written.
+	 */
+	private static class Segment
+	{
+		private final long number;
+		private final MappedByteBuffer buffer;
+		private final AtomicInteger position = new AtomicInteger();
+		
+		private Segment(long number, MappedByteBuffer buffer)
+		{
+			this.number = number;
+			this.buffer = buffer;
+		}
+	}
+	
+	/**
+	 * Deltas of a segment left by a previous run.
+	 */
+	public static class RecoveredSegment
+	{
+		private final long number;
+		private final Map<String, Integer> deltas;
+		
+		public RecoveredSegment(long number, Map<String, Integer> deltas)
+		{
+			this.number = number;
+			this.deltas = deltas;
+		}
+		
+		public long getNumber()
+		{
+			return number;
+		}
+		
+		public Map<String, Integer> getDeltas()
+		{
+			return deltas;
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package com.example.updateservice.writebehind;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.example.updateservice.repository.BookRepository;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * @author Shivam
+ * Write-behind buffer for quantity updates. A delta is acknowledged once it is in the local
+ * QuantityJournal and forced to disk, then summed per ISBN in memory and applied to MongoDB as one
+ * $inc per book every flush interval, or earlier once book.quantity.write-behind.max-pending deltas
+ * are waiting.
+ * Every flush closes the current journal segment: deltas of a segment are applied together, tagged
+ * with the journal instance id and segment number, and the segment file is deleted once applied.
+ * Segments left by a crash are applied again on startup, books already tagged with them are skipped.
+ * A tag is only needed until its segment is deleted, so the tags of the instance are removed from
+ * books once the segments of the previous run are applied, and again on shutdown: a book carries
+ * at most one tag per running instance.
+ * The journal directory must be persistent and kept by the instance across restarts: its segments
+ * are the only copy of acknowledged deltas not applied yet, and it holds the instance id. Deltas of
+ * a lost directory are lost, and the tags of its instance id stay on books.
+ * A segment is also closed when a delta would take the sum of its ISBN out of the int range, so
+ * summed deltas always fit one $inc. Closing a segment forces and creates files, so it never runs
+ * on the calling thread: appends only wait for it when the current segment can not take their delta.
+ * The quantity floor is only checked when deltas are applied: deltas of unknown ISBNs or crossing
+ * the floor are dropped then.
+ * @Structure
+ * 	@Methods:
+ * 		1. public boolean accepts(String isbn): whether a quantity update should go through the buffer.
+ * 		2. public Mono<Void> add(String isbn, int delta): to journal and buffer one delta.
+ * 		3. public Mono<Void> flush(): to apply closed segments in order.
+ * 	@Fields:
+ * 		1. BookRepository bookRepo: to apply deltas.
+ * 		2. QuantityJournal journal: durable copy of buffered deltas.
+ * 		3. String instance: id of the journal, tags applied books along with segment numbers.
+ * 		4. Pending current: deltas of the journal segment being written.
+ * 		5. Queue<Pending> closed: deltas of closed segments, oldest first.
+ * 		6. ReadWriteLock rotation: held shared to append, exclusive to close a segment, so the deltas of
+ * 			a segment and its file always match.
+ * 		7. AtomicBoolean flushing: set while a flush runs.
+ * 		8. long firstSegment: first segment of this run, tags of older segments are dead once those are applied.
+ * 		9. boolean tagsCleared: set once the tags of the previous run are removed.
+ */
+@Slf4j
+@Component
+public class QuantityWriteBehind
+{
+	private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+	
+	private BookRepository bookRepo;
+	private boolean enabled;
+	private String directory;
+	private DataSize segmentSize;
+	private Duration flushInterval;
+	private int maxPending;
+	private Integer quantityFloor;
+	private QuantityJournal journal;
+	private String instance;
+	private volatile Pending current;
+	private ConcurrentLinkedQueue<Pending> closed = new ConcurrentLinkedQueue<>();
+	private ReadWriteLock rotation = new ReentrantReadWriteLock();
+	private AtomicBoolean flushing = new AtomicBoolean();
+	private Disposable ticker;
+	private long firstSegment;
+	private volatile boolean tagsCleared;
+	
+	@Autowired
+	public QuantityWriteBehind(BookRepository bookRepo,
+							@Value("${book.quantity.write-behind.enabled:false}") boolean enabled,
+							@Value("${book.quantity.write-behind.directory:journal}") String directory,
+							@Value("${book.quantity.write-behind.segment-size:8MB}") DataSize segmentSize,
+							@Value("${book.quantity.write-behind.flush-interval:200ms}") Duration flushInterval,
+							@Value("${book.quantity.write-behind.max-pending:10000}") int maxPending,
+							@Value("${book.quantity.floor:#{null}}") Integer quantityFloor)
+	{
+		this.bookRepo = bookRepo;
+		this.enabled = enabled;
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.flushInterval = flushInterval;
+		this.maxPending = maxPending;
+		this.quantityFloor = quantityFloor;
+	}
+	
+	/**
+	 * To queue segments left by a previous run ahead of new deltas, and start journaling.
+	 */
+	@PostConstruct
+	public void start()
+	{
+		if(!enabled)
+			return;
+		journal = new QuantityJournal(Paths.get(directory), segmentSize.toBytes());
+		instance = journal.instanceId();
+		journal.recover().forEach(segment -> closed.add(new Pending(segment.getNumber(), segment.getDeltas())));
+		journal.open();
+		firstSegment = journal.currentSegment();
+		current = new Pending(firstSegment);
+		ticker = Flux.interval(Duration.ZERO, flushInterval)
+					.onBackpressureDrop()
+					.concatMap(tick -> this.flush())
+					.subscribe();
+	}
+	
+	/**
+	 * To apply buffered deltas on shutdown, after a running flush is done, and remove the tags of the
+	 * instance if every segment was applied. Segments that can not be applied stay in the journal for
+	 * the next start.
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException
+	{
+		if(ticker == null)
+			return;
+		ticker.dispose();
+		long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT.toNanos();
+		while(flushing.get() && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		this.flush().block(SHUTDOWN_TIMEOUT);
+		if(closed.isEmpty())
+			this.clearTags(journal.currentSegment())
+				.onErrorResume(e -> {
+					log.warn("@Update-Service:: Can not remove journal tags, they are removed on next start: "+e.getMessage());
+					return Mono.empty();
+				})
+				.block(SHUTDOWN_TIMEOUT);
+		journal.close();
+	}
+	
+	/**
+	 * Whether a quantity update of this ISBN should go through the buffer.
+	 */
+	public boolean accepts(String isbn)
+	{
+		return enabled && QuantityJournal.fits(isbn);
+	}
+	
+	/**
+	 * To journal and buffer one delta.
+	 * @Structure:
+	 * 	1. Append to the current segment on the calling thread.
+	 * 	2. If it can not take the delta, close it and append to the next one on boundedElastic.
+	 * 	3. Start a flush once max-pending deltas are waiting.
+	 * 	4. @return Mono<Void> completing once the delta is forced to disk.
+	 */
+	public Mono<Void> add(String isbn, int delta)
+	{
+		return Mono.defer(() -> {
+			int appended = this.tryAppend(isbn, delta);
+			return appended > 0 ? Mono.just(appended)
+								: Mono.fromCallable(() -> this.append(isbn, delta)).subscribeOn(Schedulers.boundedElastic());
+		})
+		.flatMap(pending -> {
+			if(pending >= maxPending)
+				this.flush().subscribe();
+			return journal.sync();
+		});
+	}
+	
+	/**
+	 * To apply buffered deltas.
+	 * @Structure:
+	 * 	1. If a flush is already running, @return.
+	 * 	2. Close the current segment if it has deltas, on boundedElastic.
+	 * 	3. Apply closed segments oldest first, deleting each segment once applied.
+	 * 	4. Once no segment of the previous run is left, remove its tags from books, once.
+	 * 	5. On failure, stop: the failed segment and later ones are retried by the next flush.
+	 */
+	public Mono<Void> flush()
+	{
+		if(!flushing.compareAndSet(false, true))
+			return Mono.empty();
+		
+		return Mono.fromRunnable(() -> this.rotate(null))
+					.subscribeOn(Schedulers.boundedElastic())
+					.thenMany(Flux.defer(() -> Flux.fromIterable(new ArrayList<>(closed))))
+					.concatMap(this::apply)
+					.then(Mono.defer(() -> tagsCleared || closed.stream().anyMatch(pending -> pending.segment < firstSegment)
+											? Mono.empty()
+											: this.clearTags(firstSegment).doOnNext(cleared -> tagsCleared = true)))
+					.onErrorResume(e -> {
+						log.warn("@Update-Service:: Can not apply quantity journal, retrying on next flush: "+e.getMessage());
+						return Mono.empty();
+					})
+					.doFinally(signal -> flushing.set(false))
+					.then();
+	}
+	
+	/**
+	 * To append to the current segment without waiting for a rotation.
+	 * @return number of deltas of the segment, 0 if the segment is being closed, is full or would
+	 * 		overflow the sum of the ISBN.
+	 */
+	private int tryAppend(String isbn, int delta)
+	{
+		if(!rotation.readLock().tryLock())
+			return 0;
+		try
+		{
+			Pending pending = current;
+			if(!pending.reserve(isbn, delta))
+				return 0;
+			if(journal.append(isbn, delta))
+				return pending.count.incrementAndGet();
+			pending.release(isbn, delta);
+			return 0;
+		}
+		finally
+		{
+			rotation.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * To append, closing segments that can not take the delta. Blocks, off the event loop only.
+	 */
+	private int append(String isbn, int delta)
+	{
+		while(true)
+		{
+			Pending pending = current;
+			int appended = this.tryAppend(isbn, delta);
+			if(appended > 0)
+				return appended;
+			this.rotate(pending);
+		}
+	}
+	
+	/**
+	 * To close the current segment, if it is still the expected one, or for null, if it has deltas.
+	 */
+	private void rotate(Pending expected)
+	{
+		rotation.writeLock().lock();
+		try
+		{
+			if(expected == null ? current.count.get() == 0 : current != expected)
+				return;
+			journal.rotate();
+			closed.add(current);
+			current = new Pending(journal.currentSegment());
+		}
+		finally
+		{
+			rotation.writeLock().unlock();
+		}
+	}
+	
+	private Mono<Void> apply(Pending pending)
+	{
+		Map<String, Integer> deltas = pending.deltas();
+		return bookRepo.applyQuantityJournal(instance, pending.segment, deltas, quantityFloor)
+					.doOnNext(matched -> {
+						closed.remove(pending);
+						journal.delete(pending.segment);
+						if(matched < deltas.size())
+							log.debug("@Update-Service:: Applied journal segment {}, skipped {} of {} books",
+									pending.segment,deltas.size()-matched,deltas.size());
+					})
+					.then();
+	}
+	
+	/**
+	 * To remove the tags of this instance older than a segment.
+	 */
+	private Mono<Long> clearTags(long before)
+	{
+		return bookRepo.clearQuantityJournal(instance, before)
+					.doOnNext(cleared -> log.debug("@Update-Service:: Removed journal tags of {} books",cleared));
+	}
+	
+	/**
+	 * Deltas of one journal segment, summed by ISBN. Sums stay within the int range.
+	 */
+	private static class Pending
+	{
+		private final long segment;
+		private final Map<String, AtomicLong> deltas = new ConcurrentHashMap<>();
+		private final AtomicInteger count = new AtomicInteger();
+		
+		private Pending(long segment)
+		{
+			this.segment = segment;
+		}
+		
+		private Pending(long segment, Map<String, Integer> recovered)
+		{
+			this(segment);
+			recovered.forEach((isbn, delta) -> {
+				deltas.put(isbn, new AtomicLong(delta));
+				count.incrementAndGet();
+			});
+		}
+		
+		/**
+		 * To add a delta to the sum of its ISBN, before it is journaled.
+		 * @return false if the sum would leave the int range, nothing is added then.
+		 */
+		private boolean reserve(String isbn, int delta)
+		{
+			AtomicLong sum = deltas.computeIfAbsent(isbn, key -> new AtomicLong());
+			while(true)
+			{
+				long old = sum.get();
+				long added = old + delta;
+				if(added > Integer.MAX_VALUE || added < Integer.MIN_VALUE)
+					return false;
+				if(sum.compareAndSet(old, added))
+					return true;
+			}
+		}
+		
+		/**
+		 * To take back a reserved delta that could not be journaled.
+		 */
+		private void release(String isbn, int delta)
+		{
+			deltas.get(isbn).addAndGet(-delta);
+		}
+		
+		private Map<String, Integer> deltas()
+		{
+			Map<String, Integer> sums = new HashMap<>();
+			deltas.forEach((isbn, sum) -> {
+				if(sum.get() != 0)
+					sums.put(isbn, (int) sum.get());
+			});
+			return sums;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.example.updateservice.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.example.updateservice.InMemoryMongo;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class BookRepositoryCustomImplTest
+{
+	private InMemoryMongo mongo;
+	private BookRepository bookRepository;
+	
+	@BeforeEach
+	void setUp()
+	{
+		mongo = new InMemoryMongo();
+		bookRepository = mongo.bookRepository();
+		mongo.template().insert(new Document("isbn", "isbn-1").append("quantity", 10), "book").block();
+	}
+	
+	@AfterEach
+	void tearDown()
+	{
+		mongo.close();
+	}
+	
+	@Test
+	void journalSegmentIsAppliedOncePerInstance()
+	{
+		StepVerifier.create(bookRepository.applyQuantityJournal("a", 100, Map.of("isbn-1", 2), null))
+					.expectNext(1L)
+					.verifyComplete();
+		StepVerifier.create(bookRepository.applyQuantityJournal("a", 100, Map.of("isbn-1", 2), null))
+					.expectNext(0L)
+					.verifyComplete();
+		StepVerifier.create(bookRepository.applyQuantityJournal("a", 99, Map.of("isbn-1", 2), null))
+					.expectNext(0L)
+					.verifyComplete();
+		assertEquals(12, this.quantity());
+	}
+	
+	@Test
+	void segmentsOfOtherInstancesAreAppliedWhateverTheirNumber()
+	{
+		bookRepository.applyQuantityJournal("a", 100, Map.of("isbn-1", 2), null).block();
+		
+		StepVerifier.create(bookRepository.applyQuantityJournal("b", 5, Map.of("isbn-1", 3), null))
+					.expectNext(1L)
+					.verifyComplete();
+		StepVerifier.create(bookRepository.applyQuantityJournal("a", 101, Map.of("isbn-1", -1), null))
+					.expectNext(1L)
+					.verifyComplete();
+		assertEquals(14, this.quantity());
+	}
+	
+	@Test
+	void deltaCrossingTheFloorIsNotApplied()
+	{
+		StepVerifier.create(bookRepository.applyQuantityJournal("a", 1, Map.of("isbn-1", -11), 0))
+					.expectNext(0L)
+					.verifyComplete();
+		assertEquals(10, this.quantity());
+	}
+	
+	@Test
+	void clearingRemovesOnlyOlderTagsOfTheInstance()
+	{
+		mongo.template().insert(new Document("isbn", "isbn-2").append("quantity", 10), "book").block();
+		bookRepository.applyQuantityJournal("a", 1, Map.of("isbn-1", 1), null).block();
+		bookRepository.applyQuantityJournal("a", 2, Map.of("isbn-2", 1), null).block();
+		bookRepository.applyQuantityJournal("b", 1, Map.of("isbn-1", 1), null).block();
+		
+		StepVerifier.create(bookRepository.clearQuantityJournal("a", 2))
+					.expectNext(1L)
+					.verifyComplete();
+		assertEquals(Map.of("b", 1L), this.tags("isbn-1"));
+		assertEquals(Map.of("a", 2L), this.tags("isbn-2"));
+		StepVerifier.create(bookRepository.applyQuantityJournal("a", 2, Map.of("isbn-2", 1), null))
+					.expectNext(0L)
+					.verifyComplete();
+	}
+	
+	@Test
+	void ratingOfABookRatedBeforeTheCountersCountsAsOneVote()
+	{
+		mongo.template().insert(new Document("isbn", "isbn-rated").append("rating", 4.0), "book").block();
+		mongo.template().insert(new Document("isbn", "isbn-unrated").append("rating", 0.0), "book").block();
+		
+		Document rated = this.rate("isbn-rated", 1, 2);
+		assertEquals(3.0, rated.get("rating", Number.class).doubleValue());
+		assertEquals(2L, rated.get("rating_count", Number.class).longValue());
+		assertEquals(6.0, rated.get("rating_sum", Number.class).doubleValue());
+		Document unrated = this.rate("isbn-unrated", 1, 5);
+		assertEquals(5.0, unrated.get("rating", Number.class).doubleValue());
+		assertEquals(1L, unrated.get("rating_count", Number.class).longValue());
+	}
+	
+	@Test
+	void ratingIsTheMeanOfEveryVote()
+	{
+		this.rate("isbn-1", 2, 9);
+		this.rate("isbn-1", 1, 1);
+		
+		Document book = this.rate("isbn-1", 1, 2);
+		assertEquals(3.0, book.get("rating", Number.class).doubleValue());
+		assertEquals(4L, book.get("rating_count", Number.class).longValue());
+		assertEquals(12.0, book.get("rating_sum", Number.class).doubleValue());
+	}
+	
+	@Test
+	void ratingOfUnknownIsbnIsEmpty()
+	{
+		StepVerifier.create(bookRepository.addRatings("isbn-x", 1, 5))
+					.verifyComplete();
+	}
+	
+	/**
+	 * The in-memory server runs aggregations but not pipeline updates, so the rating stages of
+	 * addRatings are run as $addFields stages and the result written back.
+	 */
+	private Document rate(String isbn, long count, double sum)
+	{
+		List<Document> pipeline = new ArrayList<>();
+		pipeline.add(new Document("$match", new Document("isbn", isbn)));
+		BookRepositoryCustomImpl.ratingStages(count, sum)
+								.forEach(fields -> pipeline.add(new Document("$addFields", fields)));
+		MongoCollection<Document> collection = mongo.template().getCollection("book").block();
+		Document book = Flux.from(collection.aggregate(pipeline)).blockFirst();
+		Mono.from(collection.replaceOne(Filters.eq("_id", book.get("_id")), book)).block();
+		return book;
+	}
+	
+	private Map<String, Object> tags(String isbn)
+	{
+		return mongo.template().findOne(Query.query(Criteria.where("isbn").is(isbn)), Document.class, "book")
+					.block()
+					.get("journal_segments", Document.class);
+	}
+	
+	private int quantity()
+	{
+		return mongo.template().findAll(Document.class, "book").blockFirst().getInteger("quantity");
+	}
+}
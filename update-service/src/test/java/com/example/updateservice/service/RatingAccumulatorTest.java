@@ -0,0 +1,68 @@
+package com.example.updateservice.service;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.updateservice.model.Book;
+import com.example.updateservice.repository.BookRepository;
+
+import reactor.core.publisher.Mono;
+
+class RatingAccumulatorTest
+{
+	private BookRepository bookRepository = mock(BookRepository.class);
+	private RatingAccumulator accumulator = new RatingAccumulator(bookRepository, true, Duration.ofHours(1), 10000, 4);
+
+	@Test
+	void votesOfABookAreWrittenAsOneUpdate()
+	{
+		when(bookRepository.addRatings(eq("isbn-1"), anyLong(), anyDouble())).thenReturn(Mono.just(new Book()));
+		accumulator.add("isbn-1", 5);
+		accumulator.add("isbn-1", 3);
+
+		accumulator.flush().block();
+
+		verify(bookRepository).addRatings("isbn-1", 2, 8.0);
+	}
+
+	@Test
+	void votesOfAFailedWriteAreMergedBackAndRetriedOnNextFlush()
+	{
+		when(bookRepository.addRatings(eq("isbn-1"), anyLong(), anyDouble()))
+			.thenReturn(Mono.error(new IllegalStateException("down")))
+			.thenReturn(Mono.just(new Book()));
+		accumulator.add("isbn-1", 5);
+		accumulator.add("isbn-1", 3);
+		accumulator.flush().block();
+		verify(bookRepository).addRatings("isbn-1", 2, 8.0);
+
+		accumulator.add("isbn-1", 4);
+		accumulator.flush().block();
+
+		verify(bookRepository).addRatings("isbn-1", 3, 12.0);
+		accumulator.flush().block();
+		verify(bookRepository, never()).addRatings("isbn-1", 1, 4.0);
+	}
+
+	@Test
+	void maxPendingVotesStartAFlush()
+	{
+		RatingAccumulator small = new RatingAccumulator(bookRepository, true, Duration.ofHours(1), 2, 4);
+		when(bookRepository.addRatings(eq("isbn-1"), anyLong(), anyDouble())).thenReturn(Mono.just(new Book()));
+
+		small.add("isbn-1", 5);
+		verify(bookRepository, never()).addRatings(eq("isbn-1"), anyLong(), anyDouble());
+		small.add("isbn-1", 1);
+
+		verify(bookRepository).addRatings("isbn-1", 2, 6.0);
+	}
+}
@@ -0,0 +1,194 @@
+package com.example.updateservice.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.example.updateservice.InMemoryMongo;
+import com.example.updateservice.dto.BookDto;
+import com.example.updateservice.dto.QuantityDeltaDto;
+import com.example.updateservice.dto.QuantityUpdateResultDto;
+import com.example.updateservice.dto.UpdateDto;
+import com.example.updateservice.exception.ConflictException;
+import com.example.updateservice.exception.UnprocessableEntityException;
+import com.example.updateservice.model.Author;
+import com.example.updateservice.model.Book;
+import com.example.updateservice.model.UpdateStatus;
+import com.example.updateservice.repository.BookRepository;
+import com.example.updateservice.util.CustomObjectMapperImpl;
+import com.example.updateservice.writebehind.QuantityWriteBehind;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class UpdateServiceImplTest
+{
+	private InMemoryMongo mongo;
+	private BookRepository bookRepository;
+	private UpdateServiceImpl updateService;
+	
+	@BeforeEach
+	void setUp()
+	{
+		mongo = new InMemoryMongo();
+		bookRepository = mongo.bookRepository();
+		updateService = new UpdateServiceImpl(bookRepository, new CustomObjectMapperImpl(), mock(RatingAccumulator.class),
+											mock(QuantityWriteBehind.class), 0, 500, 4, 5, Duration.ofMillis(5),
+											Duration.ofMillis(100));
+		bookRepository.save(new Book("Book A", 10, "isbn-a", 0, 4, new Author("Author", "IN"))).block();
+		bookRepository.save(new Book("Book B", 10, "isbn-b", 0, 1, new Author("Author", "IN"))).block();
+	}
+	
+	@AfterEach
+	void tearDown()
+	{
+		mongo.close();
+	}
+	
+	@Test
+	void batchReportsEachDeltaFromItsOwnWrite()
+	{
+		List<QuantityUpdateResultDto> results = updateService.updateBookQuantities(Flux.just(
+																	delta("isbn-a", -3),
+																	delta("isbn-b", -3),
+																	delta("isbn-c", 1),
+																	delta("", 1)))
+															.collectList()
+															.block();
+		
+		assertEquals(List.of(UpdateStatus.APPLIED, UpdateStatus.CONFLICT, UpdateStatus.MISSING, UpdateStatus.INVALID),
+					results.stream().map(QuantityUpdateResultDto::getStatus).collect(Collectors.toList()));
+		assertEquals(1, bookRepository.findByIsbn("isbn-a").block().getQuantity());
+		assertEquals(1, bookRepository.findByIsbn("isbn-b").block().getQuantity());
+	}
+	
+	@Test
+	void batchAppliedEverywhereSkipsReadBack()
+	{
+		List<QuantityUpdateResultDto> results = updateService.updateBookQuantities(Flux.just(
+																	delta("isbn-a", 2),
+																	delta("isbn-b", -1),
+																	delta("isbn-a", 1)))
+															.collectList()
+															.block();
+		
+		results.forEach(result -> assertEquals(UpdateStatus.APPLIED, result.getStatus()));
+		assertEquals(7, bookRepository.findByIsbn("isbn-a").block().getQuantity());
+		assertEquals(0, bookRepository.findByIsbn("isbn-b").block().getQuantity());
+	}
+	
+	@Test
+	void batchTellsRefusedDecrementsFromAppliedOnesWithoutTaggingBooks()
+	{
+		bookRepository.save(new Book("Book C", 10, "isbn-c", 0, 2, new Author("Author", "IN"))).block();
+		
+		List<QuantityUpdateResultDto> results = updateService.updateBookQuantities(Flux.just(
+																	delta("isbn-a", -1),
+																	delta("isbn-b", -2),
+																	delta("isbn-c", -2),
+																	delta("isbn-d", -1),
+																	delta("isbn-e", 1)))
+															.collectList()
+															.block();
+		
+		assertEquals(List.of(UpdateStatus.APPLIED, UpdateStatus.CONFLICT, UpdateStatus.APPLIED, UpdateStatus.MISSING,
+							UpdateStatus.MISSING),
+					results.stream().map(QuantityUpdateResultDto::getStatus).collect(Collectors.toList()));
+		assertEquals(3, bookRepository.findByIsbn("isbn-a").block().getQuantity());
+		assertEquals(1, bookRepository.findByIsbn("isbn-b").block().getQuantity());
+		assertEquals(0, bookRepository.findByIsbn("isbn-c").block().getQuantity());
+		Document book = mongo.template().findOne(Query.query(Criteria.where("isbn").is("isbn-a")), Document.class, "book").block();
+		assertFalse(book.containsKey("quantity_batches"));
+	}
+	
+	@Test
+	void updateReadingABookChangedMeanwhileIsRetried()
+	{
+		AtomicInteger reads = new AtomicInteger();
+		UpdateServiceImpl racing = this.racingService(reads, 1);
+		
+		BookDto updated = racing.updateBook(new UpdateDto("Renamed", 20, "Writer", "UK"), "isbn-a").block().getBody();
+		
+		assertEquals(2, reads.get());
+		assertEquals("Renamed", updated.getBookName());
+		assertEquals(5, updated.getQuantity());
+		Book book = bookRepository.findByIsbn("isbn-a").block();
+		assertEquals("Writer", book.getAuthor().getAuthorName());
+		assertEquals(5, book.getQuantity());
+	}
+	
+	@Test
+	void updateConflictingOnEveryAttemptGivesUpWithConflict()
+	{
+		AtomicInteger reads = new AtomicInteger();
+		UpdateServiceImpl racing = this.racingService(reads, Integer.MAX_VALUE);
+		
+		StepVerifier.create(racing.updateBook(new UpdateDto("Renamed", 20, "Writer", "UK"), "isbn-a"))
+					.expectError(ConflictException.class)
+					.verify();
+		assertEquals(6, reads.get());
+		assertEquals("Book A", bookRepository.findByIsbn("isbn-a").block().getBookName());
+	}
+	
+	@Test
+	void updateOfUnknownIsbnIsUnprocessable()
+	{
+		StepVerifier.create(updateService.updateBook(new UpdateDto("Renamed", 20, "Writer", "UK"), "isbn-x"))
+					.expectError(UnprocessableEntityException.class)
+					.verify();
+		StepVerifier.create(updateService.updateIsbn("isbn-y", "isbn-x"))
+					.expectError(UnprocessableEntityException.class)
+					.verify();
+	}
+	
+	@Test
+	void bookWrittenBeforeVersioningIsUpdatedAndVersioned()
+	{
+		mongo.template().insert(new Document("isbn", "isbn-legacy").append("book_name", "Legacy").append("quantity", 3),
+								"book").block();
+		
+		BookDto updated = updateService.updateIsbn("isbn-new", "isbn-legacy").block().getBody();
+		
+		assertEquals("isbn-new", updated.getIsbn());
+		Book book = bookRepository.findByIsbn("isbn-new").block();
+		assertEquals(1L, book.getVersion());
+		assertEquals(3, book.getQuantity());
+	}
+	
+	/**
+	 * Service whose reads of isbn-a are each followed by another write of the book, for the first
+	 * conflicts reads, so the update computed from them no longer matches the version.
+	 */
+	private UpdateServiceImpl racingService(AtomicInteger reads, int conflicts)
+	{
+		BookRepository racing = mock(BookRepository.class, AdditionalAnswers.delegatesTo(bookRepository));
+		when(racing.findByIsbn("isbn-a")).thenAnswer(invocation -> bookRepository.findByIsbn("isbn-a")
+																		.flatMap(book -> reads.incrementAndGet() > conflicts
+																				? Mono.just(book)
+																				: bookRepository.incrementQuantity("isbn-a", 1, null)
+																								.thenReturn(book)));
+		return new UpdateServiceImpl(racing, new CustomObjectMapperImpl(), mock(RatingAccumulator.class),
+									mock(QuantityWriteBehind.class), 0, 500, 4, 5, Duration.ofMillis(1),
+									Duration.ofMillis(5));
+	}
+	
+	private static QuantityDeltaDto delta(String isbn, int delta)
+	{
+		return new QuantityDeltaDto(isbn, delta);
+	}
+}
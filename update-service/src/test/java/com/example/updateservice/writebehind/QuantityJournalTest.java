@@ -0,0 +1,102 @@
+package com.example.updateservice.writebehind;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.example.updateservice.writebehind.QuantityJournal.RecoveredSegment;
+
+class QuantityJournalTest
+{
+	@TempDir
+	Path directory;
+	
+	@Test
+	void recoverReadsTheSummedDeltasOfEverySegmentInOrder()
+	{
+		QuantityJournal journal = new QuantityJournal(directory, 1024);
+		journal.open();
+		journal.append("isbn-1", 5);
+		journal.append("isbn-1", -2);
+		journal.append("isbn-2", 7);
+		long first = journal.rotate();
+		journal.append("isbn-1", 1);
+		journal.sync().block();
+		journal.close();
+		
+		List<RecoveredSegment> segments = new QuantityJournal(directory, 1024).recover();
+		
+		assertEquals(2, segments.size());
+		assertEquals(first, segments.get(0).getNumber());
+		assertEquals(Map.of("isbn-1", 3, "isbn-2", 7), segments.get(0).getDeltas());
+		assertEquals(first + 1, segments.get(1).getNumber());
+		assertEquals(Map.of("isbn-1", 1), segments.get(1).getDeltas());
+	}
+	
+	@Test
+	void tornRecordsAreSkippedOnRecovery() throws IOException
+	{
+		QuantityJournal journal = new QuantityJournal(directory, 1024);
+		journal.open();
+		journal.append("isbn-1", 5);
+		journal.append("isbn-1", 6);
+		long segment = journal.currentSegment();
+		journal.close();
+		
+		try(FileChannel channel = FileChannel.open(directory.resolve("quantity-"+segment+".journal"), StandardOpenOption.WRITE))
+		{
+			channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), QuantityJournal.RECORD_SIZE + 8);
+		}
+		
+		assertEquals(Map.of("isbn-1", 5), new QuantityJournal(directory, 1024).recover().get(0).getDeltas());
+	}
+	
+	@Test
+	void fullSegmentIsRotatedToTheNextNumber()
+	{
+		QuantityJournal journal = new QuantityJournal(directory, 2 * QuantityJournal.RECORD_SIZE);
+		journal.open();
+		assertTrue(journal.append("isbn-1", 1));
+		assertTrue(journal.append("isbn-1", 1));
+		assertFalse(journal.append("isbn-1", 1));
+		
+		long closed = journal.rotate();
+		
+		assertEquals(closed + 1, journal.currentSegment());
+		assertTrue(journal.append("isbn-1", 1));
+		journal.close();
+		assertEquals(Map.of("isbn-1", 2), new QuantityJournal(directory, 1024).recover().get(0).getDeltas());
+	}
+	
+	@Test
+	void segmentNumbersAndInstanceIdSurviveRestarts() throws IOException
+	{
+		QuantityJournal journal = new QuantityJournal(directory, 1024);
+		String instance = journal.instanceId();
+		journal.recover();
+		journal.open();
+		long segment = journal.currentSegment();
+		journal.close();
+		
+		QuantityJournal restarted = new QuantityJournal(directory, 1024);
+		restarted.recover();
+		restarted.open();
+		
+		assertEquals(instance, restarted.instanceId());
+		assertTrue(restarted.currentSegment() > segment);
+		assertEquals(2, Files.list(directory).filter(path -> path.toString().endsWith(".journal")).count());
+		restarted.close();
+	}
+}
@@ -0,0 +1,141 @@
+package com.example.updateservice.writebehind;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.util.unit.DataSize;
+
+import com.example.updateservice.InMemoryMongo;
+
+class QuantityWriteBehindTest
+{
+	@TempDir
+	Path directory;
+	private InMemoryMongo mongo;
+	private List<QuantityWriteBehind> started = new ArrayList<>();
+	
+	@BeforeEach
+	void setUp()
+	{
+		mongo = new InMemoryMongo();
+		mongo.template().insert(new Document("isbn", "isbn-1").append("quantity", 10), "book").block();
+	}
+	
+	@AfterEach
+	void tearDown() throws InterruptedException
+	{
+		for(QuantityWriteBehind writeBehind : started)
+			writeBehind.stop();
+		mongo.close();
+	}
+	
+	@Test
+	void journaledDeltasAreAppliedOnFlushAndTheirSegmentDeleted() throws IOException
+	{
+		QuantityWriteBehind writeBehind = this.start();
+		writeBehind.add("isbn-1", 5).block();
+		writeBehind.add("isbn-1", -3).block();
+		
+		this.flush(writeBehind, 12);
+		
+		assertEquals(1, this.segmentFiles().size());
+	}
+	
+	@Test
+	void segmentsLeftByACrashAreReplayedOnlyOnce() throws IOException, InterruptedException
+	{
+		QuantityWriteBehind crashed = this.start();
+		crashed.add("isbn-1", 5).block();
+		List<Path> segments = this.segmentFiles();
+		List<byte[]> contents = new ArrayList<>();
+		for(Path segment : segments)
+			contents.add(Files.readAllBytes(segment));
+		
+		this.flush(crashed, 15);
+		for(int i = 0; i < segments.size(); i++)
+			Files.write(segments.get(i), contents.get(i));
+		
+		QuantityWriteBehind restarted = this.start();
+		restarted.flush().block();
+		restarted.add("isbn-1", 1).block();
+		
+		this.flush(restarted, 16);
+		
+		restarted.stop();
+		started.remove(restarted);
+		Document tags = this.book("isbn-1").get("journal_segments", Document.class);
+		assertTrue(tags == null || tags.isEmpty());
+	}
+	
+	@Test
+	void sumThatWouldOverflowIsSplitAcrossSegments()
+	{
+		mongo.template().insert(new Document("isbn", "isbn-2").append("quantity", 0), "book").block();
+		QuantityWriteBehind writeBehind = this.start();
+		writeBehind.add("isbn-2", Integer.MAX_VALUE).block();
+		writeBehind.add("isbn-2", 1).block();
+		writeBehind.add("isbn-2", -Integer.MAX_VALUE).block();
+		
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while(this.quantity("isbn-2") != 1 && System.nanoTime() < deadline)
+			writeBehind.flush().block();
+		
+		assertEquals(1, this.quantity("isbn-2"));
+	}
+	
+	private QuantityWriteBehind start()
+	{
+		QuantityWriteBehind writeBehind = new QuantityWriteBehind(mongo.bookRepository(), true, directory.toString(),
+																DataSize.ofKilobytes(4), Duration.ofHours(1), 10000, null);
+		writeBehind.start();
+		started.add(writeBehind);
+		return writeBehind;
+	}
+	
+	/**
+	 * To flush until isbn-1 has the expected quantity, as the first tick of the ticker may be flushing.
+	 */
+	private void flush(QuantityWriteBehind writeBehind, int expected)
+	{
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while(this.quantity("isbn-1") != expected && System.nanoTime() < deadline)
+			writeBehind.flush().block();
+		assertEquals(expected, this.quantity("isbn-1"));
+	}
+	
+	private int quantity(String isbn)
+	{
+		return this.book(isbn).getInteger("quantity");
+	}
+	
+	private Document book(String isbn)
+	{
+		return mongo.template().findOne(Query.query(Criteria.where("isbn").is(isbn)), Document.class, "book").block();
+	}
+	
+	private List<Path> segmentFiles() throws IOException
+	{
+		try(Stream<Path> files = Files.list(directory))
+		{
+			List<Path> segments = files.filter(path -> path.toString().endsWith(".journal")).collect(Collectors.toList());
+			assertTrue(segments.size() > 0);
+			return segments;
+		}
+	}
+}